@@ -0,0 +1,123 @@
+package elements;
+
+import type.Operation;
+
+/**
+ * An operation over the values of one column of each group of a {@link Grouping}. Values which are not numeric are
+ * skipped like formulas do, except for COUNT, which counts every value like range aggregates do.
+ */
+public final class Aggregation
+{
+    private final Operation operation;
+
+    private final int column;
+
+    private Aggregation( Operation operation, int column )
+    {
+        this.operation = operation;
+        this.column = column;
+    }
+
+    /**
+     * Creates an aggregation.
+     *
+     * @param operation the operation
+     * @param column    the index of the column whose values are aggregated
+     * @return the aggregation
+     */
+    public static Aggregation of( Operation operation, int column )
+    {
+        return new Aggregation( operation, column );
+    }
+
+    /**
+     * Sums up the numeric values of a column.
+     *
+     * @param column the index of the column
+     * @return the aggregation
+     */
+    public static Aggregation sum( int column )
+    {
+        return of( Operation.SUM, column );
+    }
+
+    /**
+     * Averages the numeric values of a column.
+     *
+     * @param column the index of the column
+     * @return the aggregation
+     */
+    public static Aggregation avg( int column )
+    {
+        return of( Operation.AVG, column );
+    }
+
+    /**
+     * Takes the minimum of the numeric values of a column.
+     *
+     * @param column the index of the column
+     * @return the aggregation
+     */
+    public static Aggregation min( int column )
+    {
+        return of( Operation.MIN, column );
+    }
+
+    /**
+     * Takes the maximum of the numeric values of a column.
+     *
+     * @param column the index of the column
+     * @return the aggregation
+     */
+    public static Aggregation max( int column )
+    {
+        return of( Operation.MAX, column );
+    }
+
+    /**
+     * Counts the numeric values of a column.
+     *
+     * @param column the index of the column
+     * @return the aggregation
+     */
+    public static Aggregation count( int column )
+    {
+        return of( Operation.COUNT_NUMERIC, column );
+    }
+
+    /**
+     * Counts the rows of each group.
+     *
+     * @return the aggregation
+     */
+    public static Aggregation count()
+    {
+        return of( Operation.COUNT, -1 );
+    }
+
+    Operation getOperation()
+    {
+        return operation;
+    }
+
+    /**
+     * Returns the column whose values are aggregated.
+     *
+     * @return the column index or -1 if the rows are counted
+     */
+    int getColumn()
+    {
+        return column;
+    }
+
+    /**
+     * Returns the name of the aggregation for the result columns, like {@code SUM(Price)}.
+     *
+     * @param columnName the name of the aggregated column
+     * @return the name
+     */
+    String getName( String columnName )
+    {
+        return column < 0 ? operation.name() : operation.name() + "(" + columnName + ")";
+    }
+}
@@ -5,9 +5,16 @@ import org.apache.commons.lang3.math.NumberUtils;
 import type.CellType;
 import type.Operation;
 import util.CellFormatter;
+import util.DateParser;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 import java.util.function.Function;
 
 import static type.CellType.TEXT;
@@ -17,10 +24,45 @@ import static type.CellType.TEXT;
  */
 public class Cell implements Comparable<Cell>
 {
+    private static final byte PARSED = 1;
+
+    private static final byte NUMERIC = 2;
+
+    private static final byte INTEGER = 4;
+
+    private static final byte TRUE = 8;
+
+    private static final byte TYPED = 16;
+
+    private static final byte DAY = 32;
+
     private Object value;
 
     private CellType cellType;
 
+    /**
+     * The value parsed as number, written before {@link #parsed} so a thread which sees the flags also sees the
+     * numbers.
+     */
+    private volatile byte parsed;
+
+    private double number;
+
+    private int integer;
+
+    /**
+     * The formatted value parsed as number, valid if the flags contain {@link #TYPED}. If they contain {@link #DAY} as
+     * well, it is the epoch day of a formatted date instead.
+     */
+    private double typed;
+
+    private String formatted;
+
+    /**
+     * Set if the store of this Cell keeps no formatted values.
+     */
+    private boolean dropsFormatted;
+
     Cell()
     {
         this( StringUtils.EMPTY );
@@ -34,22 +76,300 @@ public class Cell implements Comparable<Cell>
 
     boolean isEmpty()
     {
+        Object value = getRawValue();
         return ( value == null || value.toString().isBlank() );
     }
 
     void setCellType( CellType cellType )
     {
-        this.cellType = cellType;
+        storeCellType( cellType );
+        parsed = 0;
+        formatted = null;
     }
 
     void setValue( Object value )
     {
-        if ( !( value instanceof Cell ) )
+        if ( value instanceof Cell )
         {
-            this.value = value;
+            return;
+        }
+        Object previous = getRawValue();
+        if ( previous instanceof Expression )
+        {
+            ( ( Expression ) previous ).unregister();
+        }
+        storeValue( value );
+        parsed = 0;
+        formatted = null;
+        if ( value instanceof Expression )
+        {
+            ( ( Expression ) value ).register();
         }
     }
 
+    void storeCellType( CellType cellType )
+    {
+        this.cellType = cellType;
+    }
+
+    void storeValue( Object value )
+    {
+        this.value = value;
+    }
+
+    /**
+     * Returns the value as number the same way expressions read their operands.
+     *
+     * @return the value or NaN if the value is not numeric
+     */
+    double toNumber()
+    {
+        Object value = getRawValue();
+        CellType cellType = getCellType();
+        if ( value instanceof Expression )
+        {
+            String result = getValue();
+            if ( mayBeNumber( result ) )
+            {
+                try
+                {
+                    return Double.parseDouble( result );
+                }
+                catch ( NumberFormatException e )
+                {
+                    // not a number
+                }
+            }
+            return Double.NaN;
+        }
+        if ( cellType == TEXT )
+        {
+            return rawNumber();
+        }
+        if ( cellType == CellType.CURRENCY || cellType == CellType.PERCENTAGE )
+        {
+            // the formatted value ends with a symbol
+            return Double.NaN;
+        }
+        return ( parseFormatted( value, cellType ) & DAY ) != 0 ? Double.NaN : typed;
+    }
+
+    /**
+     * Returns the value of a DATE cell as it is compared to the bounds of a range.
+     *
+     * @return the number, the epoch day if the value is formatted as date or NaN if it is neither
+     */
+    double dateKey()
+    {
+        Object value = getRawValue();
+        if ( value instanceof Expression )
+        {
+            LocalDate date = DateParser.isoDate( getValue() );
+            return date != null ? date.toEpochDay() : toNumber();
+        }
+        parseFormatted( value, getCellType() );
+        return typed;
+    }
+
+    /**
+     * Parses the formatted value into {@link #typed}. The result is kept with the other parsed values.
+     *
+     * @return the flags, which contain {@link #DAY} if the formatted value is read as date
+     */
+    private byte parseFormatted( Object value, CellType cellType )
+    {
+        byte flags = parse();
+        if ( ( flags & TYPED ) != 0 )
+        {
+            return flags;
+        }
+        if ( cellType == CellType.DATE )
+        {
+            String text = getValue();
+            if ( ( flags & NUMERIC ) != 0 && text.equals( value.toString() ) )
+            {
+                typed = number;
+            }
+            else
+            {
+                LocalDate date = DateParser.isoDate( text );
+                typed = date != null ? date.toEpochDay() : Double.NaN;
+                flags |= DAY;
+            }
+        }
+        else if ( ( flags & NUMERIC ) == 0 )
+        {
+            // text which is not a number is not formatted
+            typed = Double.NaN;
+        }
+        else
+        {
+            String text = getValue();
+            typed = NumberUtils.isParsable( text ) ? Double.parseDouble( text ) : Double.NaN;
+        }
+        flags |= TYPED;
+        if ( cachesParse() )
+        {
+            parsed = flags;
+        }
+        return flags;
+    }
+
+    /**
+     * Returns the raw value as number regardless of the cell type.
+     *
+     * @return the value or NaN if the raw value is not numeric
+     */
+    double rawNumber()
+    {
+        Object value = getRawValue();
+        if ( value instanceof Expression )
+        {
+            try
+            {
+                return Double.parseDouble( ( ( Expression ) value ).getResult() );
+            }
+            catch ( NumberFormatException e )
+            {
+                return Double.NaN;
+            }
+        }
+        return ( parse() & NUMERIC ) != 0 ? number : Double.NaN;
+    }
+
+    /**
+     * Creates a Cell for another DataSheet with the value and the type of this Cell. An expression is copied as its
+     * result, since its ranges refer to this DataSheet.
+     *
+     * @return the new Cell
+     */
+    Cell copy()
+    {
+        Object value = getRawValue();
+        Cell cell = new Cell( value instanceof Expression ? toString() : value );
+        cell.storeCellType( getCellType() );
+        return cell;
+    }
+
+    /**
+     * Checks whether the raw value is a whole number, which {@link #wholeNumber()} reads without boxing it.
+     *
+     * @return true if the raw value is a whole number
+     */
+    boolean isWholeNumber()
+    {
+        Object value = getRawValue();
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+    }
+
+    long wholeNumber()
+    {
+        return ( ( Number ) getRawValue() ).longValue();
+    }
+
+    /**
+     * Returns the hash code of the formatted value. Strings and whole numbers of the TEXT type are hashed without
+     * formatting them.
+     *
+     * @return the hash code, equal to the hash code of {@link #toString()}
+     */
+    int keyHash()
+    {
+        if ( getCellType() == TEXT )
+        {
+            if ( isWholeNumber() )
+            {
+                return hashOf( wholeNumber() );
+            }
+            Object value = getRawValue();
+            if ( value instanceof String )
+            {
+                return value.hashCode();
+            }
+        }
+        return toString().hashCode();
+    }
+
+    /**
+     * Checks whether the formatted values of two Cells are equal. Strings and whole numbers of the TEXT type are
+     * compared without formatting them.
+     *
+     * @param other the other Cell
+     * @return true if {@link #toString()} of both Cells is equal
+     */
+    boolean hasSameKey( Cell other )
+    {
+        if ( getCellType() == TEXT && other.getCellType() == TEXT )
+        {
+            boolean whole = isWholeNumber();
+            boolean otherWhole = other.isWholeNumber();
+            if ( whole && otherWhole )
+            {
+                return wholeNumber() == other.wholeNumber();
+            }
+            Object value = whole ? null : getRawValue();
+            Object otherValue = otherWhole ? null : other.getRawValue();
+            if ( whole && otherValue instanceof String )
+            {
+                return matches( ( String ) otherValue, wholeNumber() );
+            }
+            if ( otherWhole && value instanceof String )
+            {
+                return matches( ( String ) value, other.wholeNumber() );
+            }
+            if ( value instanceof String && otherValue instanceof String )
+            {
+                return value.equals( otherValue );
+            }
+        }
+        return toString().equals( other.toString() );
+    }
+
+    /**
+     * Returns the hash code of the decimal text of a whole number, computed from its digits.
+     */
+    private static int hashOf( long value )
+    {
+        long negative = value < 0 ? value : -value;
+        long power = 1;
+        while ( negative / power <= -10 )
+        {
+            power *= 10;
+        }
+        int hash = value < 0 ? '-' : 0;
+        for ( ; power > 0; power /= 10 )
+        {
+            hash = 31 * hash + '0' - ( int ) ( negative / power % 10 );
+        }
+        return hash;
+    }
+
+    /**
+     * Checks whether a text is the decimal text of a whole number, comparing it digit by digit.
+     */
+    private static boolean matches( String text, long value )
+    {
+        int start = value < 0 ? 1 : 0;
+        if ( value < 0 && ( text.isEmpty() || text.charAt( 0 ) != '-' ) )
+        {
+            return false;
+        }
+        long negative = value < 0 ? value : -value;
+        for ( int i = text.length() - 1; i >= start; i-- )
+        {
+            if ( text.charAt( i ) != '0' - ( int ) ( negative % 10 ) )
+            {
+                return false;
+            }
+            negative /= 10;
+            if ( negative == 0 )
+            {
+                return i == start;
+            }
+        }
+        return false;
+    }
+
     void apply( Function<Cell, Object> function )
     {
         setValue( function.apply( this ) );
@@ -66,18 +386,63 @@ public class Cell implements Comparable<Cell>
     }
 
     /**
-     * Returns the value of the Cell. The value is formatted according to the cell type.
+     * Returns the value of the Cell. The value is formatted according to the cell type. The formatted value is kept
+     * until the value or the cell type is set again, the result of an expression is formatted on every call.
      *
      * @return A String representation of the value
      */
     public String getValue()
     {
-        return CellFormatter.format( value instanceof Expression ? ( ( Expression ) value ).getResult() : value
-                .toString(), cellType );
+        Object value = getRawValue();
+        if ( value instanceof Expression )
+        {
+            return CellFormatter.format( ( ( Expression ) value ).getResult(), getCellType() );
+        }
+        String result = getFormatted();
+        if ( result == null )
+        {
+            result = CellFormatter.format( value.toString(), getCellType() );
+            storeFormatted( result );
+        }
+        return result;
+    }
+
+    String getFormatted()
+    {
+        return formatted;
+    }
+
+    void storeFormatted( String value )
+    {
+        if ( !dropsFormatted )
+        {
+            formatted = value;
+        }
+    }
+
+    /**
+     * Tells whether the formatted value is kept until the value or the cell type is set again.
+     *
+     * @param keep false to format the value on every read
+     */
+    void keepFormatted( boolean keep )
+    {
+        dropsFormatted = !keep;
+        if ( !keep )
+        {
+            formatted = null;
+        }
+    }
+
+    void dropFormatted()
+    {
+        formatted = null;
     }
 
     /**
-     * Returns the unformatted value of the Cell.
+     * Returns the unformatted value of the Cell. With {@link type.StorageMode#ROW} this is the value which was set.
+     * The column storage modes return a String as it was set, but return other values with the same text in a type
+     * of their column: whole numbers as Long, and numbers or dates in a column which also holds other text as String.
      *
      * @return The value object
      */
@@ -93,66 +458,200 @@ public class Cell implements Comparable<Cell>
      */
     public boolean getValueAsBoolean()
     {
-        switch ( getRawValue().toString() )
+        Object value = getRawValue();
+        if ( value instanceof Expression )
         {
-            case "true":
-            case "TRUE":
-            case "1":
-                return true;
-            default:
-                return false;
+            return isTrue( ( ( Expression ) value ).getResult() );
         }
+        return ( parse() & TRUE ) != 0;
     }
 
     /**
-     * Returns the value as int.
+     * Returns the value as int. The raw value is parsed only once, the value is not formatted before.
      *
      * @return An int representation of the value
      */
     public int getValueAsInt()
     {
-        String value = getValue();
-        switch ( value )
+        Object value = getRawValue();
+        if ( value instanceof Expression )
         {
-            case "true":
-            case "TRUE":
-            case "1":
-                return 1;
-            default:
-                try
-                {
-                    return Integer.parseInt( value );
-                }
-                catch ( NumberFormatException e )
-                {
-                    return 0;
-                }
+            return intOf( ( ( Expression ) value ).getResult() );
+        }
+        byte flags = parse();
+        if ( ( flags & TRUE ) != 0 )
+        {
+            return 1;
         }
+        return ( flags & INTEGER ) != 0 ? integer : 0;
     }
 
     /**
-     * Returns the value as double.
+     * Returns the value as double. The raw value is parsed only once, the value is not formatted before.
      *
      * @return A double representation of the value
      */
     public double getValueAsDouble()
     {
-        String value = getValue();
-        switch ( value )
+        Object value = getRawValue();
+        if ( value instanceof Expression )
+        {
+            return doubleOf( ( ( Expression ) value ).getResult() );
+        }
+        byte flags = parse();
+        if ( ( flags & TRUE ) != 0 )
         {
-            case "true":
-            case "TRUE":
-            case "1":
-                return 1;
-            default:
+            return 1;
+        }
+        return ( flags & NUMERIC ) != 0 ? number : 0;
+    }
+
+    /**
+     * Tells whether the parsed value may be kept in this Cell. A view on a value stored elsewhere can not see when the
+     * value changes, so it parses the value on every read.
+     *
+     * @return true if the parsed value is kept until the value or the cell type is set again
+     */
+    boolean cachesParse()
+    {
+        return true;
+    }
+
+    /**
+     * Parses the raw value into its numeric representations. The result is kept until the value or the cell type is
+     * set again.
+     *
+     * @return the flags which tell which representations are valid
+     */
+    private byte parse()
+    {
+        boolean caches = cachesParse();
+        byte flags = caches ? parsed : 0;
+        if ( flags != 0 )
+        {
+            return flags;
+        }
+        flags = PARSED;
+        Object value = getRawValue();
+        if ( value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte )
+        {
+            long whole = ( ( Number ) value ).longValue();
+            number = whole;
+            integer = ( int ) whole;
+            flags |= NUMERIC | ( whole == integer ? INTEGER : 0 ) | ( whole == 1 ? TRUE : 0 );
+        }
+        else if ( value instanceof Double )
+        {
+            number = ( Double ) value;
+            flags |= NUMERIC;
+        }
+        else if ( value != null )
+        {
+            String text = value.toString();
+            if ( isTrue( text ) )
+            {
+                flags |= TRUE;
+            }
+            if ( mayBeNumber( text ) )
+            {
                 try
                 {
-                    return Double.parseDouble( value );
+                    number = Double.parseDouble( text );
+                    flags |= NUMERIC;
+                    if ( number == ( int ) number && isInteger( text ) )
+                    {
+                        integer = Integer.parseInt( text );
+                        flags |= INTEGER;
+                    }
                 }
                 catch ( NumberFormatException e )
                 {
-                    return 0;
+                    // not a number or not an int
                 }
+            }
+        }
+        if ( caches )
+        {
+            parsed = flags;
+        }
+        return flags;
+    }
+
+    /**
+     * Checks whether a text consists of digits and an optional sign, so it is read as int unless it is too long.
+     *
+     * @param text the text
+     * @return false if the text is certainly not an int, e.g. "2.0"
+     */
+    private static boolean isInteger( String text )
+    {
+        int start = text.startsWith( "-" ) || text.startsWith( "+" ) ? 1 : 0;
+        for ( int i = start; i < text.length(); i++ )
+        {
+            if ( !Character.isDigit( text.charAt( i ) ) )
+            {
+                return false;
+            }
+        }
+        return text.length() > start;
+    }
+
+    private static boolean isTrue( String value )
+    {
+        return "true".equals( value ) || "TRUE".equals( value ) || "1".equals( value );
+    }
+
+    /**
+     * Checks the first character to avoid the exceptions of parsing text which can not be a number.
+     *
+     * @param text the text
+     * @return false if the text is certainly not a number
+     */
+    private static boolean mayBeNumber( String text )
+    {
+        int start = 0;
+        while ( start < text.length() && text.charAt( start ) <= ' ' )
+        {
+            start++;
+        }
+        if ( start == text.length() )
+        {
+            return false;
+        }
+        char first = text.charAt( start );
+        return Character.isDigit( first ) || first == '-' || first == '+' || first == '.' || first == 'N'
+                || first == 'I';
+    }
+
+    private static int intOf( String value )
+    {
+        if ( isTrue( value ) )
+        {
+            return 1;
+        }
+        try
+        {
+            return Integer.parseInt( value );
+        }
+        catch ( NumberFormatException e )
+        {
+            return 0;
+        }
+    }
+
+    private static double doubleOf( String value )
+    {
+        if ( isTrue( value ) )
+        {
+            return 1;
+        }
+        try
+        {
+            return Double.parseDouble( value );
+        }
+        catch ( NumberFormatException e )
+        {
+            return 0;
         }
     }
 
@@ -165,7 +664,7 @@ public class Cell implements Comparable<Cell>
     @Override
     public String toString()
     {
-        return value != null ? getValue() : StringUtils.EMPTY;
+        return getRawValue() != null ? getValue() : StringUtils.EMPTY;
     }
 
     @Override
@@ -180,36 +679,139 @@ public class Cell implements Comparable<Cell>
         return comparing.compareTo( compareTo );
     }
 
-    class Expression
+    /**
+     * An expression calculates its result with a formula over ranges of cells. The ranges are resolved when the
+     * expression is evaluated, so it does not hold the cells. The result is cached until a cell inside of a range
+     * changes, which marks the expression and all expressions depending on it as dirty. A dirty expression is evaluated
+     * again on the next read. Expressions over other expressions thereby always evaluate their operands first.
+     */
+    static class Expression
     {
-        private final Operation operation;
+        private final Formula formula;
+
+        private int column;
+
+        private int row;
+
+        private volatile String result = StringUtils.EMPTY;
 
-        private final List<Cell> operands;
+        private volatile boolean dirty = true;
 
-        private String result = StringUtils.EMPTY;
+        /**
+         * The expressions which the current thread is evaluating, to detect an expression which uses its own result.
+         */
+        private static final ThreadLocal<Set<Expression>> EVALUATING = ThreadLocal
+                .withInitial( () -> Collections.newSetFromMap( new IdentityHashMap<>() ) );
 
-        Expression( Operation operation, List<Cell> operands )
+        Expression( Formula formula, int column, int row )
         {
-            this.operation = operation;
-            this.operands = operands;
+            this.formula = formula;
+            this.column = column;
+            this.row = row;
         }
 
-        Operation getOperation()
+        Formula getFormula()
         {
-            return operation;
+            return formula;
         }
 
-        List<Cell> getOperands()
+        List<Range> getRanges()
         {
-            return operands;
+            return formula.getRanges();
+        }
+
+        RangeReferences getReferences()
+        {
+            return formula.getReferences();
         }
 
         String getResult()
         {
-            result = ExpressionEvaluator.evaluate( this );
+            if ( dirty )
+            {
+                Set<Expression> evaluating = EVALUATING.get();
+                if ( !evaluating.add( this ) )
+                {
+                    return ExpressionEvaluator.EXPR_ERROR;
+                }
+                try
+                {
+                    result = formula.evaluate();
+                    dirty = false;
+                }
+                finally
+                {
+                    evaluating.remove( this );
+                }
+            }
             return result;
         }
 
+        int getColumn()
+        {
+            return column;
+        }
+
+        int getRow()
+        {
+            return row;
+        }
+
+        /**
+         * Sets the position of the Cell which holds this expression, in case the Cell was moved.
+         *
+         * @param column the column index of the Cell
+         * @param row    the row index of the Cell
+         */
+        void moveTo( int column, int row )
+        {
+            this.column = column;
+            this.row = row;
+        }
+
+        boolean isDirty()
+        {
+            return dirty;
+        }
+
+        /**
+         * Marks this expression and all expressions depending on it as dirty. The dependents are collected in a work
+         * list instead of recursively, so long chains of expressions do not overflow the stack.
+         */
+        void invalidate()
+        {
+            if ( dirty )
+            {
+                return;
+            }
+            dirty = true;
+            Deque<Expression> pending = new ArrayDeque<>();
+            pending.push( this );
+            while ( !pending.isEmpty() )
+            {
+                Expression expression = pending.pop();
+                for ( Expression dependent : expression.getReferences()
+                                                      .dependentsAt( expression.column, expression.row ) )
+                {
+                    if ( !dependent.dirty )
+                    {
+                        dependent.dirty = true;
+                        pending.push( dependent );
+                    }
+                }
+            }
+        }
+
+        void register()
+        {
+            getReferences().add( this );
+        }
+
+        void unregister()
+        {
+            getReferences().remove( this );
+        }
+
         @Override
         public String toString()
         {
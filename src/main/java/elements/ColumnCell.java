@@ -0,0 +1,132 @@
+package elements;
+
+import type.CellType;
+
+/**
+ * A lightweight view on one value of a ColumnVector. It does not hold a value on its own, all reads and writes go to
+ * the column.
+ */
+final class ColumnCell extends Cell
+{
+    private final ColumnVector column;
+
+    private final int row;
+
+    ColumnCell( ColumnVector column, int row )
+    {
+        this.column = column;
+        this.row = row;
+    }
+
+    @Override
+    void storeCellType( CellType cellType )
+    {
+        column.setCellType( row, cellType );
+    }
+
+    @Override
+    void storeValue( Object value )
+    {
+        column.set( row, value );
+    }
+
+    @Override
+    String getFormatted()
+    {
+        return column.getFormatted( row );
+    }
+
+    @Override
+    void storeFormatted( String value )
+    {
+        column.setFormatted( row, value );
+    }
+
+    @Override
+    boolean cachesParse()
+    {
+        return false;
+    }
+
+    @Override
+    double rawNumber()
+    {
+        if ( column.isNumber( row ) )
+        {
+            return column.getNumber( row );
+        }
+        return column.isDate( row ) ? Double.NaN : super.rawNumber();
+    }
+
+    @Override
+    double toNumber()
+    {
+        if ( column.isNumber( row ) && getCellType() == CellType.TEXT )
+        {
+            return column.getNumber( row );
+        }
+        return column.isDate( row ) ? Double.NaN : super.toNumber();
+    }
+
+    @Override
+    double dateKey()
+    {
+        return column.isDate( row ) ? column.getEpochDay( row ) : super.dateKey();
+    }
+
+    @Override
+    boolean isWholeNumber()
+    {
+        return column.isLong( row );
+    }
+
+    @Override
+    long wholeNumber()
+    {
+        return column.getLong( row );
+    }
+
+    @Override
+    public boolean getValueAsBoolean()
+    {
+        return !column.isDate( row ) && super.getValueAsBoolean();
+    }
+
+    @Override
+    public int getValueAsInt()
+    {
+        if ( column.isLong( row ) )
+        {
+            long value = column.getLong( row );
+            return value == ( int ) value ? ( int ) value : 0;
+        }
+        if ( column.isNumber( row ) && !column.hasSpelling( row ) || column.isDate( row ) )
+        {
+            // neither a double nor a date is read as int
+            return 0;
+        }
+        return super.getValueAsInt();
+    }
+
+    @Override
+    public double getValueAsDouble()
+    {
+        if ( column.isNumber( row ) )
+        {
+            return column.getNumber( row );
+        }
+        return column.isDate( row ) ? 0 : super.getValueAsDouble();
+    }
+
+    @Override
+    public CellType getCellType()
+    {
+        return column.getCellType( row );
+    }
+
+    @Override
+    public Object getRawValue()
+    {
+        return column.get( row );
+    }
+}
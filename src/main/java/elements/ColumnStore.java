@@ -0,0 +1,281 @@
+package elements;
+
+import org.apache.commons.lang3.StringUtils;
+import type.CellType;
+
+import java.util.*;
+
+/**
+ * A RecordStore which keeps the values column by column in typed vectors. Records and Cells are created on demand as
+ * views on the columns, so the store itself does not hold an object per value. The vectors can be placed outside of the
+ * Java heap, which keeps the garbage collector from scanning or copying them.
+ */
+class ColumnStore extends RecordStore
+{
+    private final ArrayList<ColumnVector> columns;
+
+    private final boolean offHeap;
+
+    private int rowCount;
+
+    private int formatLimit = -1;
+
+    ColumnStore( int initialCapacity, boolean offHeap )
+    {
+        this.offHeap = offHeap;
+        columns = new ArrayList<>( initialCapacity );
+        fillColumns( initialCapacity, initialCapacity );
+    }
+
+    /**
+     * Creates a new ColumnStore from lines of elements. The lines are consumed one after another, so they do not have
+     * to be held in memory at once.
+     *
+     * @param lines           the lines to store
+     * @param withColumnNames true if the first line describes column names, false otherwise
+     * @param offHeap         true if the values should be stored outside of the Java heap, false otherwise
+     */
+    ColumnStore( Iterator<List<String>> lines, boolean withColumnNames, boolean offHeap )
+    {
+        this.offHeap = offHeap;
+        columns = new ArrayList<>();
+        if ( !lines.hasNext() )
+        {
+            fillColumns( 10, 10 );
+            return;
+        }
+        if ( withColumnNames )
+        {
+            List<String> names = lines.next();
+            setColumnNames( names );
+            fillColumns( names.size(), 0 );
+        }
+        lines.forEachRemaining( this::appendLine );
+    }
+
+    @Override
+    Record getRecord( int index )
+    {
+        List<Cell> cells = new ArrayList<>( columns.size() );
+        columns.forEach( column -> cells.add( new ColumnCell( column, index ) ) );
+        return new Record( cells, this );
+    }
+
+    /**
+     * Copies the values of a row, because the cells of {@link #getRecord(int)} follow the position of the row.
+     */
+    @Override
+    Record detachRecord( int index )
+    {
+        List<Cell> cells = new ArrayList<>( columns.size() );
+        for ( ColumnVector column : columns )
+        {
+            Cell cell = new Cell( column.get( index ) );
+            cell.storeCellType( column.getCellType( index ) );
+            cells.add( cell );
+        }
+        return new Record( cells, null );
+    }
+
+    @Override
+    Cell getCell( int columnIndex, int rowIndex )
+    {
+        return new ColumnCell( columns.get( columnIndex ), rowIndex );
+    }
+
+    @Override
+    void addRow( int rowIndex, List<?> elements )
+    {
+        resizeColumns( elements.size() );
+        for ( int i = 0; i < columns.size(); i++ )
+        {
+            columns.get( i ).insert( rowIndex, i < elements.size() ? elements.get( i ) : StringUtils.EMPTY );
+        }
+        rowCount++;
+        notifyListeners( listener -> listener.rowInserted( rowIndex ) );
+    }
+
+    @Override
+    void setRow( int rowIndex, List<?> elements )
+    {
+        resizeColumns( elements.size() );
+        for ( int i = 0; i < columns.size(); i++ )
+        {
+            ColumnVector column = columns.get( i );
+            column.set( rowIndex, i < elements.size() ? elements.get( i ) : StringUtils.EMPTY );
+            column.setCellType( rowIndex, CellType.TEXT );
+        }
+        notifyListeners( listener -> listener.rowChanged( rowIndex ) );
+    }
+
+    @Override
+    void addColumn( int columnIndex, List<?> elements )
+    {
+        elements = takeColumnName( elements );
+        resizeRows( elements.size() );
+        columns.add( columnIndex, newColumn( elements ) );
+        notifyListeners( listener -> listener.columnInserted( columnIndex ) );
+    }
+
+    @Override
+    void setColumn( int columnIndex, List<?> elements )
+    {
+        resizeRows( elements.size() );
+        columns.set( columnIndex, newColumn( elements ) );
+        notifyListeners( listener -> listener.columnChanged( columnIndex ) );
+    }
+
+    @Override
+    void removeRow( int index )
+    {
+        columns.forEach( column -> column.remove( index ) );
+        rowCount--;
+        notifyListeners( listener -> listener.rowRemoved( index ) );
+    }
+
+    @Override
+    void removeColumn( int index )
+    {
+        columns.remove( index );
+        if ( hasColumnNames() )
+        {
+            removeColumnName( index );
+        }
+        columnRemoved( index );
+    }
+
+    @Override
+    void reorder( int[] order )
+    {
+        columns.forEach( column -> column.permute( order ) );
+    }
+
+    @Override
+    int rowCount()
+    {
+        return rowCount;
+    }
+
+    @Override
+    int columnCount()
+    {
+        return columns.size();
+    }
+
+    @Override
+    int count()
+    {
+        return columns.stream().mapToInt( ColumnVector::count ).sum();
+    }
+
+    @Override
+    List<Cell.Expression> expressions()
+    {
+        List<Cell.Expression> expressions = new ArrayList<>();
+        columns.forEach( column -> column.collectExpressions( expressions ) );
+        return expressions;
+    }
+
+    @Override
+    List<Record> rows()
+    {
+        return new AbstractList<>()
+        {
+            @Override
+            public Record get( int index )
+            {
+                return getRecord( index );
+            }
+
+            @Override
+            public int size()
+            {
+                return rowCount;
+            }
+        };
+    }
+
+    @Override
+    public Iterator<Record> iterator()
+    {
+        return rows().iterator();
+    }
+
+    private void appendLine( List<String> line )
+    {
+        while ( columns.size() < line.size() )
+        {
+            if ( hasColumnNames() )
+            {
+                addColumnName( "COLUMN" );
+            }
+            columns.add( newVector() );
+        }
+        for ( int i = 0; i < columns.size(); i++ )
+        {
+            columns.get( i ).insert( rowCount, i < line.size() ? line.get( i ) : StringUtils.EMPTY );
+        }
+        rowCount++;
+    }
+
+    @Override
+    void setFormatCacheLimit( int limit )
+    {
+        formatLimit = limit;
+        columns.forEach( column -> column.setFormatLimit( limit ) );
+    }
+
+    private ColumnVector newVector()
+    {
+        ColumnVector column = new ColumnVector( rowCount, offHeap );
+        if ( formatLimit >= 0 )
+        {
+            column.setFormatLimit( formatLimit );
+        }
+        return column;
+    }
+
+    private ColumnVector newColumn( List<?> elements )
+    {
+        ColumnVector column = newVector();
+        for ( int i = 0; i < elements.size(); i++ )
+        {
+            column.set( i, elements.get( i ) );
+        }
+        return column;
+    }
+
+    private void fillColumns( int columnCount, int rowCount )
+    {
+        this.rowCount = rowCount;
+        for ( int i = 0; i < columnCount; i++ )
+        {
+            columns.add( newVector() );
+        }
+    }
+
+    private void resizeColumns( int columnSize )
+    {
+        for ( int i = columns.size(); i < columnSize; i++ )
+        {
+            if ( hasColumnNames() )
+            {
+                addColumnName( "COLUMN" );
+            }
+            columns.add( newVector() );
+            int columnIndex = i;
+            notifyListeners( listener -> listener.columnInserted( columnIndex ) );
+        }
+    }
+
+    private void resizeRows( int rowSize )
+    {
+        for ( int i = rowCount; i < rowSize; i++ )
+        {
+            columns.forEach( column -> column.insert( column.size(), StringUtils.EMPTY ) );
+            rowCount++;
+            int rowIndex = i;
+            notifyListeners( listener -> listener.rowInserted( rowIndex ) );
+        }
+    }
+}
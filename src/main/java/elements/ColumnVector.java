@@ -0,0 +1,660 @@
+package elements;
+
+import org.apache.commons.lang3.StringUtils;
+import type.CellType;
+import util.DateParser;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * The values of one column of a ColumnStore. Every value is encoded into a 64 bit slot whose meaning depends on the
+ * kind of the column: a long, the bits of a double, an epoch day or the code of a String in a StringPool. Empty values
+ * are tracked in a null bitmap. Values which can not be encoded (e.g. expressions) are kept aside as objects. The
+ * slots and Strings are kept either on the Java heap or in direct memory. Strings which are overwritten or removed stay
+ * in the pool until their number exceeds the number of rows, then the pool is compacted.
+ * <p>
+ * A column starts with the kind of the first value that is set. A column of whole numbers is widened to doubles if a
+ * double is set, as long as its numbers are exact as doubles. If a value of another kind is set afterwards, the column
+ * falls back to Strings. Strings which are numbers or ISO dates are stored as such, the rows which were set as text are
+ * flagged and the text is kept aside if it differs from the text of the number, so a String is always returned as it
+ * was set.
+ */
+final class ColumnVector
+{
+    private static final CellType[] CELL_TYPES = CellType.values();
+
+    private enum Kind
+    {
+        EMPTY,
+        LONG,
+        DOUBLE,
+        DATE,
+        STRING
+    }
+
+    private Kind kind = Kind.EMPTY;
+
+    private SlotBuffer slots;
+
+    private static final int MIN_REWRITES = 64;
+
+    private StringPool strings;
+
+    /**
+     * The number of Strings which were overwritten or removed since the pool was last compacted.
+     */
+    private int rewrites;
+
+    private int size;
+
+    private final BitSet nulls = new BitSet();
+
+    private final Map<Integer, Object> objects = new HashMap<>();
+
+    /**
+     * The rows whose value was set as text, although it is stored as number or date.
+     */
+    private final BitSet texts = new BitSet();
+
+    /**
+     * The rows of a column of doubles whose value was set as whole number.
+     */
+    private final BitSet wholes = new BitSet();
+
+    /**
+     * The texts of the rows whose number is written differently, e.g. "2.50" or "1e3".
+     */
+    private final Map<Integer, String> spellings = new HashMap<>();
+
+    /**
+     * The formatted values by row, created on the first formatted value and dropped when rows other than the last
+     * move.
+     */
+    private String[] formatted;
+
+    /**
+     * The rows of the formatted values in the order in which they were kept, if their number is limited.
+     */
+    private int[] formattedRows;
+
+    private int nextFormatted;
+
+    private int formatLimit = -1;
+
+    ColumnVector( int size, boolean offHeap )
+    {
+        int capacity = Math.max( size, 10 );
+        slots = offHeap ? SlotBuffer.offHeap( capacity ) : SlotBuffer.onHeap( capacity );
+        strings = offHeap ? StringPool.offHeap() : StringPool.onHeap();
+        this.size = size;
+        nulls.set( 0, size );
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    Object get( int row )
+    {
+        if ( nulls.get( row ) )
+        {
+            return StringUtils.EMPTY;
+        }
+        if ( !objects.isEmpty() && objects.containsKey( row ) )
+        {
+            return objects.get( row );
+        }
+        Object value = decode( row );
+        if ( texts.get( row ) )
+        {
+            String spelling = spellings.isEmpty() ? null : spellings.get( row );
+            return spelling != null ? spelling : value.toString();
+        }
+        return value;
+    }
+
+    void set( int row, Object value )
+    {
+        dropFormatted( row );
+        dropString( row );
+        if ( !objects.isEmpty() )
+        {
+            released( objects.remove( row ) );
+        }
+        texts.clear( row );
+        wholes.clear( row );
+        if ( !spellings.isEmpty() )
+        {
+            spellings.remove( row );
+        }
+        if ( value == null || StringUtils.EMPTY.equals( value ) )
+        {
+            nulls.set( row );
+            return;
+        }
+        if ( value instanceof Cell.Expression )
+        {
+            nulls.clear( row );
+            objects.put( row, value );
+            return;
+        }
+        // the row stays empty until the kind of the column is settled, so widening skips its old slot
+        nulls.set( row );
+        Object stored = value instanceof String ? valueOf( ( String ) value ) : value;
+        Kind valueKind = kindOf( stored );
+        if ( kind == Kind.EMPTY )
+        {
+            kind = valueKind;
+        }
+        else if ( kind != valueKind && kind != Kind.STRING && !widen( valueKind, stored ) )
+        {
+            promoteToString();
+        }
+        nulls.clear( row );
+        if ( kind == Kind.STRING )
+        {
+            slots.setSlot( row, strings.put( value.toString() ) );
+        }
+        else
+        {
+            slots.setSlot( row, encode( stored ) );
+            if ( kind == Kind.DOUBLE && valueKind == Kind.LONG )
+            {
+                wholes.set( row );
+            }
+            if ( stored != value )
+            {
+                texts.set( row );
+                if ( !stored.toString().equals( value ) )
+                {
+                    spellings.put( row, ( String ) value );
+                }
+            }
+        }
+        if ( rewrites > Math.max( size, MIN_REWRITES ) )
+        {
+            compactStrings();
+        }
+    }
+
+    /**
+     * Checks whether the value at a position is stored as number.
+     *
+     * @param row the position
+     * @return true if {@link #getNumber(int)} can read the value without decoding it
+     */
+    boolean isNumber( int row )
+    {
+        return ( kind == Kind.LONG || kind == Kind.DOUBLE ) && !nulls.get( row ) && ( objects.isEmpty() || !objects
+                .containsKey( row ) );
+    }
+
+    /**
+     * Checks whether the value at a position is stored as whole number.
+     *
+     * @param row the position
+     * @return true if {@link #getLong(int)} can read the value without decoding it
+     */
+    boolean isLong( int row )
+    {
+        return ( kind == Kind.LONG || wholes.get( row ) ) && isNumber( row ) && !hasSpelling( row );
+    }
+
+    /**
+     * Checks whether the value at a position was set as text which differs from the text of its number.
+     *
+     * @param row the position
+     * @return true if the text is kept aside
+     */
+    boolean hasSpelling( int row )
+    {
+        return !spellings.isEmpty() && spellings.containsKey( row );
+    }
+
+    /**
+     * Checks whether the value at a position is stored as date.
+     *
+     * @param row the position
+     * @return true if {@link #getEpochDay(int)} can read the value without decoding it
+     */
+    boolean isDate( int row )
+    {
+        return kind == Kind.DATE && !nulls.get( row ) && ( objects.isEmpty() || !objects.containsKey( row ) );
+    }
+
+    long getEpochDay( int row )
+    {
+        return slots.getSlot( row );
+    }
+
+    long getLong( int row )
+    {
+        long slot = slots.getSlot( row );
+        return kind == Kind.LONG ? slot : ( long ) Double.longBitsToDouble( slot );
+    }
+
+    double getNumber( int row )
+    {
+        long slot = slots.getSlot( row );
+        return kind == Kind.LONG ? slot : Double.longBitsToDouble( slot );
+    }
+
+    CellType getCellType( int row )
+    {
+        return CELL_TYPES[slots.getType( row )];
+    }
+
+    void setCellType( int row, CellType cellType )
+    {
+        dropFormatted( row );
+        slots.setType( row, ( byte ) cellType.ordinal() );
+    }
+
+    void insert( int row, Object value )
+    {
+        if ( row < size )
+        {
+            clearFormatted();
+        }
+        slots.ensureCapacity( size + 1 );
+        slots.move( row, row + 1, size - row );
+        slots.setType( row, ( byte ) 0 );
+        shiftBits( nulls, row, 1 );
+        shiftBits( texts, row, 1 );
+        shiftBits( wholes, row, 1 );
+        nulls.set( row );
+        shiftObjects( objects, row, 1 );
+        shiftObjects( spellings, row, 1 );
+        size++;
+        set( row, value );
+    }
+
+    void remove( int row )
+    {
+        clearFormatted();
+        dropString( row );
+        slots.move( row + 1, row, size - row - 1 );
+        released( objects.remove( row ) );
+        texts.clear( row );
+        wholes.clear( row );
+        spellings.remove( row );
+        shiftBits( nulls, row + 1, -1 );
+        shiftBits( texts, row + 1, -1 );
+        shiftBits( wholes, row + 1, -1 );
+        shiftObjects( objects, row + 1, -1 );
+        shiftObjects( spellings, row + 1, -1 );
+        size--;
+        if ( rewrites > Math.max( size, MIN_REWRITES ) )
+        {
+            compactStrings();
+        }
+    }
+
+    /**
+     * Reorders the values. The value at position {@code i} afterwards is the value which was at position
+     * {@code order[i]} before.
+     *
+     * @param order the new order of the rows
+     */
+    void permute( int[] order )
+    {
+        clearFormatted();
+        SlotBuffer newSlots = slots.emptyCopy();
+        BitSet newNulls = new BitSet( size );
+        BitSet newTexts = new BitSet( size );
+        BitSet newWholes = new BitSet( size );
+        Map<Integer, Object> newObjects = new HashMap<>();
+        Map<Integer, String> newSpellings = new HashMap<>();
+        for ( int i = 0; i < size; i++ )
+        {
+            int from = order[i];
+            newSlots.setSlot( i, slots.getSlot( from ) );
+            newSlots.setType( i, slots.getType( from ) );
+            newNulls.set( i, nulls.get( from ) );
+            newTexts.set( i, texts.get( from ) );
+            newWholes.set( i, wholes.get( from ) );
+            if ( !objects.isEmpty() && objects.containsKey( from ) )
+            {
+                newObjects.put( i, objects.get( from ) );
+            }
+            if ( hasSpelling( from ) )
+            {
+                newSpellings.put( i, spellings.get( from ) );
+            }
+        }
+        slots = newSlots;
+        replace( nulls, newNulls );
+        replace( texts, newTexts );
+        replace( wholes, newWholes );
+        objects.clear();
+        objects.putAll( newObjects );
+        spellings.clear();
+        spellings.putAll( newSpellings );
+    }
+
+    private static void replace( BitSet bits, BitSet newBits )
+    {
+        bits.clear();
+        bits.or( newBits );
+    }
+
+    String getFormatted( int row )
+    {
+        String[] values = formatted;
+        return values != null && row < values.length ? values[row] : null;
+    }
+
+    void setFormatted( int row, String value )
+    {
+        if ( formatLimit == 0 )
+        {
+            return;
+        }
+        String[] values = formatted;
+        if ( values == null || row >= values.length )
+        {
+            values = values == null ? new String[Math.max( size, row + 1 )] : Arrays
+                    .copyOf( values, Math.max( size, row + 1 ) );
+            formatted = values;
+        }
+        if ( formattedRows != null )
+        {
+            int oldest = formattedRows[nextFormatted];
+            if ( oldest >= 0 )
+            {
+                values[oldest] = null;
+            }
+            formattedRows[nextFormatted] = row;
+            nextFormatted = ( nextFormatted + 1 ) % formattedRows.length;
+        }
+        values[row] = value;
+    }
+
+    /**
+     * Limits the number of formatted values which are kept. If the limit is reached, the value which was formatted
+     * first is dropped.
+     *
+     * @param limit the maximum number of formatted values, 0 to keep none or a negative number for no limit
+     */
+    void setFormatLimit( int limit )
+    {
+        formatLimit = limit;
+        formattedRows = limit > 0 ? new int[limit] : null;
+        clearFormatted();
+    }
+
+    void dropFormatted( int row )
+    {
+        String[] values = formatted;
+        if ( values != null && row < values.length )
+        {
+            values[row] = null;
+        }
+    }
+
+    /**
+     * Drops all formatted values, as the rows they belong to have moved.
+     */
+    private void clearFormatted()
+    {
+        formatted = null;
+        if ( formattedRows != null )
+        {
+            Arrays.fill( formattedRows, -1 );
+            nextFormatted = 0;
+        }
+    }
+
+    void collectExpressions( List<Cell.Expression> expressions )
+    {
+        objects.values().stream().filter( Cell.Expression.class::isInstance ).map( Cell.Expression.class::cast )
+               .forEach( expressions::add );
+    }
+
+    int count()
+    {
+        int count = 0;
+        for ( int row = nulls.nextClearBit( 0 ); row < size; row = nulls.nextClearBit( row + 1 ) )
+        {
+            if ( !get( row ).toString().isBlank() )
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private Object decode( int row )
+    {
+        long slot = slots.getSlot( row );
+        switch ( kind )
+        {
+            case LONG:
+                return slot;
+            case DOUBLE:
+                double number = Double.longBitsToDouble( slot );
+                return wholes.get( row ) ? ( Object ) ( long ) number : ( Object ) number;
+            case DATE:
+                return LocalDate.ofEpochDay( slot );
+            case STRING:
+                return strings.get( slot );
+            default:
+                return StringUtils.EMPTY;
+        }
+    }
+
+    private long encode( Object value )
+    {
+        switch ( kind )
+        {
+            case LONG:
+                return value instanceof Number ? ( ( Number ) value ).longValue() : Long.parseLong( value.toString() );
+            case DOUBLE:
+                double number = value instanceof Number ? ( ( Number ) value ).doubleValue() : Double
+                        .parseDouble( value.toString() );
+                return Double.doubleToRawLongBits( number );
+            case DATE:
+                return ( ( LocalDate ) value ).toEpochDay();
+            default:
+                return strings.put( value.toString() );
+        }
+    }
+
+    /**
+     * Counts the String at a position as unreferenced, before it is overwritten or removed.
+     */
+    private void dropString( int row )
+    {
+        if ( kind == Kind.STRING && !nulls.get( row ) && ( objects.isEmpty() || !objects.containsKey( row ) ) )
+        {
+            rewrites++;
+        }
+    }
+
+    /**
+     * Copies the Strings which are still referenced into a new pool, so the space of the others is released.
+     */
+    private void compactStrings()
+    {
+        StringPool compacted = strings.emptyCopy();
+        for ( int row = nulls.nextClearBit( 0 ); row < size; row = nulls.nextClearBit( row + 1 ) )
+        {
+            if ( objects.isEmpty() || !objects.containsKey( row ) )
+            {
+                slots.setSlot( row, compacted.put( strings.get( slots.getSlot( row ) ) ) );
+            }
+        }
+        strings = compacted;
+        rewrites = 0;
+    }
+
+    /**
+     * Returns the number of Strings in the pool of this column, including Strings which are no longer referenced.
+     *
+     * @return the number of Strings
+     */
+    int stringCount()
+    {
+        return strings.count();
+    }
+
+    /**
+     * Turns a column of whole numbers into a column of doubles if a double is set, or stores a whole number in a column
+     * of doubles, as long as the numbers are exact as doubles.
+     *
+     * @return false if the column has to fall back to Strings
+     */
+    private boolean widen( Kind valueKind, Object value )
+    {
+        if ( kind == Kind.DOUBLE && valueKind == Kind.LONG )
+        {
+            return isExactDouble( ( ( Number ) value ).longValue() );
+        }
+        if ( kind != Kind.LONG || valueKind != Kind.DOUBLE )
+        {
+            return false;
+        }
+        for ( int row = nulls.nextClearBit( 0 ); row < size; row = nulls.nextClearBit( row + 1 ) )
+        {
+            if ( !objects.containsKey( row ) && !isExactDouble( slots.getSlot( row ) ) )
+            {
+                return false;
+            }
+        }
+        for ( int row = nulls.nextClearBit( 0 ); row < size; row = nulls.nextClearBit( row + 1 ) )
+        {
+            if ( !objects.containsKey( row ) )
+            {
+                slots.setSlot( row, Double.doubleToRawLongBits( slots.getSlot( row ) ) );
+                wholes.set( row );
+            }
+        }
+        kind = Kind.DOUBLE;
+        return true;
+    }
+
+    private static boolean isExactDouble( long value )
+    {
+        return Math.abs( value ) <= 1L << 53;
+    }
+
+    private void promoteToString()
+    {
+        for ( int row = nulls.nextClearBit( 0 ); row < size; row = nulls.nextClearBit( row + 1 ) )
+        {
+            if ( !objects.containsKey( row ) )
+            {
+                slots.setSlot( row, strings.put( get( row ).toString() ) );
+            }
+        }
+        kind = Kind.STRING;
+        texts.clear();
+        wholes.clear();
+        spellings.clear();
+    }
+
+    private void shiftBits( BitSet bits, int from, int distance )
+    {
+        BitSet tail = bits.get( from, size );
+        bits.clear( Math.min( from, from + distance ), size + Math.max( distance, 0 ) );
+        tail.stream().forEach( bit -> bits.set( from + distance + bit ) );
+    }
+
+    private <T> void shiftObjects( Map<Integer, T> values, int from, int distance )
+    {
+        if ( values.isEmpty() )
+        {
+            return;
+        }
+        Map<Integer, T> shifted = new HashMap<>();
+        values.forEach( ( row, value ) -> shifted.put( row >= from ? row + distance : row, value ) );
+        values.clear();
+        values.putAll( shifted );
+    }
+
+    private void released( Object value )
+    {
+        if ( value instanceof Cell.Expression )
+        {
+            ( ( Cell.Expression ) value ).unregister();
+        }
+    }
+
+    private static Kind kindOf( Object value )
+    {
+        if ( value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte )
+        {
+            return Kind.LONG;
+        }
+        if ( value instanceof Double )
+        {
+            return Kind.DOUBLE;
+        }
+        if ( value instanceof LocalDate )
+        {
+            return Kind.DATE;
+        }
+        return Kind.STRING;
+    }
+
+    /**
+     * Reads a text as whole number, as double or as ISO date, without throwing an exception for other text.
+     *
+     * @param text the text
+     * @return a Long, a Double, a LocalDate or the text itself
+     */
+    private static Object valueOf( String text )
+    {
+        int length = text.length();
+        int position = length > 0 && ( text.charAt( 0 ) == '-' || text.charAt( 0 ) == '+' ) ? 1 : 0;
+        int start = position;
+        position = skipDigits( text, position );
+        int integerDigits = position - start;
+        int fractionDigits = 0;
+        boolean whole = true;
+        if ( position < length && text.charAt( position ) == '.' )
+        {
+            int fraction = position + 1;
+            position = skipDigits( text, fraction );
+            fractionDigits = position - fraction;
+            whole = false;
+        }
+        if ( integerDigits + fractionDigits > 0 && position < length && ( text.charAt( position ) == 'e' || text
+                .charAt( position ) == 'E' ) )
+        {
+            position++;
+            if ( position < length && ( text.charAt( position ) == '-' || text.charAt( position ) == '+' ) )
+            {
+                position++;
+            }
+            int exponent = position;
+            position = skipDigits( text, exponent );
+            whole = false;
+            if ( position == exponent )
+            {
+                return text;
+            }
+        }
+        if ( integerDigits + fractionDigits == 0 || position < length )
+        {
+            LocalDate date = DateParser.isoDate( text );
+            return date != null ? date : text;
+        }
+        if ( whole && integerDigits < 19 )
+        {
+            return Long.parseLong( text );
+        }
+        return Double.parseDouble( text );
+    }
+
+    private static int skipDigits( String text, int position )
+    {
+        while ( position < text.length() && text.charAt( position ) >= '0' && text.charAt( position ) <= '9' )
+        {
+            position++;
+        }
+        return position;
+    }
+}
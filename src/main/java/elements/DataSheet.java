@@ -3,10 +3,13 @@ package elements;
 import io.CSVReader;
 import io.CSVWriter;
 import org.apache.commons.lang3.ArrayUtils;
-import org.apache.commons.lang3.builder.CompareToBuilder;
+import org.apache.commons.lang3.StringUtils;
 import type.CellType;
+import type.JoinType;
 import type.Operation;
 import type.SortOrder;
+import type.StorageMode;
+import util.RowBitmap;
 import util.StringConversion;
 
 import java.util.*;
@@ -36,7 +39,19 @@ public class DataSheet implements IApply<DataSheet>
      */
     public DataSheet( int initialCapacity )
     {
-        content = new RecordStore( initialCapacity );
+        this( initialCapacity, StorageMode.ROW );
+    }
+
+    /**
+     * Creates a new DataSheet.
+     *
+     * @param initialCapacity the number of initial rows and columns.
+     * @param storageMode     the layout in which the values are stored, see {@link Cell#getRawValue()} for the types
+     *                        in which the values are returned.
+     */
+    public DataSheet( int initialCapacity, StorageMode storageMode )
+    {
+        content = RecordStore.create( storageMode, initialCapacity );
     }
 
     /**
@@ -46,14 +61,33 @@ public class DataSheet implements IApply<DataSheet>
      */
     public DataSheet( CSVReader reader )
     {
-        List<List<String>> elements = reader.readCSV();
-        boolean withColumnNames = reader.isWithColumnNames();
-        content = new RecordStore( elements, withColumnNames );
+        this( reader, StorageMode.ROW );
+    }
+
+    /**
+     * Creates a new DataSheet.
+     *
+     * @param reader      the CSVReader object which was created with the file to read from.
+     * @param storageMode the layout in which the values are stored, see {@link Cell#getRawValue()} for the types in
+     *                    which the values are returned.
+     */
+    public DataSheet( CSVReader reader, StorageMode storageMode )
+    {
+        content = RecordStore.create( storageMode, reader );
     }
 
     private DataSheet( List<Record> records )
     {
-        content = new RecordStore( records );
+        content = new RowStore( records );
+    }
+
+    DataSheet( List<Record> records, List<String> columnNames )
+    {
+        this( records );
+        if ( columnNames != null )
+        {
+            content.setColumnNames( columnNames );
+        }
     }
 
     /**
@@ -77,8 +111,11 @@ public class DataSheet implements IApply<DataSheet>
     public Record getColumn( int index )
     {
         int safeIndex = getSafeIndex( columnCount(), index );
-        List<Cell> column = new ArrayList<>();
-        content.forEach( row -> column.add( row.get( safeIndex ) ) );
+        List<Cell> column = new ArrayList<>( rowCount() );
+        for ( int i = 0; i < rowCount(); i++ )
+        {
+            column.add( content.getCell( safeIndex, i ) );
+        }
         return content.newRecord( column );
     }
 
@@ -265,6 +302,7 @@ public class DataSheet implements IApply<DataSheet>
         if ( cell != null )
         {
             cell.setValue( value );
+            content.cellChanged( columnIndex, rowIndex );
         }
         return this;
     }
@@ -274,25 +312,59 @@ public class DataSheet implements IApply<DataSheet>
         Cell cell = getCell( columnIndex, rowIndex );
         if ( cell != null )
         {
-            List<Cell> cells = new ArrayList<>();
-            for ( int i = fromRow; i <= toRow; i++ )
-            {
-                for ( int j = fromColumn; j <= toColumn; j++ )
-                {
-                    cells.add( getCell( j, i ) );
-                }
-            }
-            cell.setValue( cell.new Expression( operation, cells ) );
+            Range range = new Range( fromColumn, fromRow, toColumn, toRow );
+            Formula formula = Formula.of( content.references(), operation, range );
+            cell.setValue( new Cell.Expression( formula, columnIndex, rowIndex ) );
+            content.cellChanged( columnIndex, rowIndex );
         }
         return this;
     }
 
+    /**
+     * Sets a formula as value of a cell. A formula starts with '=' and may contain numbers, cell references like B2,
+     * functions over ranges like SUM(B2:B1000) or AVG(D:D), the operators + - * / ^ and parentheses. A formula which can
+     * not be evaluated results in EXPR_ERROR.
+     *
+     * @param columnIndex the column index of the cell
+     * @param rowIndex    the row index of the cell
+     * @param formula     the formula, e.g. =SUM(B2:B1000)*C1/AVG(D:D)
+     * @return the DataSheet object
+     */
+    public DataSheet setFormula( int columnIndex, int rowIndex, String formula )
+    {
+        Cell cell = getCell( columnIndex, rowIndex );
+        if ( cell != null )
+        {
+            Formula compiled = Formula.parse( content.references(), formula );
+            cell.setValue( new Cell.Expression( compiled, columnIndex, rowIndex ) );
+            content.cellChanged( columnIndex, rowIndex );
+        }
+        return this;
+    }
+
+    /**
+     * Gets the formula of a cell as it has been set. References in the text are not adjusted when rows or columns are
+     * inserted or removed, although the formula itself follows them.
+     *
+     * @param columnIndex the column index of the cell
+     * @param rowIndex    the row index of the cell
+     * @return the formula or null if the cell does not hold a formula
+     */
+    public String getFormula( int columnIndex, int rowIndex )
+    {
+        Cell cell = getCell( columnIndex, rowIndex );
+        if ( cell != null && cell.getRawValue() instanceof Cell.Expression )
+        {
+            return ( ( Cell.Expression ) cell.getRawValue() ).getFormula().getText();
+        }
+        return null;
+    }
 
     Cell getCell( int columnIndex, int rowIndex )
     {
         if ( rowIndex < rowCount() && columnIndex < columnCount() )
         {
-            return content.getRecord( rowIndex ).get( columnIndex );
+            return content.getCell( columnIndex, rowIndex );
         }
         return null;
     }
@@ -328,6 +400,7 @@ public class DataSheet implements IApply<DataSheet>
         if ( cell != null )
         {
             cell.setCellType( cellType );
+            content.cellChanged( columnIndex, rowIndex );
         }
         return this;
     }
@@ -344,6 +417,7 @@ public class DataSheet implements IApply<DataSheet>
         if ( rowIndex < rowCount() )
         {
             content.getRecord( rowIndex ).forEach( cell -> cell.setCellType( cellType ) );
+            content.rowChanged( rowIndex );
         }
         return this;
     }
@@ -359,7 +433,11 @@ public class DataSheet implements IApply<DataSheet>
     {
         if ( columnIndex < columnCount() )
         {
-            content.forEach( row -> row.get( columnIndex ).setCellType( cellType ) );
+            for ( int i = 0; i < rowCount(); i++ )
+            {
+                content.getCell( columnIndex, i ).setCellType( cellType );
+            }
+            content.columnChanged( columnIndex );
         }
         return this;
     }
@@ -383,11 +461,11 @@ public class DataSheet implements IApply<DataSheet>
         {
             return null;
         }
-        List<Record> result = new ArrayList<>();
+        List<Record> result = new ArrayList<>( toRow - fromRow + 1 );
         for ( int i = fromRow; i <= toRow; i++ )
         {
             Record row = content.getRecord( i );
-            List<Cell> cells = new ArrayList<>();
+            List<Cell> cells = new ArrayList<>( toColumn - fromColumn + 1 );
             for ( int j = fromColumn; j <= toColumn; j++ )
             {
                 cells.add( row.get( j ) );
@@ -397,6 +475,41 @@ public class DataSheet implements IApply<DataSheet>
         return Collections.unmodifiableList( result );
     }
 
+    /**
+     * Returns a view on a range of rows, which reads the rows from the DataSheet instead of copying them. Rows past the
+     * end of the DataSheet are left out.
+     *
+     * @param fromRow the index of the first row
+     * @param toRow   the index of the last row, inclusive
+     * @return the view or null if the range is invalid
+     */
+    public SelectionView slice( int fromRow, int toRow )
+    {
+        return fromRow >= 0 && fromRow <= toRow ? SelectionView.slice( content, fromRow, toRow ) : null;
+    }
+
+    /**
+     * Starts a query over the DataSheet, which is planned and run by {@link Query#execute()}.
+     *
+     * @return the new Query
+     */
+    public Query query()
+    {
+        return new Query( content );
+    }
+
+    /**
+     * Returns a view on the rows which match a predicate. The rows are selected when the view is read first and
+     * again after the DataSheet has changed, views of views select from the rows of their view only.
+     *
+     * @param predicate the predicate
+     * @return the view
+     */
+    public SelectionView where( Predicate<Record> predicate )
+    {
+        return SelectionView.filter( content, predicate );
+    }
+
     /**
      * Saves the content of the DataSheet.
      *
@@ -409,6 +522,19 @@ public class DataSheet implements IApply<DataSheet>
         return this;
     }
 
+    /**
+     * Sets the number of rows from which on the DataSheet is sorted in parallel. Parallel and sequential sorting result
+     * in the same order.
+     *
+     * @param rows the number of rows, by default 65536
+     * @return the DataSheet object
+     */
+    public DataSheet setParallelSortThreshold( int rows )
+    {
+        content.setParallelSortThreshold( rows );
+        return this;
+    }
+
     /**
      * Sorts the DataSheet in ascending order.
      *
@@ -439,7 +565,84 @@ public class DataSheet implements IApply<DataSheet>
      */
     public DataSheet sort( LinkedHashMap<Integer, SortOrder> sortMap )
     {
-        Set<Integer> columns = sortMap.keySet();
+        if ( !isSafeColumn( columnsOf( sortMap ) ) )
+        {
+            return this;
+        }
+        content.sort( columnsOf( sortMap ), descendingOf( sortMap ) );
+        return this;
+    }
+
+    /**
+     * Returns the first rows of the order in which the DataSheet would be sorted, without sorting the DataSheet. The
+     * rows are selected with a bounded heap, which is faster than sorting all rows if only a few rows are needed.
+     *
+     * @param n       the maximum number of rows to return
+     * @param sortMap A LinkedHashMap that can contain multiple entries for sort operations. A sort operation is defined by the column index and the sort order.
+     * @return a new DataSheet with the rows in sorted order or null if n is less than 1 or a column is not found
+     */
+    public DataSheet topN( int n, LinkedHashMap<Integer, SortOrder> sortMap )
+    {
+        return select( n, sortMap, false );
+    }
+
+    /**
+     * Returns the last rows of the order in which the DataSheet would be sorted, without sorting the DataSheet.
+     *
+     * @param n       the maximum number of rows to return
+     * @param sortMap A LinkedHashMap that can contain multiple entries for sort operations. A sort operation is defined by the column index and the sort order.
+     * @return a new DataSheet with the rows in sorted order or null if n is less than 1 or a column is not found
+     */
+    public DataSheet bottomN( int n, LinkedHashMap<Integer, SortOrder> sortMap )
+    {
+        return select( n, sortMap, true );
+    }
+
+    /**
+     * Creates a view which shows the rows of the DataSheet in sorted order, without sorting the DataSheet. The view
+     * follows the changes of the DataSheet until it is closed. Changes only cost a constant time each, the first read
+     * afterwards reads the order of all rows once, or sorts the rows again after a row has been inserted or removed in
+     * between.
+     *
+     * @param sortMap A LinkedHashMap that can contain multiple entries for sort operations. A sort operation is defined by the column index and the sort order.
+     * @return the view or null if a column is not found
+     */
+    public SheetView sortedView( LinkedHashMap<Integer, SortOrder> sortMap )
+    {
+        if ( !isSafeColumn( columnsOf( sortMap ) ) )
+        {
+            return null;
+        }
+        return new SheetView( content, columnsOf( sortMap ), descendingOf( sortMap ) );
+    }
+
+    private DataSheet select( int n, LinkedHashMap<Integer, SortOrder> sortMap, boolean last )
+    {
+        if ( n < 1 || !isSafeColumn( columnsOf( sortMap ) ) )
+        {
+            return null;
+        }
+        return new DataSheet( content.select( columnsOf( sortMap ), descendingOf( sortMap ), n, last ) );
+    }
+
+    private static int[] columnsOf( LinkedHashMap<Integer, SortOrder> sortMap )
+    {
+        return sortMap.keySet().stream().mapToInt( Integer::intValue ).toArray();
+    }
+
+    private static boolean[] descendingOf( LinkedHashMap<Integer, SortOrder> sortMap )
+    {
+        boolean[] descending = new boolean[sortMap.size()];
+        int key = 0;
+        for ( SortOrder order : sortMap.values() )
+        {
+            descending[key++] = order == SortOrder.DESC;
+        }
+        return descending;
+    }
+
+    private DataSheet sort( SortOrder order, int... columns )
+    {
         for ( int columnIndex : columns )
         {
             if ( !isSafeIndex( columnIndex, columnCount() ) )
@@ -447,51 +650,397 @@ public class DataSheet implements IApply<DataSheet>
                 return this;
             }
         }
-        content.sort( ( r1, r2 ) ->
+        boolean[] descending = new boolean[columns.length];
+        Arrays.fill( descending, order == SortOrder.DESC );
+        content.sort( columns, descending );
+        return this;
+    }
+
+    /**
+     * Evaluates all expressions whose operands have changed. Expressions which do not depend on each other are
+     * evaluated in parallel using one thread per available processor.
+     *
+     * @return the DataSheet object
+     */
+    public DataSheet recalculate()
+    {
+        return recalculate( Runtime.getRuntime().availableProcessors() );
+    }
+
+    /**
+     * Evaluates all expressions whose operands have changed. Expressions which do not depend on each other are
+     * evaluated in parallel, expressions over other expressions wait until their operands are evaluated.
+     *
+     * @param parallelism the number of threads to use, at least 1
+     * @return the DataSheet object
+     * @throws IllegalArgumentException if the parallelism is less than 1
+     */
+    public DataSheet recalculate( int parallelism )
+    {
+        ExpressionEvaluator.evaluateAll( content.expressions(), parallelism );
+        return this;
+    }
+
+    /**
+     * Limits the number of formatted values which are kept per column. By default, every cell keeps its formatted value
+     * until its value or type changes, so rendering or saving a DataSheet formats each cell only once. With a limit,
+     * the values which were formatted first are dropped first. The limit applies to COLUMN and OFF_HEAP storage, in
+     * ROW storage every Cell keeps its own formatted value unless the limit is 0.
+     *
+     * @param limit the maximum number of formatted values per column, 0 to keep none or a negative number for no limit
+     * @return the DataSheet object
+     */
+    public DataSheet setFormatCacheLimit( int limit )
+    {
+        content.setFormatCacheLimit( limit );
+        return this;
+    }
+
+    /**
+     * Creates an index over the numeric values which answers range aggregates in O(log rows * log columns). The index is
+     * kept up to date when the DataSheet changes, it is only worth its memory if many ranges are aggregated.
+     *
+     * @return the DataSheet object
+     */
+    public DataSheet createRangeIndex()
+    {
+        content.createRangeIndex();
+        return this;
+    }
+
+    /**
+     * Drops the index created by {@link #createRangeIndex()}.
+     *
+     * @return the DataSheet object
+     */
+    public DataSheet dropRangeIndex()
+    {
+        content.dropRangeIndex();
+        return this;
+    }
+
+    /**
+     * Creates a hash index over the values of a column, which finds the rows with a value by {@link #lookup(int,
+     * Object)} without comparing all rows. The index is kept up to date when the DataSheet changes and follows the
+     * column if columns are inserted or removed before it.
+     *
+     * @param column the index of the column
+     * @return the DataSheet object
+     */
+    public DataSheet createIndex( int column )
+    {
+        if ( isSafeColumn( column ) )
+        {
+            content.createHashIndex( column );
+        }
+        return this;
+    }
+
+    /**
+     * Drops the index created by {@link #createIndex(int)}.
+     *
+     * @param column the index of the column
+     * @return the DataSheet object
+     */
+    public DataSheet dropIndex( int column )
+    {
+        content.dropHashIndex( column );
+        return this;
+    }
+
+    /**
+     * Finds the rows whose formatted value in a column equals a value. Uses the index of the column if it has been
+     * created, otherwise all rows are compared.
+     *
+     * @param column the index of the column
+     * @param value  the value
+     * @return the rows in their order or null if the column is not found
+     */
+    public List<Record> lookup( int column, Object value )
+    {
+        RowBitmap selection = select( column, new Object[]{ value } );
+        return selection != null ? rows( selection ) : null;
+    }
+
+    /**
+     * Selects the rows whose formatted value in a column equals one of some values. Uses the index of the column if
+     * it has been created, otherwise all rows are compared. Filters over several columns are combined by {@link
+     * RowBitmap#and(RowBitmap)} and {@link RowBitmap#or(RowBitmap)} and read by {@link #rows(RowBitmap)}.
+     *
+     * @param column the index of the column
+     * @param values the values
+     * @return the indices of the rows or null if the column is not found
+     */
+    public RowBitmap select( int column, Object... values )
+    {
+        if ( !isSafeColumn( column ) )
+        {
+            return null;
+        }
+        Set<String> texts = new HashSet<>();
+        for ( Object value : values )
+        {
+            texts.add( value != null ? value.toString() : StringUtils.EMPTY );
+        }
+        HashIndex index = content.getHashIndex( column );
+        RowBitmap selection = new RowBitmap();
+        if ( index != null )
+        {
+            for ( String text : texts )
+            {
+                selection = selection.or( index.lookup( text ) );
+            }
+        }
+        else
         {
-            CompareToBuilder builder = new CompareToBuilder();
-            sortMap.forEach( ( columnIndex, sortOrder ) ->
+            for ( int row = 0; row < rowCount(); row++ )
             {
-                switch ( sortOrder )
+                if ( texts.contains( content.getCell( column, row ).toString() ) )
                 {
-                    case ASC:
-                        builder.append( r1.get( columnIndex ), r2.get( columnIndex ) );
-                        break;
-                    case DESC:
-                        builder.append( r2.get( columnIndex ), r1.get( columnIndex ) );
+                    selection.add( row );
                 }
-            } );
-            return builder.toComparison();
+            }
+        }
+        return selection;
+    }
+
+    /**
+     * Returns selected rows of the DataSheet.
+     *
+     * @param selection the indices of the rows, indices which are not found are skipped
+     * @return the rows in their order
+     */
+    public List<Record> rows( RowBitmap selection )
+    {
+        List<Record> records = new ArrayList<>( selection.cardinality() );
+        selection.forEach( row ->
+        {
+            if ( row < rowCount() )
+            {
+                records.add( content.getRecord( row ) );
+            }
         } );
+        return Collections.unmodifiableList( records );
+    }
+
+    /**
+     * Creates a zone map over a column, which keeps the minimum and the maximum value of each chunk of rows so that
+     * {@link #selectRange(int, Object, Object)} and {@link #aggregateBetween(Operation, int, Object, Object)} skip the
+     * chunks which can not match. Range aggregates over the column take the chunks inside of the range from their
+     * statistics. It is kept up to date when the DataSheet changes.
+     *
+     * @param column the index of the column
+     * @return the DataSheet object
+     */
+    public DataSheet createZoneMap( int column )
+    {
+        if ( isSafeColumn( column ) )
+        {
+            content.createZoneMap( column );
+        }
         return this;
     }
 
-    private DataSheet sort( SortOrder order, int... columns )
+    /**
+     * Drops the zone map created by {@link #createZoneMap(int)}.
+     *
+     * @param column the index of the column
+     * @return the DataSheet object
+     */
+    public DataSheet dropZoneMap( int column )
     {
-        for ( int columnIndex : columns )
+        content.dropZoneMap( column );
+        return this;
+    }
+
+    /**
+     * Selects the rows whose value in a column is inside of a range. Numbers are compared by their value and dates by
+     * their day, cells with neither never match. Uses the zone map of the column if it has been created, otherwise all
+     * rows are compared.
+     *
+     * @param column the index of the column
+     * @param from   the lower bound as Number, LocalDate or their text, inclusive, or null for no lower bound
+     * @param to     the upper bound as Number, LocalDate or their text, inclusive, or null for no upper bound
+     * @return the indices of the rows or null if the column is not found or a bound is neither a number nor a date
+     */
+    public RowBitmap selectRange( int column, Object from, Object to )
+    {
+        double lower = from != null ? ZoneMap.keyOf( from ) : Double.NEGATIVE_INFINITY;
+        double upper = to != null ? ZoneMap.keyOf( to ) : Double.POSITIVE_INFINITY;
+        if ( !isSafeColumn( column ) || Double.isNaN( lower ) || Double.isNaN( upper ) )
         {
-            if ( !isSafeIndex( columnIndex, columnCount() ) )
+            return null;
+        }
+        ZoneMap zoneMap = content.getZoneMap( column );
+        if ( zoneMap != null )
+        {
+            return zoneMap.select( lower, upper );
+        }
+        RowBitmap selection = new RowBitmap();
+        for ( int row = 0; row < rowCount(); row++ )
+        {
+            double key = ZoneMap.keyOf( content.getCell( column, row ) );
+            if ( key >= lower && key <= upper )
             {
-                return this;
+                selection.add( row );
             }
         }
-        content.sort( ( r1, r2 ) ->
+        return selection;
+    }
+
+    /**
+     * Calculates an operation over the values of a column in selected rows, skipping values which are not numeric.
+     *
+     * @param operation the operation
+     * @param column    the index of the column
+     * @param selection the indices of the rows, indices which are not found are skipped
+     * @return the result or NaN if the column is not found or there are not enough numeric values
+     */
+    public double aggregate( Operation operation, int column, RowBitmap selection )
+    {
+        if ( !isSafeColumn( column ) )
+        {
+            return Double.NaN;
+        }
+        Statistics statistics = new Statistics( EnumSet.of( operation ), true );
+        selection.forEach( row ->
         {
-            CompareToBuilder builder = new CompareToBuilder();
-            for ( int columnIndex : columns )
+            if ( row < rowCount() )
             {
-                switch ( order )
+                statistics.accept( content.getCell( column, row ) );
+            }
+        } );
+        return statistics.get( operation );
+    }
+
+    /**
+     * Calculates an operation over the values of a column which are inside of a range, skipping values which are not
+     * numeric. Uses the zone map of the column if it has been created, otherwise all rows are compared.
+     *
+     * @param operation the operation
+     * @param column    the index of the column
+     * @param from      the lower bound as Number, LocalDate or their text, inclusive, or null for no lower bound
+     * @param to        the upper bound as Number, LocalDate or their text, inclusive, or null for no upper bound
+     * @return the result or NaN if the column is not found, a bound is neither a number nor a date or there are not
+     * enough numeric values
+     */
+    public double aggregateBetween( Operation operation, int column, Object from, Object to )
+    {
+        double lower = from != null ? ZoneMap.keyOf( from ) : Double.NEGATIVE_INFINITY;
+        double upper = to != null ? ZoneMap.keyOf( to ) : Double.POSITIVE_INFINITY;
+        if ( !isSafeColumn( column ) || Double.isNaN( lower ) || Double.isNaN( upper ) )
+        {
+            return Double.NaN;
+        }
+        Statistics statistics = new Statistics( EnumSet.of( operation ), true );
+        ZoneMap zoneMap = content.getZoneMap( column );
+        if ( zoneMap != null )
+        {
+            zoneMap.aggregateRange( lower, upper, statistics );
+            return statistics.get( operation );
+        }
+        for ( int row = 0; row < rowCount(); row++ )
+        {
+            Cell cell = content.getCell( column, row );
+            double key = ZoneMap.keyOf( cell );
+            if ( key >= lower && key <= upper )
+            {
+                statistics.accept( cell );
+            }
+        }
+        return statistics.get( operation );
+    }
+
+    /**
+     * Calculates an operation over a range of cells like an expression does, but without storing the result. Uses the
+     * range index if it has been created, otherwise the zone maps of the columns.
+     *
+     * @param operation  the operation
+     * @param fromColumn the index of the start column
+     * @param fromRow    the index of the start row
+     * @param toColumn   the index of the end column
+     * @param toRow      the index of the end row
+     * @return the result or NaN if the range is not inside the DataSheet
+     */
+    public double aggregate( Operation operation, int fromColumn, int fromRow, int toColumn, int toRow )
+    {
+        if ( !isSafeRange( fromColumn, fromRow, toColumn, toRow ) )
+        {
+            return Double.NaN;
+        }
+        if ( content.getRangeIndex() != null && RangeIndex.supports( operation ) )
+        {
+            return content.getRangeIndex().aggregate( operation, fromColumn, fromRow, toColumn, toRow, false );
+        }
+        Statistics statistics = zoneMapStatistics( EnumSet.of( operation ), fromColumn, fromRow, toColumn, toRow );
+        if ( statistics != null )
+        {
+            return statistics.get( operation );
+        }
+        Range range = new Range( fromColumn, fromRow, toColumn, toRow );
+        return ExpressionEvaluator.calculate( operation, content.references().cellsOf( range ) );
+    }
+
+    /**
+     * Calculates a number of operations over a range of cells. All operations are calculated in one pass over the
+     * cells, chunks of columns with a zone map are taken from their statistics.
+     *
+     * @param operations the operations
+     * @param fromColumn the index of the start column
+     * @param fromRow    the index of the start row
+     * @param toColumn   the index of the end column
+     * @param toRow      the index of the end row
+     * @return the results by operation or null if the range is not inside the DataSheet
+     */
+    public Map<Operation, Double> aggregate( Set<Operation> operations, int fromColumn, int fromRow, int toColumn, int toRow )
+    {
+        if ( !isSafeRange( fromColumn, fromRow, toColumn, toRow ) )
+        {
+            return null;
+        }
+        Statistics statistics = zoneMapStatistics( operations, fromColumn, fromRow, toColumn, toRow );
+        if ( statistics != null )
+        {
+            return statistics.get( operations );
+        }
+        Range range = new Range( fromColumn, fromRow, toColumn, toRow );
+        return ExpressionEvaluator.calculate( operations, content.references().cellsOf( range ) );
+    }
+
+    /**
+     * Gathers the statistics of a range of cells from the zone maps of its columns, the cells of columns without a zone
+     * map are read.
+     *
+     * @return the statistics or null if none of the columns has a zone map
+     */
+    private Statistics zoneMapStatistics( Set<Operation> operations, int fromColumn, int fromRow, int toColumn, int toRow )
+    {
+        List<ZoneMap> zoneMaps = new ArrayList<>();
+        for ( int column = fromColumn; column <= toColumn; column++ )
+        {
+            zoneMaps.add( content.getZoneMap( column ) );
+        }
+        if ( zoneMaps.stream().allMatch( Objects::isNull ) )
+        {
+            return null;
+        }
+        Statistics statistics = new Statistics( operations, false );
+        for ( int column = fromColumn; column <= toColumn; column++ )
+        {
+            ZoneMap zoneMap = zoneMaps.get( column - fromColumn );
+            if ( zoneMap != null )
+            {
+                zoneMap.aggregateRows( fromRow, toRow, statistics );
+            }
+            else
+            {
+                for ( int row = fromRow; row <= toRow; row++ )
                 {
-                    case ASC:
-                        builder.append( r1.get( columnIndex ), r2.get( columnIndex ) );
-                        break;
-                    case DESC:
-                        builder.append( r2.get( columnIndex ), r1.get( columnIndex ) );
+                    statistics.accept( content.getCell( column, row ) );
                 }
             }
-            return builder.toComparison();
-        } );
-        return this;
+        }
+        return statistics;
     }
 
     /**
@@ -503,6 +1052,7 @@ public class DataSheet implements IApply<DataSheet>
     public DataSheet apply( Function<Cell, Object> function )
     {
         content.forEach( row -> row.forEach( cell -> cell.apply( function ) ) );
+        content.contentChanged();
         return this;
     }
 
@@ -516,20 +1066,141 @@ public class DataSheet implements IApply<DataSheet>
     public DataSheet applyIf( Predicate<Cell> predicate, Function<Cell, Object> function )
     {
         content.forEach( row -> row.cells().stream().filter( predicate ).forEach( cell -> cell.apply( function ) ) );
+        content.contentChanged();
         return this;
     }
 
+    /**
+     * Joins the rows of this DataSheet with the rows of another DataSheet whose key column has the same value.
+     *
+     * @param other       the other DataSheet
+     * @param leftColumn  the key column of this DataSheet
+     * @param rightColumn the key column of the other DataSheet
+     * @param joinType    the type of the join
+     * @return a new DataSheet or null if a column is not found
+     * @see #join(DataSheet, int[], int[], JoinType)
+     */
+    public DataSheet join( DataSheet other, int leftColumn, int rightColumn, JoinType joinType )
+    {
+        return join( other, new int[]{ leftColumn }, new int[]{ rightColumn }, joinType );
+    }
+
+    /**
+     * Joins the rows of this DataSheet with the rows of another DataSheet whose key columns have the same values. The
+     * result has the columns of this DataSheet followed by the columns of the other DataSheet, and the rows of this
+     * DataSheet in their order, each followed by its matches in the order of the other DataSheet. Rows of the other
+     * DataSheet without a match come last. Missing rows of an outer join are filled with empty cells, and a row with an
+     * empty key value never matches. The join is a hash join over the smaller DataSheet.
+     *
+     * @param other        the other DataSheet
+     * @param leftColumns  the key columns of this DataSheet
+     * @param rightColumns the key columns of the other DataSheet, in the same order
+     * @param joinType     the type of the join
+     * @return a new DataSheet or null if the number of key columns differs or a column is not found
+     */
+    public DataSheet join( DataSheet other, int[] leftColumns, int[] rightColumns, JoinType joinType )
+    {
+        if ( leftColumns.length == 0 || leftColumns.length != rightColumns.length || !isSafeColumn( leftColumns )
+                || !other.isSafeColumn( rightColumns ) )
+        {
+            return null;
+        }
+        return new HashJoin( content, leftColumns.clone(), other.content, rightColumns.clone(), joinType ).join();
+    }
+
+    /**
+     * Joins the rows of this DataSheet with the rows of another DataSheet like
+     * {@link #join(DataSheet, int[], int[], JoinType)}, but by sorting the order of the rows of both DataSheets by the
+     * key columns and merging them. Neither DataSheet is reordered. The result is ordered by the keys, and keys which
+     * are compared as equal by sorting, like 1 and 1.0, match.
+     *
+     * @param other        the other DataSheet
+     * @param leftColumns  the key columns of this DataSheet
+     * @param rightColumns the key columns of the other DataSheet, in the same order
+     * @param joinType     the type of the join
+     * @return a new DataSheet or null if the number of key columns differs or a column is not found
+     * @see MergeJoin
+     */
+    public DataSheet mergeJoin( DataSheet other, int[] leftColumns, int[] rightColumns, JoinType joinType )
+    {
+        if ( leftColumns.length == 0 || leftColumns.length != rightColumns.length || !isSafeColumn( leftColumns )
+                || !other.isSafeColumn( rightColumns ) )
+        {
+            return null;
+        }
+        return MergeJoin.join( content, leftColumns.clone(), other.content, rightColumns.clone(), joinType );
+    }
+
+    /**
+     * Groups the rows by a key. The groups are ordered by their first row and keep the order of their rows.
+     *
+     * @param function the function which determines the key of a row
+     * @return a new DataSheet per group
+     */
     public List<DataSheet> groupBy( Function<Record, String> function )
     {
-        Map<String, List<Record>> groups = content.rows().stream()
-                                                  .collect( Collectors.groupingBy( row -> function.apply( row ) ) );
-        return groups.values().stream().map( DataSheet::new ).collect( Collectors.toList() );
+        return toSheets( content.group( function, false ) );
+    }
+
+    /**
+     * Groups the rows by a key like {@link #groupBy(Function)}, using all available processors. The function is called
+     * from several threads.
+     *
+     * @param function the function which determines the key of a row
+     * @return a new DataSheet per group
+     */
+    public List<DataSheet> parallelGroupBy( Function<Record, String> function )
+    {
+        return toSheets( content.group( function, true ) );
     }
 
+    /**
+     * Groups the rows by the values of a number of columns. The groups are aggregated by
+     * {@link Grouping#aggregate(Aggregation...)} in a single pass.
+     *
+     * @param columns the columns to group by
+     * @return the grouping or null if a column is not found
+     */
+    public Grouping groupBy( int... columns )
+    {
+        if ( !isSafeColumn( columns ) )
+        {
+            return null;
+        }
+        return new Grouping( content, columns.clone() );
+    }
+
+    /**
+     * Splits the rows into the rows which match a predicate and the rows which do not. The partitions are ordered by
+     * their first row and keep the order of their rows.
+     *
+     * @param predicate the predicate
+     * @return a new DataSheet per partition
+     */
     public List<DataSheet> partition( Predicate<Record> predicate )
     {
-        Map<Boolean, List<Record>> groups = content.rows().stream()
-                                                   .collect( Collectors.groupingBy( row -> predicate.test( row ) ) );
+        return toSheets( content.group( predicate::test, false ) );
+    }
+
+    /**
+     * Splits the rows like {@link #partition(Predicate)}, using all available processors. The predicate is called
+     * from several threads.
+     *
+     * @param predicate the predicate
+     * @return a new DataSheet per partition
+     */
+    public List<DataSheet> parallelPartition( Predicate<Record> predicate )
+    {
+        return toSheets( content.group( predicate::test, true ) );
+    }
+
+    RecordStore content()
+    {
+        return content;
+    }
+
+    private static List<DataSheet> toSheets( Map<?, List<Record>> groups )
+    {
         return groups.values().stream().map( DataSheet::new ).collect( Collectors.toList() );
     }
 
@@ -545,6 +1216,11 @@ public class DataSheet implements IApply<DataSheet>
         return index >= 0 && index < max;
     }
 
+    private boolean isSafeRange( int fromColumn, int fromRow, int toColumn, int toRow )
+    {
+        return fromColumn <= toColumn && fromRow <= toRow && isSafeColumn( fromColumn, toColumn ) && isSafeRow( fromRow, toRow );
+    }
+
     private boolean isSafeRow( int... rows )
     {
         for ( int row : rows )
@@ -1,61 +1,167 @@
 package elements;
 
-import java.util.List;
+import type.Operation;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 final class ExpressionEvaluator
 {
-    private static final String EXPR_ERROR = "EXPR_ERROR";
+    static final String EXPR_ERROR = "EXPR_ERROR";
+
+    /**
+     * The number of expressions which one task evaluates without splitting them further.
+     */
+    private static final int TASK_SIZE = 64;
+
+    /**
+     * The pool of the last parallelism other than that of the common pool. Its threads end when they have been idle
+     * for a while, so a pool which is replaced by a pool of another parallelism is collected afterwards.
+     */
+    private static volatile ForkJoinPool pool;
 
     private ExpressionEvaluator()
     {
 
     }
 
-    static String evaluate( Cell.Expression expression )
+    /**
+     * Calculates an operation over a number of cells.
+     *
+     * @param operation the operation
+     * @param operands  the cells to calculate the operation over
+     * @return the result
+     */
+    static double calculate( Operation operation, List<Cell> operands )
     {
-        switch ( expression.getOperation() )
-        {
-            case SUM:
-                return sum( expression.getOperands() );
-            case AVG:
-                return avg( expression.getOperands() );
-            case COUNT:
-                return count( expression.getOperands() );
-            default:
-                return EXPR_ERROR;
-        }
+        return Statistics.of( EnumSet.of( operation ), operands ).get( operation );
     }
 
-    private static String count( List<Cell> operands )
+    /**
+     * Calculates a number of operations over a number of cells in one pass.
+     *
+     * @param operations the operations
+     * @param operands   the cells to calculate the operations over
+     * @return the results by operation
+     */
+    static Map<Operation, Double> calculate( Set<Operation> operations, List<Cell> operands )
     {
-        return String.valueOf( operands.size() );
+        return Statistics.of( operations, operands ).get( operations );
     }
 
-    private static String avg( List<Cell> operands )
+    /**
+     * Evaluates a number of expressions in parallel. The expressions are grouped into levels, an expression is placed
+     * one level above the highest of the dirty expressions it uses as operands. The levels are evaluated one after
+     * another, all expressions of one level in parallel.
+     *
+     * @param expressions the expressions to evaluate
+     * @param parallelism the number of threads to use
+     * @throws IllegalArgumentException if the parallelism is less than 1
+     */
+    static void evaluateAll( List<Cell.Expression> expressions, int parallelism )
     {
-        return String.valueOf( sumValues( operands ) / operands.size() );
+        if ( parallelism < 1 )
+        {
+            throw new IllegalArgumentException( "The parallelism must be at least 1." );
+        }
+        List<List<Cell.Expression>> levels = new ArrayList<>();
+        Map<Cell.Expression, Integer> assigned = new IdentityHashMap<>();
+        for ( Cell.Expression expression : expressions )
+        {
+            if ( expression.isDirty() )
+            {
+                int level = levelOf( expression, assigned );
+                while ( levels.size() <= level )
+                {
+                    levels.add( new ArrayList<>() );
+                }
+                levels.get( level ).add( expression );
+            }
+        }
+        if ( parallelism == 1 )
+        {
+            levels.forEach( level -> level.forEach( Cell.Expression::getResult ) );
+            return;
+        }
+        ForkJoinPool pool = poolOf( parallelism );
+        for ( List<Cell.Expression> level : levels )
+        {
+            pool.invoke( new Evaluation( level, 0, level.size() ) );
+        }
     }
 
-    private static String sum( List<Cell> operands )
+    private static ForkJoinPool poolOf( int parallelism )
     {
-        return String.valueOf( sumValues( operands ) );
+        if ( parallelism == ForkJoinPool.getCommonPoolParallelism() )
+        {
+            return ForkJoinPool.commonPool();
+        }
+        ForkJoinPool current = pool;
+        if ( current == null || current.getParallelism() != parallelism )
+        {
+            current = new ForkJoinPool( parallelism );
+            pool = current;
+        }
+        return current;
     }
 
-    private static double sumValues( List<Cell> operands )
+    private static int levelOf( Cell.Expression expression, Map<Cell.Expression, Integer> assigned )
     {
-        double result = 0;
-        for ( Cell cell : operands )
+        Integer known = assigned.get( expression );
+        if ( known != null )
+        {
+            return known;
+        }
+        assigned.put( expression, 0 );
+        int level = 0;
+        for ( Range range : expression.getRanges() )
         {
-            try
+            for ( Cell.Expression operand : expression.getReferences().expressionsIn( range ) )
             {
-                double value = Double.parseDouble( cell.getValue() );
-                result += value;
+                if ( operand.isDirty() )
+                {
+                    level = Math.max( level, levelOf( operand, assigned ) + 1 );
+                }
             }
-            catch ( NumberFormatException e )
+        }
+        assigned.put( expression, level );
+        return level;
+    }
+
+    /**
+     * Evaluates a part of the expressions of one level, splitting it into halves which are evaluated in parallel.
+     */
+    private static final class Evaluation extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Cell.Expression> level;
+
+        private final int from;
+
+        private final int to;
+
+        Evaluation( List<Cell.Expression> level, int from, int to )
+        {
+            this.level = level;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if ( to - from <= TASK_SIZE )
             {
-                return 0;
+                for ( int i = from; i < to; i++ )
+                {
+                    level.get( i ).getResult();
+                }
+                return;
             }
+            int middle = ( from + to ) >>> 1;
+            invokeAll( new Evaluation( level, from, middle ), new Evaluation( level, middle, to ) );
         }
-        return result;
     }
 }
@@ -0,0 +1,344 @@
+package elements;
+
+import io.CSVReader;
+import io.CSVWriter;
+import org.apache.commons.lang3.StringUtils;
+import type.SortOrder;
+import type.StorageMode;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Sorts CSV files which do not fit into memory. The lines are read in runs which fit into a memory budget, each run is
+ * sorted and written to a temporary file, and the runs are merged into the result. The values are compared like the
+ * values of TEXT cells by {@link DataSheet#sort(LinkedHashMap)}, and lines with equal keys keep their order.
+ */
+public final class ExternalSort
+{
+    private static final int LINE_OVERHEAD = 64;
+
+    private static final int VALUE_OVERHEAD = 40;
+
+    private static final int MAX_MERGE_WIDTH = 64;
+
+    private final int[] columns;
+
+    private final boolean[] descending;
+
+    private long memoryBudget = Runtime.getRuntime().maxMemory() / 4;
+
+    private File tempDirectory;
+
+    /**
+     * Creates a new ExternalSort.
+     *
+     * @param sortMap the sort operations, each defined by the column index and the sort order
+     */
+    public ExternalSort( LinkedHashMap<Integer, SortOrder> sortMap )
+    {
+        columns = new int[sortMap.size()];
+        descending = new boolean[sortMap.size()];
+        int key = 0;
+        for ( Map.Entry<Integer, SortOrder> entry : sortMap.entrySet() )
+        {
+            columns[key] = entry.getKey();
+            descending[key++] = entry.getValue() == SortOrder.DESC;
+        }
+    }
+
+    /**
+     * Specifies how much memory the lines of one run may take.
+     *
+     * @param bytes the estimated number of bytes, by default a quarter of the maximum heap size
+     * @return the ExternalSort object
+     */
+    public ExternalSort withMemoryBudget( long bytes )
+    {
+        this.memoryBudget = bytes;
+        return this;
+    }
+
+    /**
+     * Specifies where the runs are written to.
+     *
+     * @param directory the directory, by default the directory for temporary files of the system
+     * @return the ExternalSort object
+     */
+    public ExternalSort withTempDirectory( File directory )
+    {
+        this.tempDirectory = directory;
+        return this;
+    }
+
+    /**
+     * Sorts the lines of a file into another file. If the reader treats the first line as column names, the line is
+     * written first and not sorted.
+     *
+     * @param reader the reader of the file to sort
+     * @param writer the writer of the sorted file
+     */
+    public void sort( CSVReader reader, CSVWriter writer )
+    {
+        List<File> runs = new ArrayList<>();
+        try ( Stream<List<String>> lines = reader.stream() )
+        {
+            Iterator<List<String>> iterator = lines.iterator();
+            List<String> header = reader.isWithColumnNames() && iterator.hasNext() ? iterator.next() : null;
+            writeRuns( iterator, reader, runs );
+            reduceRuns( runs, reader );
+            try ( Merge merge = new Merge( runs, reader ) )
+            {
+                Stream<List<String>> sorted = StreamSupport
+                        .stream( Spliterators.spliteratorUnknownSize( merge, Spliterator.ORDERED ), false );
+                writer.writeCSV( header != null ? Stream.concat( Stream.of( header ), sorted ) : sorted );
+            }
+        }
+        finally
+        {
+            runs.forEach( File::delete );
+        }
+    }
+
+    /**
+     * Sorts the lines of a file into a new DataSheet.
+     *
+     * @param reader      the reader of the file to sort
+     * @param storageMode the layout in which the values of the DataSheet are stored
+     * @return the DataSheet with the sorted lines
+     */
+    public DataSheet sort( CSVReader reader, StorageMode storageMode )
+    {
+        File sorted = createTempFile();
+        try
+        {
+            sort( reader, new CSVWriter( sorted ).withSeparator( reader.getSeparator() )
+                                                 .withCharSet( reader.getCharSet() ) );
+            return new DataSheet( new CSVReader( sorted ).withSeparator( reader.getSeparator() )
+                                                         .withCharSet( reader.getCharSet() )
+                                                         .withColumnNames( reader.isWithColumnNames() ), storageMode );
+        }
+        finally
+        {
+            sorted.delete();
+        }
+    }
+
+    private void writeRuns( Iterator<List<String>> lines, CSVReader reader, List<File> runs )
+    {
+        List<List<String>> run = new ArrayList<>();
+        long size = 0;
+        while ( lines.hasNext() )
+        {
+            List<String> line = lines.next();
+            run.add( line );
+            size += sizeOf( line );
+            if ( size >= memoryBudget )
+            {
+                runs.add( writeRun( run, reader ) );
+                run.clear();
+                size = 0;
+            }
+        }
+        if ( !run.isEmpty() || runs.isEmpty() )
+        {
+            runs.add( writeRun( run, reader ) );
+        }
+    }
+
+    /**
+     * Merges neighbouring runs until they can be merged at once without opening too many files.
+     */
+    private void reduceRuns( List<File> runs, CSVReader reader )
+    {
+        while ( runs.size() > MAX_MERGE_WIDTH )
+        {
+            List<File> reduced = new ArrayList<>();
+            for ( int from = 0; from < runs.size(); from += MAX_MERGE_WIDTH )
+            {
+                List<File> group = runs.subList( from, Math.min( from + MAX_MERGE_WIDTH, runs.size() ) );
+                File file = createTempFile();
+                try ( Merge merge = new Merge( group, reader ) )
+                {
+                    write( merge, file, reader );
+                }
+                group.forEach( File::delete );
+                reduced.add( file );
+            }
+            runs.clear();
+            runs.addAll( reduced );
+        }
+    }
+
+    private File writeRun( List<List<String>> run, CSVReader reader )
+    {
+        int[] order = new SortKeys( run, columns, descending ).sort( false );
+        File file = createTempFile();
+        write( Arrays.stream( order ).mapToObj( run::get ).iterator(), file, reader );
+        return file;
+    }
+
+    private void write( Iterator<List<String>> lines, File file, CSVReader reader )
+    {
+        String separator = String.valueOf( reader.getSeparator() );
+        try ( BufferedWriter bw = Files.newBufferedWriter( file.toPath(), Charset.forName( reader.getCharSet() ) ) )
+        {
+            while ( lines.hasNext() )
+            {
+                bw.write( String.join( separator, lines.next() ) );
+                bw.newLine();
+            }
+        }
+        catch ( IOException e )
+        {
+            file.delete();
+            throw new UncheckedIOException( e );
+        }
+    }
+
+    private File createTempFile()
+    {
+        try
+        {
+            return File.createTempFile( "datasheet-sort", ".csv", tempDirectory );
+        }
+        catch ( IOException e )
+        {
+            throw new UncheckedIOException( e );
+        }
+    }
+
+    private static long sizeOf( List<String> line )
+    {
+        long size = LINE_OVERHEAD;
+        for ( String value : line )
+        {
+            size += VALUE_OVERHEAD + 2L * value.length();
+        }
+        return size;
+    }
+
+    /**
+     * The current line of a run together with its keys.
+     */
+    private final class Cursor
+    {
+        private final int run;
+
+        private final BufferedReader reader;
+
+        private final char separator;
+
+        private LineKey key;
+
+        private List<String> line;
+
+        Cursor( int run, BufferedReader reader, char separator )
+        {
+            this.run = run;
+            this.reader = reader;
+            this.separator = separator;
+        }
+
+        boolean advance() throws IOException
+        {
+            String next = reader.readLine();
+            if ( next == null )
+            {
+                line = null;
+                return false;
+            }
+            line = Arrays.asList( StringUtils.splitPreserveAllTokens( next, separator ) );
+            key = new LineKey( line, columns );
+            return true;
+        }
+
+        int compareTo( Cursor other )
+        {
+            int comparison = key.compareTo( other.key, descending );
+            return comparison != 0 ? comparison : Integer.compare( run, other.run );
+        }
+    }
+
+    /**
+     * Merges the sorted runs. Lines with equal keys are taken from the earlier run first, so the sort stays stable.
+     */
+    private final class Merge implements Iterator<List<String>>, Closeable
+    {
+        private final PriorityQueue<Cursor> heads = new PriorityQueue<>( Cursor::compareTo );
+
+        private final List<BufferedReader> readers = new ArrayList<>();
+
+        Merge( List<File> runs, CSVReader csvReader )
+        {
+            try
+            {
+                for ( int run = 0; run < runs.size(); run++ )
+                {
+                    BufferedReader reader = Files.newBufferedReader( runs.get( run ).toPath(), Charset
+                            .forName( csvReader.getCharSet() ) );
+                    readers.add( reader );
+                    Cursor cursor = new Cursor( run, reader, csvReader.getSeparator() );
+                    if ( cursor.advance() )
+                    {
+                        heads.add( cursor );
+                    }
+                }
+            }
+            catch ( IOException e )
+            {
+                close();
+                throw new UncheckedIOException( e );
+            }
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public List<String> next()
+        {
+            Cursor cursor = heads.poll();
+            if ( cursor == null )
+            {
+                throw new NoSuchElementException();
+            }
+            List<String> line = cursor.line;
+            try
+            {
+                if ( cursor.advance() )
+                {
+                    heads.add( cursor );
+                }
+            }
+            catch ( IOException e )
+            {
+                throw new UncheckedIOException( e );
+            }
+            return line;
+        }
+
+        @Override
+        public void close()
+        {
+            for ( BufferedReader reader : readers )
+            {
+                try
+                {
+                    reader.close();
+                }
+                catch ( IOException e )
+                {
+                    // the run is deleted anyway
+                }
+            }
+        }
+    }
+}
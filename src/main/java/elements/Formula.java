@@ -0,0 +1,190 @@
+package elements;
+
+import type.Operation;
+
+import java.util.*;
+
+/**
+ * A formula compiled for one cell. The nodes of the parsed formula are turned into a tree of terms which read the
+ * referenced cells directly, so evaluating the formula does not interpret the tree again. The ranges of the formula
+ * belong to this cell only and are adjusted when rows or columns are inserted or removed.
+ * <p>
+ * Functions in a formula text skip cells which are not numeric. A formula created from a single operation keeps the
+ * behaviour of range expressions, where a cell which is not numeric makes SUM and AVG 0.
+ */
+final class Formula
+{
+    /**
+     * A compiled node of a formula.
+     */
+    interface Term
+    {
+        double evaluate();
+    }
+
+    /**
+     * Signals a formula which can not be parsed or evaluated.
+     */
+    static final class FormulaException extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+
+        FormulaException( String message )
+        {
+            super( message );
+        }
+    }
+
+    private final RangeReferences references;
+
+    private final String text;
+
+    private final List<Range> ranges = new ArrayList<>( 1 );
+
+    private final Term root;
+
+    private final boolean count;
+
+    private final boolean numericOnly;
+
+    private Formula( RangeReferences references, String text, FormulaParser.Node node )
+    {
+        this.references = references;
+        this.text = text;
+        numericOnly = text != null;
+        root = node.compile( this );
+        Operation operation = node instanceof FormulaParser.Call ? ( ( FormulaParser.Call ) node ).getOperation() : null;
+        count = operation == Operation.COUNT || operation == Operation.COUNT_NON_EMPTY
+                || operation == Operation.COUNT_NUMERIC;
+    }
+
+    /**
+     * Creates a formula from its text.
+     *
+     * @param references the references of the store the formula belongs to
+     * @param text       the text of the formula, e.g. =SUM(B2:B10)*C1
+     * @return the formula
+     */
+    static Formula parse( RangeReferences references, String text )
+    {
+        return new Formula( references, text, FormulaParser.parse( text ) );
+    }
+
+    /**
+     * Creates a formula which calculates one operation over a range.
+     *
+     * @param references the references of the store the formula belongs to
+     * @param operation  the operation
+     * @param range      the range
+     * @return the formula
+     */
+    static Formula of( RangeReferences references, Operation operation, Range range )
+    {
+        FormulaParser.Node reference = new FormulaParser.Reference( range.getFromColumn(), range.getFromRow(), range
+                .getToColumn(), range.getToRow() );
+        return new Formula( references, null, new FormulaParser.Call( operation, List.of( reference ) ) );
+    }
+
+    RangeReferences getReferences()
+    {
+        return references;
+    }
+
+    /**
+     * Returns the text of the formula.
+     *
+     * @return the text or null if the formula has not been created from a text
+     */
+    String getText()
+    {
+        return text;
+    }
+
+    List<Range> getRanges()
+    {
+        return ranges;
+    }
+
+    /**
+     * Evaluates the formula.
+     *
+     * @return the result or EXPR_ERROR if the formula could not be evaluated
+     */
+    String evaluate()
+    {
+        try
+        {
+            double result = root.evaluate();
+            return count ? String.valueOf( ( long ) result ) : String.valueOf( result );
+        }
+        catch ( FormulaException e )
+        {
+            return ExpressionEvaluator.EXPR_ERROR;
+        }
+    }
+
+    Term compileCell( Range range )
+    {
+        ranges.add( range );
+        return () ->
+        {
+            Range position = inside( range );
+            Cell cell = references.getCell( position.getFromColumn(), position.getFromRow() );
+            double value = cell.toNumber();
+            if ( Double.isNaN( value ) )
+            {
+                if ( cell.isEmpty() && !( cell.getRawValue() instanceof Cell.Expression ) )
+                {
+                    return 0;
+                }
+                throw new FormulaException( "Not a number" );
+            }
+            return value;
+        };
+    }
+
+    Term compileCall( Operation operation, List<Range> arguments, List<Term> values )
+    {
+        ranges.addAll( arguments );
+        Set<Operation> operations = EnumSet.of( operation );
+        boolean indexed = RangeIndex.supports( operation ) && arguments.size() == 1 && values.isEmpty();
+        return () ->
+        {
+            RangeIndex index = references.getIndex();
+            if ( indexed && index != null )
+            {
+                Range range = inside( arguments.get( 0 ) );
+                return index.aggregate( operation, range.getFromColumn(), range.getFromRow(), range.getToColumn(), range
+                        .getToRow(), numericOnly );
+            }
+            Statistics statistics = new Statistics( operations, numericOnly );
+            for ( Range argument : arguments )
+            {
+                references.cellsOf( inside( argument ) ).forEach( statistics::accept );
+            }
+            for ( Term value : values )
+            {
+                statistics.accept( value.evaluate() );
+            }
+            return statistics.get( operation );
+        };
+    }
+
+    Term failure( String message )
+    {
+        return () ->
+        {
+            throw new FormulaException( message );
+        };
+    }
+
+    private Range inside( Range range )
+    {
+        Range resolved = references.resolve( range );
+        if ( !references.isInside( resolved ) )
+        {
+            throw new FormulaException( "Reference outside of the sheet" );
+        }
+        return resolved;
+    }
+}
@@ -0,0 +1,473 @@
+package elements;
+
+import type.Operation;
+
+import java.util.*;
+
+/**
+ * Parses the text of a formula into a tree of nodes. A formula starts with '=' and consists of numbers, cell
+ * references (e.g. B2), ranges (e.g. B2:B1000 or D:D) as arguments of functions (e.g. SUM, AVG, MEDIAN), the operators
+ * + - * / ^ and parentheses. The trees are cached by their text, so a formula which is used in many cells is parsed
+ * only once. A tree does not refer to any cells, it is compiled for each cell by {@link Formula}.
+ */
+final class FormulaParser
+{
+    private static final int CACHE_SIZE = 1024;
+
+    private static final Map<String, Node> CACHE = Collections.synchronizedMap( new LinkedHashMap<>( 16, 0.75f, true )
+    {
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<String, Node> eldest )
+        {
+            return size() > CACHE_SIZE;
+        }
+    } );
+
+    private final String text;
+
+    private int position;
+
+    private FormulaParser( String text )
+    {
+        this.text = text;
+    }
+
+    /**
+     * Parses a formula. A formula which can not be parsed results in a node which fails on evaluation.
+     *
+     * @param text the text of the formula
+     * @return the root node
+     */
+    static Node parse( String text )
+    {
+        return CACHE.computeIfAbsent( text, key ->
+        {
+            try
+            {
+                return new FormulaParser( key ).parseFormula();
+            }
+            catch ( Formula.FormulaException e )
+            {
+                return new Failure( e.getMessage() );
+            }
+        } );
+    }
+
+    private Node parseFormula()
+    {
+        skipSpaces();
+        expect( '=' );
+        Node node = parseSum();
+        skipSpaces();
+        if ( position < text.length() )
+        {
+            throw error( "Unexpected character" );
+        }
+        return node;
+    }
+
+    private Node parseSum()
+    {
+        Node node = parseProduct();
+        for ( char operator = peek(); operator == '+' || operator == '-'; operator = peek() )
+        {
+            position++;
+            node = new Arithmetic( operator, node, parseProduct() );
+        }
+        return node;
+    }
+
+    private Node parseProduct()
+    {
+        Node node = parseUnary();
+        for ( char operator = peek(); operator == '*' || operator == '/'; operator = peek() )
+        {
+            position++;
+            node = new Arithmetic( operator, node, parseUnary() );
+        }
+        return node;
+    }
+
+    private Node parseUnary()
+    {
+        char sign = peek();
+        if ( sign == '-' || sign == '+' )
+        {
+            position++;
+            Node node = parseUnary();
+            return sign == '-' ? new Arithmetic( '-', new Constant( 0 ), node ) : node;
+        }
+        return parsePower();
+    }
+
+    private Node parsePower()
+    {
+        Node node = parsePrimary();
+        if ( peek() == '^' )
+        {
+            position++;
+            return new Arithmetic( '^', node, parseUnary() );
+        }
+        return node;
+    }
+
+    private Node parsePrimary()
+    {
+        char next = peek();
+        if ( next == '(' )
+        {
+            position++;
+            Node node = parseSum();
+            expect( ')' );
+            return node;
+        }
+        if ( Character.isDigit( next ) || next == '.' )
+        {
+            return parseNumber();
+        }
+        if ( Character.isLetter( next ) || next == '$' )
+        {
+            return parseName();
+        }
+        throw error( "Unexpected character" );
+    }
+
+    private Node parseNumber()
+    {
+        int start = position;
+        while ( position < text.length() && ( Character.isDigit( text.charAt( position ) ) || text
+                .charAt( position ) == '.' ) )
+        {
+            position++;
+        }
+        if ( position < text.length() && Character.toUpperCase( text.charAt( position ) ) == 'E' )
+        {
+            position++;
+            if ( position < text.length() && ( text.charAt( position ) == '+' || text.charAt( position ) == '-' ) )
+            {
+                position++;
+            }
+            while ( position < text.length() && Character.isDigit( text.charAt( position ) ) )
+            {
+                position++;
+            }
+        }
+        try
+        {
+            return new Constant( Double.parseDouble( text.substring( start, position ) ) );
+        }
+        catch ( NumberFormatException e )
+        {
+            throw error( "Invalid number" );
+        }
+    }
+
+    private Node parseName()
+    {
+        int start = position;
+        String letters = readLetters();
+        if ( peek() == '(' )
+        {
+            return parseCall( start, letters );
+        }
+        position = start;
+        Reference from = parseReference();
+        if ( peek() != ':' )
+        {
+            if ( from.toRow == Range.LAST_ROW )
+            {
+                throw error( "Incomplete cell reference" );
+            }
+            return from;
+        }
+        position++;
+        skipSpaces();
+        Reference to = parseReference();
+        if ( ( from.toRow == Range.LAST_ROW ) != ( to.toRow == Range.LAST_ROW ) )
+        {
+            throw error( "Invalid range" );
+        }
+        return new Reference( Math.min( from.fromColumn, to.fromColumn ), Math.min( from.fromRow, to.fromRow ), Math
+                .max( from.toColumn, to.toColumn ), Math.max( from.toRow, to.toRow ) );
+    }
+
+    private Node parseCall( int start, String name )
+    {
+        Operation operation;
+        try
+        {
+            operation = Operation.valueOf( name.toUpperCase() );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            position = start;
+            throw error( "Unknown function" );
+        }
+        expect( '(' );
+        List<Node> arguments = new ArrayList<>();
+        if ( peek() != ')' )
+        {
+            arguments.add( parseSum() );
+            while ( peek() == ',' || peek() == ';' )
+            {
+                position++;
+                arguments.add( parseSum() );
+            }
+        }
+        expect( ')' );
+        if ( arguments.isEmpty() )
+        {
+            throw error( "Missing arguments" );
+        }
+        return new Call( operation, arguments );
+    }
+
+    /**
+     * Parses a cell reference like B2 or $B$2, or a column like B which is only valid as part of a range.
+     *
+     * @return the reference
+     */
+    private Reference parseReference()
+    {
+        skipDollar();
+        String letters = readLetters().toUpperCase();
+        if ( letters.isEmpty() || letters.length() > 6 || !letters.chars().allMatch( c -> c >= 'A' && c <= 'Z' ) )
+        {
+            throw error( "Invalid cell reference" );
+        }
+        int column = 0;
+        for ( char letter : letters.toCharArray() )
+        {
+            column = column * 26 + letter - 'A' + 1;
+        }
+        column--;
+        skipDollar();
+        int start = position;
+        while ( position < text.length() && Character.isDigit( text.charAt( position ) ) )
+        {
+            position++;
+        }
+        if ( start == position )
+        {
+            return new Reference( column, 0, column, Range.LAST_ROW );
+        }
+        if ( position - start > 9 )
+        {
+            throw error( "Invalid cell reference" );
+        }
+        int row = Integer.parseInt( text.substring( start, position ) ) - 1;
+        if ( row < 0 )
+        {
+            throw error( "Invalid cell reference" );
+        }
+        return new Reference( column, row, column, row );
+    }
+
+    private String readLetters()
+    {
+        int start = position;
+        while ( position < text.length() && ( Character.isLetter( text.charAt( position ) ) || text
+                .charAt( position ) == '_' ) )
+        {
+            position++;
+        }
+        return text.substring( start, position );
+    }
+
+    private void skipDollar()
+    {
+        if ( position < text.length() && text.charAt( position ) == '$' )
+        {
+            position++;
+        }
+    }
+
+    private void skipSpaces()
+    {
+        while ( position < text.length() && Character.isWhitespace( text.charAt( position ) ) )
+        {
+            position++;
+        }
+    }
+
+    private char peek()
+    {
+        skipSpaces();
+        return position < text.length() ? text.charAt( position ) : 0;
+    }
+
+    private void expect( char expected )
+    {
+        if ( peek() != expected )
+        {
+            throw error( "Expected '" + expected + "'" );
+        }
+        position++;
+    }
+
+    private Formula.FormulaException error( String message )
+    {
+        return new Formula.FormulaException( String.format( "%s at position %s of %s", message, position, text ) );
+    }
+
+    /**
+     * A node of a parsed formula.
+     */
+    interface Node
+    {
+        /**
+         * Compiles the node for one cell.
+         *
+         * @param formula the formula to compile for, it receives the ranges the node refers to
+         * @return the compiled node
+         */
+        Formula.Term compile( Formula formula );
+    }
+
+    static final class Constant implements Node
+    {
+        private final double value;
+
+        Constant( double value )
+        {
+            this.value = value;
+        }
+
+        @Override
+        public Formula.Term compile( Formula formula )
+        {
+            return () -> value;
+        }
+    }
+
+    static final class Reference implements Node
+    {
+        private final int fromColumn;
+
+        private final int fromRow;
+
+        private final int toColumn;
+
+        private final int toRow;
+
+        Reference( int fromColumn, int fromRow, int toColumn, int toRow )
+        {
+            this.fromColumn = fromColumn;
+            this.fromRow = fromRow;
+            this.toColumn = toColumn;
+            this.toRow = toRow;
+        }
+
+        Range toRange()
+        {
+            return new Range( fromColumn, fromRow, toColumn, toRow );
+        }
+
+        @Override
+        public Formula.Term compile( Formula formula )
+        {
+            if ( fromColumn != toColumn || fromRow != toRow )
+            {
+                return formula.failure( "A range can only be used as argument of a function" );
+            }
+            return formula.compileCell( toRange() );
+        }
+    }
+
+    static final class Call implements Node
+    {
+        private final Operation operation;
+
+        private final List<Node> arguments;
+
+        Call( Operation operation, List<Node> arguments )
+        {
+            this.operation = operation;
+            this.arguments = arguments;
+        }
+
+        Operation getOperation()
+        {
+            return operation;
+        }
+
+        @Override
+        public Formula.Term compile( Formula formula )
+        {
+            List<Range> ranges = new ArrayList<>();
+            List<Formula.Term> values = new ArrayList<>();
+            for ( Node argument : arguments )
+            {
+                if ( argument instanceof Reference )
+                {
+                    ranges.add( ( ( Reference ) argument ).toRange() );
+                }
+                else
+                {
+                    values.add( argument.compile( formula ) );
+                }
+            }
+            return formula.compileCall( operation, ranges, values );
+        }
+    }
+
+    static final class Arithmetic implements Node
+    {
+        private final char operator;
+
+        private final Node left;
+
+        private final Node right;
+
+        Arithmetic( char operator, Node left, Node right )
+        {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public Formula.Term compile( Formula formula )
+        {
+            Formula.Term l = left.compile( formula );
+            Formula.Term r = right.compile( formula );
+            switch ( operator )
+            {
+                case '+':
+                    return () -> l.evaluate() + r.evaluate();
+                case '-':
+                    return () -> l.evaluate() - r.evaluate();
+                case '*':
+                    return () -> l.evaluate() * r.evaluate();
+                case '/':
+                    return () ->
+                    {
+                        double divisor = r.evaluate();
+                        if ( divisor == 0 )
+                        {
+                            throw new Formula.FormulaException( "Division by zero" );
+                        }
+                        return l.evaluate() / divisor;
+                    };
+                default:
+                    return () -> Math.pow( l.evaluate(), r.evaluate() );
+            }
+        }
+    }
+
+    static final class Failure implements Node
+    {
+        private final String message;
+
+        Failure( String message )
+        {
+            this.message = message;
+        }
+
+        @Override
+        public Formula.Term compile( Formula formula )
+        {
+            return formula.failure( message );
+        }
+    }
+}
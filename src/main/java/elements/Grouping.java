@@ -0,0 +1,227 @@
+package elements;
+
+import type.Operation;
+
+import java.util.*;
+
+/**
+ * The rows of a DataSheet grouped by the values of a number of columns. The groups are aggregated in a single pass over
+ * the rows: each row is looked up in an open addressing hash table by the values of its key columns, and the
+ * aggregations are gathered in primitive arrays indexed by the group. No object is created per group except for the
+ * median, which has to keep the values. Per row, only COLUMN and OFF_HEAP storage create a lightweight Cell view for
+ * each value which is read.
+ */
+public final class Grouping
+{
+    private final RecordStore store;
+
+    private final int[] columns;
+
+    private final int[] rows;
+
+    Grouping( RecordStore store, int[] columns )
+    {
+        this( store, columns, null );
+    }
+
+    /**
+     * Creates a Grouping of some rows of a store.
+     *
+     * @param store   the store
+     * @param columns the key columns
+     * @param rows    the indices of the rows to group in their order or null for all rows
+     */
+    Grouping( RecordStore store, int[] columns, int[] rows )
+    {
+        this.store = store;
+        this.columns = columns;
+        this.rows = rows;
+    }
+
+    /**
+     * Aggregates the groups. The result has one row per group in the order in which the groups first appear, with the
+     * values of the key columns followed by one value per aggregation. If the DataSheet has column names, the result
+     * has the names of the key columns followed by the names of the aggregations, like {@code SUM(Price)}.
+     *
+     * @param aggregations the aggregations
+     * @return a new DataSheet with the results or null if a column is not found
+     */
+    public DataSheet aggregate( Aggregation... aggregations )
+    {
+        for ( Aggregation aggregation : aggregations )
+        {
+            if ( aggregation.getColumn() >= store.columnCount() )
+            {
+                return null;
+            }
+        }
+        Accumulator[] accumulators = new Accumulator[aggregations.length];
+        for ( int i = 0; i < aggregations.length; i++ )
+        {
+            accumulators[i] = new Accumulator( aggregations[i] );
+        }
+        KeyTable table = new KeyTable( store, columns );
+        int count = rows != null ? rows.length : store.rowCount();
+        for ( int index = 0; index < count; index++ )
+        {
+            int row = rows != null ? rows[index] : index;
+            int group = table.groupOf( row );
+            for ( Accumulator accumulator : accumulators )
+            {
+                accumulator.accept( group, row );
+            }
+        }
+        List<Record> records = new ArrayList<>( table.size() );
+        for ( int group = 0; group < table.size(); group++ )
+        {
+            List<Object> values = new ArrayList<>( columns.length + accumulators.length );
+            for ( int column : columns )
+            {
+                values.add( store.getCell( column, table.firstRow( group ) ).copy() );
+            }
+            for ( Accumulator accumulator : accumulators )
+            {
+                values.add( accumulator.get( group ) );
+            }
+            records.add( new Record( values ) );
+        }
+        return new DataSheet( records, namesOf( aggregations ) );
+    }
+
+    private List<String> namesOf( Aggregation[] aggregations )
+    {
+        List<String> names = store.getColumnNames();
+        if ( names == null )
+        {
+            return null;
+        }
+        List<String> result = new ArrayList<>( columns.length + aggregations.length );
+        for ( int column : columns )
+        {
+            result.add( names.get( column ) );
+        }
+        for ( Aggregation aggregation : aggregations )
+        {
+            result.add( aggregation.getName( aggregation.getColumn() >= 0 ? names.get( aggregation
+                    .getColumn() ) : null ) );
+        }
+        return result;
+    }
+
+    /**
+     * Gathers one aggregation for all groups. The sum is compensated and the variance is updated incrementally like
+     * {@link Statistics} does.
+     */
+    private final class Accumulator
+    {
+        private final Operation operation;
+
+        private final int column;
+
+        private int[] counts = new int[16];
+
+        private double[] values = new double[16];
+
+        private double[] extras = new double[16];
+
+        private Statistics[] statistics;
+
+        Accumulator( Aggregation aggregation )
+        {
+            operation = aggregation.getOperation();
+            column = aggregation.getColumn();
+            statistics = operation == Operation.MEDIAN ? new Statistics[16] : null;
+        }
+
+        void accept( int group, int row )
+        {
+            if ( group == counts.length )
+            {
+                counts = Arrays.copyOf( counts, group * 2 );
+                values = Arrays.copyOf( values, group * 2 );
+                extras = Arrays.copyOf( extras, group * 2 );
+                statistics = statistics != null ? Arrays.copyOf( statistics, group * 2 ) : null;
+            }
+            if ( column < 0 || operation == Operation.COUNT )
+            {
+                counts[group]++;
+                return;
+            }
+            Cell cell = store.getCell( column, row );
+            if ( operation == Operation.COUNT_NON_EMPTY )
+            {
+                counts[group] += cell.isEmpty() ? 0 : 1;
+                return;
+            }
+            double value = cell.toNumber();
+            if ( Double.isNaN( value ) )
+            {
+                return;
+            }
+            int count = ++counts[group];
+            switch ( operation )
+            {
+                case SUM:
+                case AVG:
+                    double sum = values[group];
+                    double total = sum + value;
+                    extras[group] += Math.abs( sum ) >= Math.abs( value ) ? ( sum - total ) + value
+                            : ( value - total ) + sum;
+                    values[group] = total;
+                    break;
+                case MIN:
+                    values[group] = count == 1 ? value : Math.min( values[group], value );
+                    break;
+                case MAX:
+                    values[group] = count == 1 ? value : Math.max( values[group], value );
+                    break;
+                case PRODUCT:
+                    values[group] = count == 1 ? value : values[group] * value;
+                    break;
+                case VARIANCE:
+                case STDDEV:
+                    double delta = value - values[group];
+                    values[group] += delta / count;
+                    extras[group] += delta * ( value - values[group] );
+                    break;
+                case MEDIAN:
+                    if ( statistics[group] == null )
+                    {
+                        statistics[group] = new Statistics( EnumSet.of( Operation.MEDIAN ), true );
+                    }
+                    statistics[group].accept( value );
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        Object get( int group )
+        {
+            int count = counts[group];
+            switch ( operation )
+            {
+                case COUNT:
+                case COUNT_NON_EMPTY:
+                case COUNT_NUMERIC:
+                    return count;
+                case SUM:
+                    return values[group] + extras[group];
+                case AVG:
+                    return count > 0 ? ( values[group] + extras[group] ) / count : Double.NaN;
+                case MIN:
+                case MAX:
+                case PRODUCT:
+                    return count > 0 ? values[group] : Double.NaN;
+                case VARIANCE:
+                    return count > 1 ? extras[group] / ( count - 1 ) : Double.NaN;
+                case STDDEV:
+                    return count > 1 ? Math.sqrt( extras[group] / ( count - 1 ) ) : Double.NaN;
+                case MEDIAN:
+                    return statistics[group] != null ? statistics[group].get( Operation.MEDIAN ) : Double.NaN;
+                default:
+                    return Double.NaN;
+            }
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package elements;
+
+import util.RowBitmap;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A hash index from the formatted values of one column to the rows which hold them. The rows of a value are kept as a
+ * {@link RowBitmap}, so for columns with few distinct values the index takes a few bits per row and the rows of
+ * several values are combined by bitwise operations.
+ * <p>
+ * The index keeps the value of every row and the rows of every value. Changed cells and rows added to or removed from
+ * the end are updated in both directly. Changes which move rows, like sorting or inserting a row in between, only
+ * move the values of the rows and build the rows of every value again on the next lookup, without formatting any
+ * cell. Expressions are not part of the index as their results change with their operands, they are compared on each
+ * lookup instead.
+ */
+final class HashIndex implements StoreListener
+{
+    private final RecordStore store;
+
+    private int column;
+
+    private String[] values = new String[0];
+
+    private int size;
+
+    private boolean valuesValid;
+
+    private final Map<String, RowBitmap> rows = new HashMap<>();
+
+    private RowBitmap expressions = new RowBitmap();
+
+    private boolean rowsValid;
+
+    HashIndex( RecordStore store, int column )
+    {
+        this.store = store;
+        this.column = column;
+    }
+
+    /**
+     * Returns the column of the index, which follows inserted and removed columns.
+     *
+     * @return the column index or -1 if the column has been removed
+     */
+    synchronized int getColumn()
+    {
+        return column;
+    }
+
+    /**
+     * Finds the rows with a value.
+     *
+     * @param value the formatted value
+     * @return a new RowBitmap with the rows
+     */
+    synchronized RowBitmap lookup( String value )
+    {
+        update();
+        RowBitmap found = rows.get( value );
+        RowBitmap result = found != null ? found.or( new RowBitmap() ) : new RowBitmap();
+        expressions.forEach( row ->
+        {
+            if ( store.getCell( column, row ).toString().equals( value ) )
+            {
+                result.add( row );
+            }
+        } );
+        return result;
+    }
+
+    @Override
+    public synchronized void contentChanged()
+    {
+        valuesValid = false;
+    }
+
+    @Override
+    public synchronized void cellChanged( int columnIndex, int rowIndex )
+    {
+        if ( columnIndex == column )
+        {
+            rowChanged( rowIndex );
+        }
+    }
+
+    @Override
+    public synchronized void rowChanged( int rowIndex )
+    {
+        if ( valuesValid && rowIndex < size )
+        {
+            String previous = values[rowIndex];
+            values[rowIndex] = valueOf( rowIndex );
+            if ( rowsValid )
+            {
+                remove( previous, rowIndex );
+                rowsOf( values[rowIndex] ).add( rowIndex );
+            }
+        }
+    }
+
+    @Override
+    public synchronized void columnChanged( int columnIndex )
+    {
+        if ( columnIndex == column )
+        {
+            valuesValid = false;
+        }
+    }
+
+    @Override
+    public synchronized void rowInserted( int rowIndex )
+    {
+        if ( !valuesValid )
+        {
+            return;
+        }
+        if ( size == values.length )
+        {
+            values = Arrays.copyOf( values, Math.max( 16, size * 3 / 2 ) );
+        }
+        System.arraycopy( values, rowIndex, values, rowIndex + 1, size - rowIndex );
+        values[rowIndex] = valueOf( rowIndex );
+        size++;
+        if ( rowIndex == size - 1 && rowsValid )
+        {
+            rowsOf( values[rowIndex] ).add( rowIndex );
+        }
+        else
+        {
+            rowsValid = false;
+        }
+    }
+
+    @Override
+    public synchronized void rowRemoved( int rowIndex )
+    {
+        if ( !valuesValid )
+        {
+            return;
+        }
+        String previous = values[rowIndex];
+        System.arraycopy( values, rowIndex + 1, values, rowIndex, size - rowIndex - 1 );
+        values[--size] = null;
+        if ( rowIndex == size && rowsValid )
+        {
+            remove( previous, rowIndex );
+        }
+        else
+        {
+            rowsValid = false;
+        }
+    }
+
+    @Override
+    public synchronized void columnInserted( int columnIndex )
+    {
+        if ( columnIndex <= column )
+        {
+            column++;
+        }
+    }
+
+    @Override
+    public synchronized void columnRemoved( int columnIndex )
+    {
+        if ( columnIndex < column )
+        {
+            column--;
+        }
+        else if ( columnIndex == column )
+        {
+            column = -1;
+            valuesValid = false;
+        }
+    }
+
+    @Override
+    public synchronized void rowsReordered( int[] order )
+    {
+        if ( valuesValid )
+        {
+            String[] reordered = new String[values.length];
+            for ( int i = 0; i < order.length; i++ )
+            {
+                reordered[i] = values[order[i]];
+            }
+            values = reordered;
+            rowsValid = false;
+        }
+    }
+
+    /**
+     * Builds the values and the rows of the values again if they are not valid.
+     */
+    private void update()
+    {
+        if ( !valuesValid )
+        {
+            size = store.rowCount();
+            values = new String[size];
+            for ( int row = 0; row < size; row++ )
+            {
+                values[row] = valueOf( row );
+            }
+            valuesValid = true;
+            rowsValid = false;
+        }
+        if ( !rowsValid )
+        {
+            rows.clear();
+            expressions = new RowBitmap();
+            for ( int row = 0; row < size; row++ )
+            {
+                rowsOf( values[row] ).add( row );
+            }
+            rowsValid = true;
+        }
+    }
+
+    /**
+     * Returns the value of a row or null if the cell holds an expression.
+     */
+    private String valueOf( int row )
+    {
+        Cell cell = store.getCell( column, row );
+        return cell.getRawValue() instanceof Cell.Expression ? null : cell.toString();
+    }
+
+    private void remove( String value, int row )
+    {
+        RowBitmap found = rowsOf( value );
+        found.remove( row );
+        if ( found.isEmpty() && value != null )
+        {
+            rows.remove( value );
+        }
+    }
+
+    private RowBitmap rowsOf( String value )
+    {
+        return value != null ? rows.computeIfAbsent( value, key -> new RowBitmap() ) : expressions;
+    }
+}
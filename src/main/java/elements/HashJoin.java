@@ -0,0 +1,223 @@
+package elements;
+
+import type.JoinType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Joins the rows of two stores whose key columns have equal formatted values. The rows of the smaller store are put
+ * into a hash table by their keys and the rows of the larger store are looked up in it, so each store is read once.
+ * <p>
+ * The result does not depend on which store is the smaller one: it has the rows of the left store in their order, each
+ * followed by its matches in the order of the right store, and the right rows without a match at the end. A row with
+ * an empty key value never matches.
+ */
+final class HashJoin
+{
+    private final RecordStore left;
+
+    private final int[] leftColumns;
+
+    private final RecordStore right;
+
+    private final int[] rightColumns;
+
+    private final JoinType joinType;
+
+    HashJoin( RecordStore left, int[] leftColumns, RecordStore right, int[] rightColumns, JoinType joinType )
+    {
+        this.left = left;
+        this.leftColumns = leftColumns;
+        this.right = right;
+        this.rightColumns = rightColumns;
+        this.joinType = joinType;
+    }
+
+    /**
+     * Joins the stores.
+     *
+     * @return a new DataSheet with the columns of the left store followed by the columns of the right store
+     */
+    DataSheet join()
+    {
+        boolean buildLeft = left.rowCount() < right.rowCount();
+        RecordStore build = buildLeft ? left : right;
+        int[] buildColumns = buildLeft ? leftColumns : rightColumns;
+        RecordStore probe = buildLeft ? right : left;
+        int[] probeColumns = buildLeft ? rightColumns : leftColumns;
+
+        KeyTable table = new KeyTable( build, buildColumns );
+        int[] heads = new int[Math.max( 16, build.rowCount() )];
+        int[] tails = new int[heads.length];
+        int[] next = new int[build.rowCount()];
+        Arrays.fill( next, -1 );
+        for ( int row = 0; row < build.rowCount(); row++ )
+        {
+            if ( hasKey( build, buildColumns, row ) )
+            {
+                int groups = table.size();
+                int group = table.groupOf( row );
+                if ( table.size() > groups )
+                {
+                    heads[group] = row;
+                }
+                else
+                {
+                    next[tails[group]] = row;
+                }
+                tails[group] = row;
+            }
+        }
+
+        int[] leftRows = new int[16];
+        int[] rightRows = new int[16];
+        int pairs = 0;
+        for ( int row = 0; row < probe.rowCount(); row++ )
+        {
+            int group = hasKey( probe, probeColumns, row ) ? table.find( probe, probeColumns, row ) : -1;
+            for ( int match = group >= 0 ? heads[group] : -1; match >= 0; match = next[match] )
+            {
+                if ( pairs == leftRows.length )
+                {
+                    leftRows = Arrays.copyOf( leftRows, pairs * 2 );
+                    rightRows = Arrays.copyOf( rightRows, pairs * 2 );
+                }
+                leftRows[pairs] = buildLeft ? match : row;
+                rightRows[pairs++] = buildLeft ? row : match;
+            }
+        }
+        if ( buildLeft )
+        {
+            int[][] sorted = sortByLeft( leftRows, rightRows, pairs );
+            leftRows = sorted[0];
+            rightRows = sorted[1];
+        }
+        return new DataSheet( records( leftRows, rightRows, pairs ), columnNames( left, right ) );
+    }
+
+    /**
+     * Orders the pairs by their left row. Pairs with the same left row keep their order.
+     */
+    private int[][] sortByLeft( int[] leftRows, int[] rightRows, int pairs )
+    {
+        int[] starts = new int[left.rowCount() + 1];
+        for ( int i = 0; i < pairs; i++ )
+        {
+            starts[leftRows[i] + 1]++;
+        }
+        for ( int row = 0; row < left.rowCount(); row++ )
+        {
+            starts[row + 1] += starts[row];
+        }
+        int[] sortedLeft = new int[pairs];
+        int[] sortedRight = new int[pairs];
+        for ( int i = 0; i < pairs; i++ )
+        {
+            int position = starts[leftRows[i]]++;
+            sortedLeft[position] = leftRows[i];
+            sortedRight[position] = rightRows[i];
+        }
+        return new int[][]{ sortedLeft, sortedRight };
+    }
+
+    private List<Record> records( int[] leftRows, int[] rightRows, int pairs )
+    {
+        boolean keepLeft = joinType == JoinType.LEFT || joinType == JoinType.FULL;
+        boolean keepRight = joinType == JoinType.RIGHT || joinType == JoinType.FULL;
+        boolean[] rightMatched = new boolean[right.rowCount()];
+        List<Record> records = new ArrayList<>( pairs );
+        int pair = 0;
+        for ( int row = 0; row < left.rowCount(); row++ )
+        {
+            if ( pair < pairs && leftRows[pair] == row )
+            {
+                for ( ; pair < pairs && leftRows[pair] == row; pair++ )
+                {
+                    rightMatched[rightRows[pair]] = true;
+                    records.add( record( row, rightRows[pair] ) );
+                }
+            }
+            else if ( keepLeft )
+            {
+                records.add( record( row, -1 ) );
+            }
+        }
+        if ( keepRight )
+        {
+            for ( int row = 0; row < right.rowCount(); row++ )
+            {
+                if ( !rightMatched[row] )
+                {
+                    records.add( record( -1, row ) );
+                }
+            }
+        }
+        return records;
+    }
+
+    private Record record( int leftRow, int rightRow )
+    {
+        return record( left, leftRow, right, rightRow );
+    }
+
+    /**
+     * Creates a row of a join from a left and a right row. A missing row is filled with empty cells.
+     *
+     * @param left     the left store
+     * @param leftRow  the left row or -1 if it is missing
+     * @param right    the right store
+     * @param rightRow the right row or -1 if it is missing
+     * @return the row
+     */
+    static Record record( RecordStore left, int leftRow, RecordStore right, int rightRow )
+    {
+        List<Cell> cells = new ArrayList<>( left.columnCount() + right.columnCount() );
+        addCells( cells, left, leftRow );
+        addCells( cells, right, rightRow );
+        return new Record( cells );
+    }
+
+    private static void addCells( List<Cell> cells, RecordStore store, int row )
+    {
+        for ( int column = 0; column < store.columnCount(); column++ )
+        {
+            cells.add( row >= 0 ? store.getCell( column, row ).copy() : new Cell() );
+        }
+    }
+
+    /**
+     * Returns the column names of a join.
+     *
+     * @param left  the left store
+     * @param right the right store
+     * @return the names of the left columns followed by the names of the right columns or null if a store has no names
+     */
+    static List<String> columnNames( RecordStore left, RecordStore right )
+    {
+        if ( !left.hasColumnNames() || !right.hasColumnNames() )
+        {
+            return null;
+        }
+        List<String> names = new ArrayList<>( left.getColumnNames() );
+        names.addAll( right.getColumnNames() );
+        return names;
+    }
+
+    /**
+     * Checks whether none of the key values of a row is empty.
+     */
+    private static boolean hasKey( RecordStore store, int[] columns, int row )
+    {
+        for ( int column : columns )
+        {
+            Cell cell = store.getCell( column, row );
+            if ( !cell.isWholeNumber() && cell.isEmpty() )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
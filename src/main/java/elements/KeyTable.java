@@ -0,0 +1,141 @@
+package elements;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing hash table from the keys of the rows of a store to consecutive group indices. A key is made of the
+ * formatted values of a number of columns. The keys are not copied: each group keeps the first row which had its key,
+ * and keys are compared by reading the cells of that row. Plain text values are hashed and compared without being
+ * formatted, so looking up a row creates no String.
+ */
+final class KeyTable
+{
+    private final RecordStore store;
+
+    private final int[] columns;
+
+    private int[] slots = new int[32];
+
+    private int[] hashes = new int[16];
+
+    private int[] firstRows = new int[16];
+
+    private int size;
+
+    KeyTable( RecordStore store, int[] columns )
+    {
+        this.store = store;
+        this.columns = columns;
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    int firstRow( int group )
+    {
+        return firstRows[group];
+    }
+
+    /**
+     * Returns the group of the key of a row of the store and adds a new group if the key is new.
+     *
+     * @param row the row
+     * @return the index of the group
+     */
+    int groupOf( int row )
+    {
+        int hash = hash( store, columns, row );
+        int slot = slotOf( store, columns, row, hash );
+        if ( slots[slot] != 0 )
+        {
+            return slots[slot] - 1;
+        }
+        slots[slot] = add( hash, row ) + 1;
+        if ( size * 2 > slots.length )
+        {
+            rehash();
+        }
+        return size - 1;
+    }
+
+    /**
+     * Returns the group of the key of a row of another store.
+     *
+     * @param other        the other store
+     * @param otherColumns the key columns of the other store
+     * @param row          the row of the other store
+     * @return the index of the group or -1 if the key is not found
+     */
+    int find( RecordStore other, int[] otherColumns, int row )
+    {
+        return slots[slotOf( other, otherColumns, row, hash( other, otherColumns, row ) )] - 1;
+    }
+
+    /**
+     * Returns the slot which holds the key or the empty slot where it belongs.
+     */
+    private int slotOf( RecordStore other, int[] otherColumns, int row, int hash )
+    {
+        int mask = slots.length - 1;
+        for ( int slot = hash & mask; ; slot = ( slot + 1 ) & mask )
+        {
+            int entry = slots[slot] - 1;
+            if ( entry < 0 || hashes[entry] == hash && matches( entry, other, otherColumns, row ) )
+            {
+                return slot;
+            }
+        }
+    }
+
+    private boolean matches( int group, RecordStore other, int[] otherColumns, int row )
+    {
+        for ( int i = 0; i < columns.length; i++ )
+        {
+            if ( !store.getCell( columns[i], firstRows[group] )
+                       .hasSameKey( other.getCell( otherColumns[i], row ) ) )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int add( int hash, int row )
+    {
+        if ( size == hashes.length )
+        {
+            hashes = Arrays.copyOf( hashes, size * 2 );
+            firstRows = Arrays.copyOf( firstRows, size * 2 );
+        }
+        hashes[size] = hash;
+        firstRows[size] = row;
+        return size++;
+    }
+
+    private void rehash()
+    {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for ( int group = 0; group < size; group++ )
+        {
+            int slot = hashes[group] & mask;
+            while ( slots[slot] != 0 )
+            {
+                slot = ( slot + 1 ) & mask;
+            }
+            slots[slot] = group + 1;
+        }
+    }
+
+    private static int hash( RecordStore store, int[] columns, int row )
+    {
+        int hash = 1;
+        for ( int column : columns )
+        {
+            hash = 31 * hash + store.getCell( column, row ).keyHash();
+        }
+        return hash ^ hash >>> 16;
+    }
+}
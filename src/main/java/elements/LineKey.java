@@ -0,0 +1,76 @@
+package elements;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.List;
+
+/**
+ * The sort key of a line of text values, compared like {@link SortKeys} compares the keys of TEXT cells.
+ */
+final class LineKey
+{
+    private final byte[] kinds;
+
+    private final double[] numbers;
+
+    private final String[] texts;
+
+    /**
+     * Extracts the key of a line.
+     *
+     * @param line    the values of the line
+     * @param columns the column indices of the key
+     */
+    LineKey( List<String> line, int[] columns )
+    {
+        kinds = new byte[columns.length];
+        numbers = new double[columns.length];
+        texts = new String[columns.length];
+        for ( int key = 0; key < columns.length; key++ )
+        {
+            String text = columns[key] < line.size() ? line.get( columns[key] ) : StringUtils.EMPTY;
+            texts[key] = text;
+            kinds[key] = SortKeys.kindOf( text );
+            numbers[key] = kinds[key] == SortKeys.NUMBER ? Double.parseDouble( text ) : 0;
+        }
+    }
+
+    /**
+     * Compares two keys.
+     *
+     * @param other      the other key
+     * @param descending for each column whether it is sorted in descending order
+     * @return a negative number, zero or a positive number if this key comes before, together with or after the other
+     * key
+     */
+    int compareTo( LineKey other, boolean[] descending )
+    {
+        for ( int key = 0; key < kinds.length; key++ )
+        {
+            int comparison = SortKeys.compare( kinds[key], numbers[key], texts[key], other.kinds[key], other
+                    .numbers[key], other.texts[key] );
+            if ( comparison != 0 )
+            {
+                return descending[key] ? -comparison : comparison;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Checks whether a value of the key is empty.
+     *
+     * @return true if a value is blank
+     */
+    boolean hasEmptyValue()
+    {
+        for ( String text : texts )
+        {
+            if ( StringUtils.isBlank( text ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,338 @@
+package elements;
+
+import io.CSVReader;
+import io.CSVWriter;
+import org.apache.commons.lang3.StringUtils;
+import type.JoinType;
+
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Joins rows which are sorted by their key columns by merging them. Only the rows of the right side which share the
+ * current key are kept, so two CSV files are joined with constant memory as long as no key has too many rows. Files
+ * can be sorted with an {@link ExternalSort} by the same columns in ascending order first.
+ * <p>
+ * Keys are compared like sorting compares them, so numbers which are written differently are equal. The result is
+ * ordered by the keys, the rows with the same key are all left rows with each of the right rows in their order. A row
+ * with an empty key value never matches.
+ */
+public final class MergeJoin
+{
+    private final int[] leftColumns;
+
+    private final int[] rightColumns;
+
+    private final JoinType joinType;
+
+    /**
+     * Creates a new MergeJoin.
+     *
+     * @param leftColumns  the key columns of the left side
+     * @param rightColumns the key columns of the right side, in the same order
+     * @param joinType     the type of the join
+     */
+    public MergeJoin( int[] leftColumns, int[] rightColumns, JoinType joinType )
+    {
+        if ( leftColumns.length == 0 || leftColumns.length != rightColumns.length )
+        {
+            throw new IllegalArgumentException( "The number of key columns differs." );
+        }
+        this.leftColumns = leftColumns.clone();
+        this.rightColumns = rightColumns.clone();
+        this.joinType = joinType;
+    }
+
+    /**
+     * Joins the lines of two files into another file. Both files have to be sorted by their key columns in ascending
+     * order. If both readers treat the first line as column names, the names are written first.
+     *
+     * @param left   the reader of the left file
+     * @param right  the reader of the right file
+     * @param writer the writer of the joined file
+     * @throws IllegalStateException if a file is not sorted by its key columns
+     */
+    public void join( CSVReader left, CSVReader right, CSVWriter writer )
+    {
+        try ( Stream<List<String>> leftLines = left.stream(); Stream<List<String>> rightLines = right.stream() )
+        {
+            Iterator<List<String>> leftIterator = leftLines.iterator();
+            Iterator<List<String>> rightIterator = rightLines.iterator();
+            List<String> leftHeader = left.isWithColumnNames() && leftIterator.hasNext() ? leftIterator.next() : null;
+            List<String> rightHeader = right.isWithColumnNames() && rightIterator.hasNext() ? rightIterator
+                    .next() : null;
+            Lines leftSide = new Lines( leftIterator, leftColumns, leftHeader );
+            Lines rightSide = new Lines( rightIterator, rightColumns, rightHeader );
+            boolean[] descending = new boolean[leftColumns.length];
+            Merge<Line> merge = new Merge<>( leftSide, rightSide, ( line1, line2 ) -> line1.key
+                    .compareTo( line2.key, descending ), line -> line.key.hasEmptyValue(), joinType );
+            Stream<List<String>> joined = StreamSupport
+                    .stream( Spliterators.spliteratorUnknownSize( merge, Spliterator.ORDERED ), false )
+                    .map( pair -> concat( leftSide.valuesOf( pair.get( 0 ) ), rightSide.valuesOf( pair.get( 1 ) ) ) );
+            writer.writeCSV( leftHeader != null && rightHeader != null ? Stream
+                    .concat( Stream.of( concat( leftHeader, rightHeader ) ), joined ) : joined );
+        }
+    }
+
+    /**
+     * Joins two stores by sorting the order of their rows and merging them. The stores themselves are not reordered.
+     *
+     * @param left         the left store
+     * @param leftColumns  the key columns of the left store
+     * @param right        the right store
+     * @param rightColumns the key columns of the right store
+     * @param joinType     the type of the join
+     * @return a new DataSheet with the columns of the left store followed by the columns of the right store
+     */
+    static DataSheet join( RecordStore left, int[] leftColumns, RecordStore right, int[] rightColumns, JoinType joinType )
+    {
+        boolean[] descending = new boolean[leftColumns.length];
+        SortKeys leftKeys = new SortKeys( left, leftColumns, descending, false );
+        SortKeys rightKeys = new SortKeys( right, rightColumns, descending, false );
+        Merge<SortedRow> merge = new Merge<>( rowsOf( leftKeys ), rowsOf( rightKeys ), ( row1, row2 ) -> row1.keys
+                .compare( row1.row, row2.keys, row2.row ), row -> row.keys.hasEmptyValue( row.row ), joinType );
+        List<Record> records = new ArrayList<>();
+        merge.forEachRemaining( pair -> records.add( HashJoin.record( left, pair.get( 0 ) != null ? pair.get( 0 ).row
+                : -1, right, pair.get( 1 ) != null ? pair.get( 1 ).row : -1 ) ) );
+        return new DataSheet( records, HashJoin.columnNames( left, right ) );
+    }
+
+    private static Iterator<SortedRow> rowsOf( SortKeys keys )
+    {
+        return Arrays.stream( keys.sort( false ) ).mapToObj( row -> new SortedRow( keys, row ) ).iterator();
+    }
+
+    private static List<String> concat( List<String> left, List<String> right )
+    {
+        List<String> line = new ArrayList<>( left.size() + right.size() );
+        line.addAll( left );
+        line.addAll( right );
+        return line;
+    }
+
+    /**
+     * A row of a store in sorted order.
+     */
+    private static final class SortedRow
+    {
+        private final SortKeys keys;
+
+        private final int row;
+
+        SortedRow( SortKeys keys, int row )
+        {
+            this.keys = keys;
+            this.row = row;
+        }
+    }
+
+    /**
+     * A line of a file together with its key.
+     */
+    private static final class Line
+    {
+        private final List<String> values;
+
+        private final LineKey key;
+
+        Line( List<String> values, LineKey key )
+        {
+            this.values = values;
+            this.key = key;
+        }
+    }
+
+    /**
+     * The lines of one side. The number of columns is taken from the column names or the first line, so a missing
+     * line is filled with as many empty values.
+     */
+    private static final class Lines implements Iterator<Line>
+    {
+        private final Iterator<List<String>> lines;
+
+        private final int[] columns;
+
+        private int width;
+
+        Lines( Iterator<List<String>> lines, int[] columns, List<String> header )
+        {
+            this.lines = lines;
+            this.columns = columns;
+            this.width = header != null ? header.size() : -1;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return lines.hasNext();
+        }
+
+        @Override
+        public Line next()
+        {
+            List<String> values = lines.next();
+            if ( width < 0 )
+            {
+                width = values.size();
+            }
+            return new Line( values, new LineKey( values, columns ) );
+        }
+
+        List<String> valuesOf( Line line )
+        {
+            return line != null ? line.values : Collections.nCopies( Math.max( width, 0 ), StringUtils.EMPTY );
+        }
+    }
+
+    /**
+     * Merges two sides which are sorted by their keys into pairs of a left and a right row, one of them null for rows
+     * of an outer join without a match. The right rows with the current key are kept until the left rows with that key
+     * are paired with them.
+     *
+     * @param <T> the type of the rows
+     */
+    private static final class Merge<T> implements Iterator<List<T>>
+    {
+        private final Iterator<? extends T> left;
+
+        private final Iterator<? extends T> right;
+
+        private final Comparator<T> comparator;
+
+        private final Predicate<T> empty;
+
+        private final boolean keepLeft;
+
+        private final boolean keepRight;
+
+        private final List<T> run = new ArrayList<>();
+
+        private T leftRow;
+
+        private T rightRow;
+
+        private T runRow;
+
+        private int runIndex;
+
+        private List<T> pending;
+
+        Merge( Iterator<? extends T> left, Iterator<? extends T> right, Comparator<T> comparator, Predicate<T> empty,
+               JoinType joinType )
+        {
+            this.left = left;
+            this.right = right;
+            this.comparator = comparator;
+            this.empty = empty;
+            keepLeft = joinType == JoinType.LEFT || joinType == JoinType.FULL;
+            keepRight = joinType == JoinType.RIGHT || joinType == JoinType.FULL;
+            leftRow = left.hasNext() ? left.next() : null;
+            rightRow = right.hasNext() ? right.next() : null;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            if ( pending == null )
+            {
+                pending = advance();
+            }
+            return pending != null;
+        }
+
+        @Override
+        public List<T> next()
+        {
+            if ( !hasNext() )
+            {
+                throw new NoSuchElementException();
+            }
+            List<T> pair = pending;
+            pending = null;
+            return pair;
+        }
+
+        private List<T> advance()
+        {
+            while ( true )
+            {
+                if ( runRow != null )
+                {
+                    if ( runIndex < run.size() )
+                    {
+                        return Arrays.asList( runRow, run.get( runIndex++ ) );
+                    }
+                    leftRow = next( left, leftRow );
+                    runIndex = 0;
+                    if ( leftRow != null && !empty.test( leftRow ) && comparator.compare( leftRow, run.get( 0 ) ) == 0 )
+                    {
+                        runRow = leftRow;
+                        continue;
+                    }
+                    runRow = null;
+                    run.clear();
+                }
+                if ( leftRow == null && rightRow == null )
+                {
+                    return null;
+                }
+                boolean leftFirst;
+                if ( leftRow == null || rightRow == null )
+                {
+                    leftFirst = leftRow != null;
+                }
+                else if ( empty.test( leftRow ) || empty.test( rightRow ) )
+                {
+                    leftFirst = empty.test( leftRow );
+                }
+                else
+                {
+                    int comparison = comparator.compare( leftRow, rightRow );
+                    if ( comparison == 0 )
+                    {
+                        T first = rightRow;
+                        do
+                        {
+                            run.add( rightRow );
+                            rightRow = next( right, rightRow );
+                        }
+                        while ( rightRow != null && !empty.test( rightRow ) && comparator.compare( first, rightRow ) == 0 );
+                        runRow = leftRow;
+                        continue;
+                    }
+                    leftFirst = comparison < 0;
+                }
+                if ( leftFirst )
+                {
+                    T row = leftRow;
+                    leftRow = next( left, leftRow );
+                    if ( keepLeft )
+                    {
+                        return Arrays.asList( row, null );
+                    }
+                }
+                else
+                {
+                    T row = rightRow;
+                    rightRow = next( right, rightRow );
+                    if ( keepRight )
+                    {
+                        return Arrays.asList( null, row );
+                    }
+                }
+            }
+        }
+
+        private T next( Iterator<? extends T> rows, T previous )
+        {
+            T row = rows.hasNext() ? rows.next() : null;
+            if ( row != null && comparator.compare( previous, row ) > 0 )
+            {
+                throw new IllegalStateException( "The rows are not sorted by the key columns." );
+            }
+            return row;
+        }
+    }
+}
@@ -0,0 +1,757 @@
+package elements;
+
+import type.SortOrder;
+import util.RowBitmap;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * A query over a DataSheet which is built step by step and only runs on {@link #execute()}. The steps form a logical
+ * plan in the order in which they are added, like {@code where}, {@code orderBy} and {@code limit}. Column indices refer
+ * to the columns the previous steps result in: the columns of the DataSheet, the columns chosen by {@code select} or
+ * the key columns followed by the aggregations after {@code aggregate}.
+ * <p>
+ * Before running, the plan is rewritten without changing its result:
+ * <ul>
+ * <li>filters are moved before sorts and projections, as far as the last limit or aggregation,</li>
+ * <li>projections are fused into one and only applied to the rows of the result,</li>
+ * <li>consecutive sorts are fused into one sort, a sort followed by a limit becomes a top-N selection,</li>
+ * <li>filters on the DataSheet itself read the rows from the index or the zone map of their column if there is one.</li>
+ * </ul>
+ * The plan which is run is shown by {@link #explain()}.
+ */
+public final class Query
+{
+    private final RecordStore store;
+
+    private final List<Step> steps = new ArrayList<>();
+
+    Query( RecordStore store )
+    {
+        this.store = store;
+    }
+
+    /**
+     * Keeps only some columns, in the given order.
+     *
+     * @param columns the column indices
+     * @return the Query object
+     */
+    public Query select( int... columns )
+    {
+        steps.add( new Project( columns.clone() ) );
+        return this;
+    }
+
+    /**
+     * Keeps the rows which match a predicate. As the index of a column can not be used for a predicate, {@link
+     * #whereIn(int, Object...)} and {@link #whereBetween(int, Object, Object)} should be preferred where possible.
+     *
+     * @param predicate the predicate
+     * @return the Query object
+     */
+    public Query where( Predicate<Record> predicate )
+    {
+        steps.add( new Filter( -1, null, null, null, predicate ) );
+        return this;
+    }
+
+    /**
+     * Keeps the rows whose formatted value in a column equals one of some values, like {@link DataSheet#select(int,
+     * Object...)} does.
+     *
+     * @param column the index of the column
+     * @param values the values
+     * @return the Query object
+     */
+    public Query whereIn( int column, Object... values )
+    {
+        Set<String> texts = new LinkedHashSet<>();
+        for ( Object value : values )
+        {
+            texts.add( value != null ? value.toString() : "" );
+        }
+        steps.add( new Filter( column, texts, null, null, null ) );
+        return this;
+    }
+
+    /**
+     * Keeps the rows whose value in a column is inside of a range, like {@link DataSheet#selectRange(int, Object,
+     * Object)} does.
+     *
+     * @param column the index of the column
+     * @param from   the lower bound, inclusive, or null for no lower bound
+     * @param to     the upper bound, inclusive, or null for no upper bound
+     * @return the Query object
+     */
+    public Query whereBetween( int column, Object from, Object to )
+    {
+        steps.add( new Filter( column, null, from, to, null ) );
+        return this;
+    }
+
+    /**
+     * Groups the rows by the values of a number of columns for the following {@link #aggregate(Aggregation...)}.
+     * Without it, the result has one row per group with the values of the key columns.
+     *
+     * @param columns the column indices
+     * @return the Query object
+     */
+    public Query groupBy( int... columns )
+    {
+        steps.add( new Group( columns.clone(), null ) );
+        return this;
+    }
+
+    /**
+     * Aggregates the groups of the last {@link #groupBy(int...)} or all rows as one group if there is none, like {@link
+     * Grouping#aggregate(Aggregation...)} does.
+     *
+     * @param aggregations the aggregations
+     * @return the Query object
+     */
+    public Query aggregate( Aggregation... aggregations )
+    {
+        Step last = steps.isEmpty() ? null : steps.get( steps.size() - 1 );
+        if ( last instanceof Group && ( ( Group ) last ).aggregations == null )
+        {
+            steps.set( steps.size() - 1, new Group( ( ( Group ) last ).columns, aggregations.clone() ) );
+        }
+        else
+        {
+            steps.add( new Group( new int[0], aggregations.clone() ) );
+        }
+        return this;
+    }
+
+    /**
+     * Sorts the rows. The sort is stable, rows with equal values keep their order.
+     *
+     * @param sortMap the column indices with their sort order
+     * @return the Query object
+     */
+    public Query orderBy( LinkedHashMap<Integer, SortOrder> sortMap )
+    {
+        int[] columns = new int[sortMap.size()];
+        boolean[] descending = new boolean[sortMap.size()];
+        int i = 0;
+        for ( Map.Entry<Integer, SortOrder> entry : sortMap.entrySet() )
+        {
+            columns[i] = entry.getKey();
+            descending[i++] = entry.getValue() == SortOrder.DESC;
+        }
+        steps.add( new Sort( columns, descending ) );
+        return this;
+    }
+
+    /**
+     * Sorts the rows by one column.
+     *
+     * @param column the index of the column
+     * @param order  the sort order
+     * @return the Query object
+     */
+    public Query orderBy( int column, SortOrder order )
+    {
+        steps.add( new Sort( new int[]{ column }, new boolean[]{ order == SortOrder.DESC } ) );
+        return this;
+    }
+
+    /**
+     * Keeps the first rows.
+     *
+     * @param count the maximum number of rows
+     * @return the Query object
+     */
+    public Query limit( int count )
+    {
+        steps.add( new Limit( Math.max( 0, count ) ) );
+        return this;
+    }
+
+    /**
+     * Plans and runs the query. The DataSheet is not changed.
+     *
+     * @return a new DataSheet with the result or null if a column is not found
+     */
+    public DataSheet execute()
+    {
+        Plan plan = plan();
+        return plan != null ? plan.execute() : null;
+    }
+
+    /**
+     * Describes the plan which {@link #execute()} would run, one operation per line with the last operation first and
+     * the operations it reads from indented below it. Column indices are those of the DataSheet, or of the result of
+     * the aggregation below.
+     *
+     * @return the plan or null if a column is not found
+     */
+    public String explain()
+    {
+        Plan plan = plan();
+        return plan != null ? plan.explain() : null;
+    }
+
+    /**
+     * Rewrites the steps into stages. A stage filters, sorts and limits the rows of a store, the rows of the previous
+     * stage or the result of an aggregation. A filter is added to the current stage, so it runs before the sort of the
+     * stage, unless the stage already has a limit.
+     */
+    private Plan plan()
+    {
+        Plan plan = new Plan();
+        Stage stage = plan.add( new Stage( store, true ) );
+        int[] projection = null;
+        int width = store.columnCount();
+        for ( Step step : steps )
+        {
+            if ( step instanceof Project )
+            {
+                int[] columns = map( ( ( Project ) step ).columns, projection, width );
+                if ( columns == null )
+                {
+                    return null;
+                }
+                projection = columns;
+                width = columns.length;
+            }
+            else if ( step instanceof Filter )
+            {
+                Filter filter = ( Filter ) step;
+                int[] column = filter.predicate == null ? map( new int[]{ filter.column }, projection, width ) : null;
+                if ( filter.predicate == null && column == null || Double.isNaN( filter.lower ) || Double
+                        .isNaN( filter.upper ) )
+                {
+                    return null;
+                }
+                if ( stage.limit >= 0 )
+                {
+                    stage = plan.add( new Stage( stage.store, false ) );
+                }
+                stage.filters.add( filter.predicate == null ? filter.on( column[0] ) : filter.through( projection ) );
+            }
+            else if ( step instanceof Sort )
+            {
+                Sort sort = ( Sort ) step;
+                int[] columns = map( sort.columns, projection, width );
+                if ( columns == null )
+                {
+                    return null;
+                }
+                if ( stage.limit >= 0 )
+                {
+                    stage = plan.add( new Stage( stage.store, false ) );
+                }
+                stage.sort = new Sort( columns, sort.descending ).then( stage.sort );
+            }
+            else if ( step instanceof Limit )
+            {
+                int count = ( ( Limit ) step ).count;
+                stage.limit = stage.limit >= 0 ? Math.min( stage.limit, count ) : count;
+            }
+            else
+            {
+                Group group = ( Group ) step;
+                int[] columns = map( group.columns, projection, width );
+                Aggregation[] aggregations = new Aggregation[group.aggregations != null ? group.aggregations.length : 0];
+                for ( int i = 0; i < aggregations.length; i++ )
+                {
+                    Aggregation aggregation = group.aggregations[i];
+                    int[] column = aggregation.getColumn() >= 0 ? map( new int[]{ aggregation.getColumn() },
+                            projection, width ) : new int[]{ -1 };
+                    if ( column == null )
+                    {
+                        return null;
+                    }
+                    aggregations[i] = Aggregation.of( aggregation.getOperation(), column[0] );
+                }
+                if ( columns == null )
+                {
+                    return null;
+                }
+                stage.group = new Group( columns, aggregations );
+                stage = plan.add( new Stage( null, false ) );
+                projection = null;
+                width = columns.length + aggregations.length;
+            }
+        }
+        plan.projection = projection;
+        return plan;
+    }
+
+    /**
+     * Maps column indices through a projection.
+     *
+     * @return the column indices of the store or null if a column is not found
+     */
+    private static int[] map( int[] columns, int[] projection, int width )
+    {
+        int[] mapped = new int[columns.length];
+        for ( int i = 0; i < columns.length; i++ )
+        {
+            if ( columns[i] < 0 || columns[i] >= width )
+            {
+                return null;
+            }
+            mapped[i] = projection != null ? projection[columns[i]] : columns[i];
+        }
+        return mapped;
+    }
+
+    /**
+     * A step of the logical plan.
+     */
+    private interface Step
+    {
+    }
+
+    private static final class Project implements Step
+    {
+        private final int[] columns;
+
+        Project( int[] columns )
+        {
+            this.columns = columns;
+        }
+    }
+
+    private static final class Limit implements Step
+    {
+        private final int count;
+
+        Limit( int count )
+        {
+            this.count = count;
+        }
+    }
+
+    private static final class Group implements Step
+    {
+        private final int[] columns;
+
+        private final Aggregation[] aggregations;
+
+        /**
+         * Creates a Group.
+         *
+         * @param columns      the key columns
+         * @param aggregations the aggregations or null if they have not been added yet
+         */
+        Group( int[] columns, Aggregation[] aggregations )
+        {
+            this.columns = columns;
+            this.aggregations = aggregations;
+        }
+
+        @Override
+        public String toString()
+        {
+            StringJoiner names = new StringJoiner( ", ", "[", "]" );
+            for ( Aggregation aggregation : aggregations )
+            {
+                names.add( aggregation.getName( String.valueOf( aggregation.getColumn() ) ) );
+            }
+            return "Aggregate " + names + " by " + Arrays.toString( columns );
+        }
+    }
+
+    private static final class Sort implements Step
+    {
+        private final int[] columns;
+
+        private final boolean[] descending;
+
+        Sort( int[] columns, boolean[] descending )
+        {
+            this.columns = columns;
+            this.descending = descending;
+        }
+
+        /**
+         * Fuses this sort with a sort which ran before it. As sorting is stable, the rows end up ordered by the columns
+         * of this sort first and by the columns of the previous sort next.
+         */
+        Sort then( Sort previous )
+        {
+            if ( previous == null )
+            {
+                return this;
+            }
+            int[] fusedColumns = Arrays.copyOf( columns, columns.length + previous.columns.length );
+            boolean[] fusedDescending = Arrays.copyOf( descending, fusedColumns.length );
+            int size = columns.length;
+            for ( int i = 0; i < previous.columns.length; i++ )
+            {
+                int column = previous.columns[i];
+                if ( Arrays.stream( columns ).noneMatch( c -> c == column ) )
+                {
+                    fusedColumns[size] = column;
+                    fusedDescending[size++] = previous.descending[i];
+                }
+            }
+            return new Sort( Arrays.copyOf( fusedColumns, size ), Arrays.copyOf( fusedDescending, size ) );
+        }
+
+        @Override
+        public String toString()
+        {
+            StringJoiner keys = new StringJoiner( ", ", "[", "]" );
+            for ( int i = 0; i < columns.length; i++ )
+            {
+                keys.add( columns[i] + ( descending[i] ? " DESC" : " ASC" ) );
+            }
+            return keys.toString();
+        }
+    }
+
+    /**
+     * A filter on the values of a column or a predicate on the rows.
+     */
+    private static final class Filter implements Step
+    {
+        private final int column;
+
+        private final Set<String> values;
+
+        private final Object from;
+
+        private final Object to;
+
+        private final Predicate<Record> predicate;
+
+        private final int[] projection;
+
+        private final double lower;
+
+        private final double upper;
+
+        Filter( int column, Set<String> values, Object from, Object to, Predicate<Record> predicate )
+        {
+            this( column, values, from, to, predicate, null );
+        }
+
+        private Filter( int column, Set<String> values, Object from, Object to, Predicate<Record> predicate,
+                        int[] projection )
+        {
+            this.column = column;
+            this.values = values;
+            this.from = from;
+            this.to = to;
+            this.predicate = predicate;
+            this.projection = projection;
+            lower = from != null ? ZoneMap.keyOf( from ) : Double.NEGATIVE_INFINITY;
+            upper = to != null ? ZoneMap.keyOf( to ) : Double.POSITIVE_INFINITY;
+        }
+
+        /**
+         * Returns this filter on another column.
+         */
+        Filter on( int column )
+        {
+            return new Filter( column, values, from, to, null );
+        }
+
+        /**
+         * Returns this predicate for rows which are read through a projection.
+         */
+        Filter through( int[] projection )
+        {
+            return new Filter( -1, null, null, null, predicate, projection );
+        }
+
+        boolean isRange()
+        {
+            return predicate == null && values == null;
+        }
+
+        boolean test( RecordStore store, int row )
+        {
+            if ( predicate != null )
+            {
+                if ( projection == null )
+                {
+                    return predicate.test( store.getRecord( row ) );
+                }
+                List<Cell> cells = new ArrayList<>( projection.length );
+                for ( int column : projection )
+                {
+                    cells.add( store.getCell( column, row ) );
+                }
+                return predicate.test( new Record( cells ) );
+            }
+            if ( values != null )
+            {
+                return values.contains( store.getCell( column, row ).toString() );
+            }
+            double key = ZoneMap.keyOf( store.getCell( column, row ) );
+            return key >= lower && key <= upper;
+        }
+
+        /**
+         * Checks whether the rows can be read from the index or the zone map of the column.
+         */
+        boolean isIndexed( RecordStore store )
+        {
+            if ( predicate != null )
+            {
+                return false;
+            }
+            return isRange() ? store.getZoneMap( column ) != null : store.getHashIndex( column ) != null;
+        }
+
+        /**
+         * Reads the rows from the index or the zone map of the column.
+         */
+        RowBitmap scan( RecordStore store )
+        {
+            if ( isRange() )
+            {
+                return store.getZoneMap( column ).select( lower, upper );
+            }
+            HashIndex index = store.getHashIndex( column );
+            RowBitmap rows = new RowBitmap();
+            for ( String value : values )
+            {
+                rows = rows.or( index.lookup( value ) );
+            }
+            return rows;
+        }
+
+        @Override
+        public String toString()
+        {
+            if ( predicate != null )
+            {
+                return "predicate";
+            }
+            return "column " + column + ( values != null ? " IN " + values : " BETWEEN " + ( from != null ? from : "*" )
+                    + " AND " + ( to != null ? to : "*" ) );
+        }
+    }
+
+    /**
+     * Filters, sorts and limits the rows of a store and aggregates them at the end.
+     */
+    private static final class Stage
+    {
+        private final RecordStore store;
+
+        private final boolean scan;
+
+        private final List<Filter> filters = new ArrayList<>();
+
+        private Sort sort;
+
+        private int limit = -1;
+
+        private Group group;
+
+        Stage( RecordStore store, boolean scan )
+        {
+            this.store = store;
+            this.scan = scan;
+        }
+    }
+
+    /**
+     * The stages of a query and the columns of the result.
+     */
+    private static final class Plan
+    {
+        private final List<Stage> stages = new ArrayList<>();
+
+        private int[] projection;
+
+        Stage add( Stage stage )
+        {
+            stages.add( stage );
+            return stage;
+        }
+
+        DataSheet execute()
+        {
+            int[] rows = null;
+            RecordStore store = null;
+            for ( Stage stage : stages )
+            {
+                if ( stage.store != null )
+                {
+                    store = stage.store;
+                }
+                List<Filter> filters = new ArrayList<>( stage.filters );
+                if ( stage.scan )
+                {
+                    RowBitmap scanned = null;
+                    for ( Iterator<Filter> iterator = filters.iterator(); iterator.hasNext(); )
+                    {
+                        Filter filter = iterator.next();
+                        if ( filter.isIndexed( store ) )
+                        {
+                            RowBitmap bitmap = filter.scan( store );
+                            scanned = scanned != null ? scanned.and( bitmap ) : bitmap;
+                            iterator.remove();
+                        }
+                    }
+                    rows = scanned != null ? scanned.toArray() : null;
+                }
+                rows = filter( store, rows, filters );
+                rows = sort( store, rows, stage.sort, stage.limit );
+                if ( stage.group != null )
+                {
+                    store = new Grouping( store, stage.group.columns, rows ).aggregate( stage.group.aggregations )
+                            .content();
+                    rows = null;
+                }
+            }
+            return materialize( store, rows );
+        }
+
+        /**
+         * Keeps the rows which pass all filters, the filters on the values of a column first.
+         */
+        private int[] filter( RecordStore store, int[] rows, List<Filter> filters )
+        {
+            if ( filters.isEmpty() )
+            {
+                return rows;
+            }
+            filters.sort( Comparator.comparing( filter -> filter.predicate != null ) );
+            int count = rows != null ? rows.length : store.rowCount();
+            int[] passed = new int[count];
+            int size = 0;
+            for ( int index = 0; index < count; index++ )
+            {
+                int row = rows != null ? rows[index] : index;
+                boolean pass = true;
+                for ( int i = 0; pass && i < filters.size(); i++ )
+                {
+                    pass = filters.get( i ).test( store, row );
+                }
+                if ( pass )
+                {
+                    passed[size++] = row;
+                }
+            }
+            return Arrays.copyOf( passed, size );
+        }
+
+        private int[] sort( RecordStore store, int[] rows, Sort sort, int limit )
+        {
+            if ( sort == null && limit < 0 )
+            {
+                return rows;
+            }
+            int[] selection = rows != null ? rows : allRows( store );
+            if ( sort == null )
+            {
+                return Arrays.copyOf( selection, Math.min( limit, selection.length ) );
+            }
+            SortKeys keys = new SortKeys( store, sort.columns, sort.descending, selection, false );
+            int[] order = limit >= 0 ? keys.select( limit, false ) : keys.sort( false );
+            int[] sorted = new int[order.length];
+            for ( int i = 0; i < order.length; i++ )
+            {
+                sorted[i] = selection[order[i]];
+            }
+            return sorted;
+        }
+
+        private DataSheet materialize( RecordStore store, int[] rows )
+        {
+            int[] columns = projection != null ? projection : allColumns( store );
+            int[] selection = rows != null ? rows : allRows( store );
+            List<Record> records = new ArrayList<>( selection.length );
+            for ( int row : selection )
+            {
+                List<Cell> cells = new ArrayList<>( columns.length );
+                for ( int column : columns )
+                {
+                    cells.add( store.getCell( column, row ).copy() );
+                }
+                records.add( new Record( cells ) );
+            }
+            List<String> names = null;
+            if ( store.hasColumnNames() )
+            {
+                names = new ArrayList<>( columns.length );
+                for ( int column : columns )
+                {
+                    names.add( store.getColumnNames().get( column ) );
+                }
+            }
+            return new DataSheet( records, names );
+        }
+
+        String explain()
+        {
+            List<String> operations = new ArrayList<>();
+            for ( Stage stage : stages )
+            {
+                List<Filter> filters = new ArrayList<>( stage.filters );
+                if ( stage.scan )
+                {
+                    List<String> scans = new ArrayList<>();
+                    for ( Iterator<Filter> iterator = filters.iterator(); iterator.hasNext(); )
+                    {
+                        Filter filter = iterator.next();
+                        if ( filter.isIndexed( stage.store ) )
+                        {
+                            scans.add( ( filter.isRange() ? "ZoneMapScan " : "IndexScan " ) + filter );
+                            iterator.remove();
+                        }
+                    }
+                    if ( scans.size() > 1 )
+                    {
+                        operations.add( "BitmapAnd\n  " + String.join( "\n  ", scans ) );
+                    }
+                    else
+                    {
+                        operations.add( scans.isEmpty() ? "TableScan" : scans.get( 0 ) );
+                    }
+                }
+                filters.sort( Comparator.comparing( filter -> filter.predicate != null ) );
+                filters.forEach( filter -> operations.add( "Filter " + filter ) );
+                if ( stage.sort != null )
+                {
+                    operations.add( stage.limit >= 0 ? "TopN " + stage.limit + " " + stage.sort : "Sort " + stage.sort );
+                }
+                else if ( stage.limit >= 0 )
+                {
+                    operations.add( "Limit " + stage.limit );
+                }
+                if ( stage.group != null )
+                {
+                    operations.add( stage.group.toString() );
+                }
+            }
+            if ( projection != null )
+            {
+                operations.add( "Project " + Arrays.toString( projection ) );
+            }
+            StringBuilder plan = new StringBuilder();
+            String indent = "";
+            for ( int i = operations.size() - 1; i >= 0; i-- )
+            {
+                plan.append( indent ).append( operations.get( i ).replace( "\n", "\n" + indent ) ).append( "\n" );
+                indent += "  ";
+            }
+            return plan.toString();
+        }
+
+        private static int[] allRows( RecordStore store )
+        {
+            int[] rows = new int[store.rowCount()];
+            Arrays.setAll( rows, i -> i );
+            return rows;
+        }
+
+        private static int[] allColumns( RecordStore store )
+        {
+            int[] columns = new int[store.columnCount()];
+            Arrays.setAll( columns, i -> i );
+            return columns;
+        }
+    }
+}
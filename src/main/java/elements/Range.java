@@ -0,0 +1,189 @@
+package elements;
+
+/**
+ * A rectangular range of cells described by its bounds. The bounds are inclusive. A range follows the rows and columns
+ * it refers to when rows or columns are inserted or removed before or inside of it. A range which ends at
+ * {@link #LAST_ROW} covers whole columns and always reaches down to the last row.
+ */
+final class Range
+{
+    static final int LAST_ROW = Integer.MAX_VALUE;
+
+    private int fromColumn;
+
+    private int fromRow;
+
+    private int toColumn;
+
+    private int toRow;
+
+    Range( int fromColumn, int fromRow, int toColumn, int toRow )
+    {
+        this.fromColumn = fromColumn;
+        this.fromRow = fromRow;
+        this.toColumn = toColumn;
+        this.toRow = toRow;
+    }
+
+    int getFromColumn()
+    {
+        return fromColumn;
+    }
+
+    int getFromRow()
+    {
+        return fromRow;
+    }
+
+    int getToColumn()
+    {
+        return toColumn;
+    }
+
+    int getToRow()
+    {
+        return toRow;
+    }
+
+    int columnCount()
+    {
+        return toColumn - fromColumn + 1;
+    }
+
+    int rowCount()
+    {
+        return toRow - fromRow + 1;
+    }
+
+    int size()
+    {
+        return columnCount() * rowCount();
+    }
+
+    /**
+     * A range is empty if all of its rows or columns have been removed.
+     *
+     * @return true if the range does not contain any cell
+     */
+    boolean isEmpty()
+    {
+        return toColumn < fromColumn || toRow < fromRow;
+    }
+
+    boolean contains( int column, int row )
+    {
+        return containsColumn( column ) && containsRow( row );
+    }
+
+    boolean containsColumn( int column )
+    {
+        return column >= fromColumn && column <= toColumn;
+    }
+
+    boolean containsRow( int row )
+    {
+        return row >= fromRow && row <= toRow;
+    }
+
+    /**
+     * Adjusts the bounds to a row which has been inserted.
+     *
+     * @param row the index of the inserted row
+     * @return true if the range contains the new row
+     */
+    boolean rowInserted( int row )
+    {
+        if ( toRow == LAST_ROW )
+        {
+            return row >= fromRow;
+        }
+        if ( row <= fromRow )
+        {
+            fromRow++;
+            toRow++;
+            return false;
+        }
+        if ( row <= toRow )
+        {
+            toRow++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adjusts the bounds to a row which has been removed.
+     *
+     * @param row the index of the removed row
+     * @return true if the range contained the removed row
+     */
+    boolean rowRemoved( int row )
+    {
+        if ( toRow == LAST_ROW )
+        {
+            return row >= fromRow;
+        }
+        if ( row < fromRow )
+        {
+            fromRow--;
+            toRow--;
+            return false;
+        }
+        if ( row <= toRow )
+        {
+            toRow--;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adjusts the bounds to a column which has been inserted.
+     *
+     * @param column the index of the inserted column
+     * @return true if the range contains the new column
+     */
+    boolean columnInserted( int column )
+    {
+        if ( column <= fromColumn )
+        {
+            fromColumn++;
+            toColumn++;
+            return false;
+        }
+        if ( column <= toColumn )
+        {
+            toColumn++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adjusts the bounds to a column which has been removed.
+     *
+     * @param column the index of the removed column
+     * @return true if the range contained the removed column
+     */
+    boolean columnRemoved( int column )
+    {
+        if ( column < fromColumn )
+        {
+            fromColumn--;
+            toColumn--;
+            return false;
+        }
+        if ( column <= toColumn )
+        {
+            toColumn--;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "%s:%s-%s:%s", fromColumn, fromRow, toColumn, toRow );
+    }
+}
@@ -0,0 +1,358 @@
+package elements;
+
+import type.Operation;
+
+import java.util.Arrays;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A two-dimensional Fenwick tree over the numeric values of a RecordStore. Every entry holds the sum of a block of
+ * values whose size is a power of two in both directions, so the sum of any rectangle is taken from four prefix sums of
+ * a logarithmic number of entries each, and a changed cell updates a logarithmic number of entries. Cells which are not
+ * numeric are counted the same way, since a rectangle with a non-numeric cell sums up to 0 like an expression does.
+ * <p>
+ * Changed cells and rows are updated in place. Rows are added to the tree lazily: rows added to the end are added on
+ * the next query, changes which move rows, like inserting a row in between or sorting, drop the rows from the first
+ * moved row on, which are added again by the next query. Expressions are not part of the tree as their results change
+ * with their operands, they are read on each query instead. As the sums are taken from differences, fractional values
+ * may differ from a sum over the single values in the last digits.
+ * <p>
+ * Queries only share a read lock, so expressions which read the index can be evaluated in parallel.
+ */
+final class RangeIndex implements StoreListener
+{
+    private final RecordStore store;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private int columns = -1;
+
+    private double[] sums = new double[0];
+
+    private int[] nonNumeric = new int[0];
+
+    /**
+     * The value of each cell in the tree by row and column, NaN if it is not numeric and 0 for an expression.
+     */
+    private double[] values = new double[0];
+
+    private final TreeSet<Long> expressions = new TreeSet<>();
+
+    private int validRows;
+
+    private int capacity;
+
+    RangeIndex( RecordStore store )
+    {
+        this.store = store;
+    }
+
+    /**
+     * Checks whether an operation can be answered from the sums.
+     *
+     * @param operation the operation
+     * @return true for SUM, AVG and COUNT
+     */
+    static boolean supports( Operation operation )
+    {
+        return operation == Operation.SUM || operation == Operation.AVG || operation == Operation.COUNT;
+    }
+
+    /**
+     * Calculates an operation over a rectangle of cells. The bounds are inclusive and have to be inside the store.
+     *
+     * @param operation  the operation
+     * @param fromColumn the index of the start column
+     * @param fromRow    the index of the start row
+     * @param toColumn   the index of the end column
+     * @param toRow      the index of the end row
+     * @param numericOnly true if cells which are not numeric should be skipped, false if they make the sum 0
+     * @return the result or NaN if the operation is not supported by the index
+     */
+    double aggregate( Operation operation, int fromColumn, int fromRow, int toColumn, int toRow, boolean numericOnly )
+    {
+        lock.readLock().lock();
+        try
+        {
+            if ( columns != store.columnCount() || validRows != store.rowCount() )
+            {
+                // Expressions read by a query do not change the store, so a nested query never gets here while an
+                // outer query of the same thread holds the read lock.
+                lock.readLock().unlock();
+                lock.writeLock().lock();
+                try
+                {
+                    update();
+                }
+                finally
+                {
+                    lock.readLock().lock();
+                    lock.writeLock().unlock();
+                }
+            }
+            double sum = sumOf( toRow + 1, toColumn + 1 ) - sumOf( fromRow, toColumn + 1 )
+                    - sumOf( toRow + 1, fromColumn ) + sumOf( fromRow, fromColumn );
+            int invalid = nonNumericOf( toRow + 1, toColumn + 1 ) - nonNumericOf( fromRow, toColumn + 1 )
+                    - nonNumericOf( toRow + 1, fromColumn ) + nonNumericOf( fromRow, fromColumn );
+            for ( long key : expressions.subSet( key( 0, fromRow ), key( 0, toRow + 1 ) ) )
+            {
+                int column = ( int ) key;
+                if ( column >= fromColumn && column <= toColumn )
+                {
+                    double value = store.getCell( column, ( int ) ( key >>> 32 ) ).toNumber();
+                    if ( Double.isNaN( value ) )
+                    {
+                        invalid++;
+                    }
+                    else
+                    {
+                        sum += value;
+                    }
+                }
+            }
+            int size = ( toColumn - fromColumn + 1 ) * ( toRow - fromRow + 1 );
+            return Statistics.fromSum( operation, sum, invalid, size, numericOnly );
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void contentChanged()
+    {
+        invalidateFrom( 0 );
+    }
+
+    @Override
+    public void cellChanged( int columnIndex, int rowIndex )
+    {
+        lock.writeLock().lock();
+        try
+        {
+            if ( rowIndex < validRows && columnIndex < columns )
+            {
+                change( columnIndex, rowIndex );
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void rowChanged( int rowIndex )
+    {
+        lock.writeLock().lock();
+        try
+        {
+            if ( rowIndex < validRows && columns == store.columnCount() )
+            {
+                for ( int column = 0; column < columns; column++ )
+                {
+                    change( column, rowIndex );
+                }
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void rowInserted( int rowIndex )
+    {
+        invalidateFrom( rowIndex );
+    }
+
+    @Override
+    public void rowRemoved( int rowIndex )
+    {
+        invalidateFrom( rowIndex );
+    }
+
+    @Override
+    public void rowsReordered( int[] order )
+    {
+        int first = 0;
+        while ( first < order.length && order[first] == first )
+        {
+            first++;
+        }
+        invalidateFrom( first );
+    }
+
+    /**
+     * Drops the rows from a row on. The entries of the rows above only hold values of rows above them, so they stay
+     * valid.
+     */
+    private void invalidateFrom( int rowIndex )
+    {
+        lock.writeLock().lock();
+        try
+        {
+            validRows = Math.min( validRows, rowIndex );
+            expressions.tailSet( key( 0, rowIndex ) ).clear();
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds the rows of the store which are not part of the tree.
+     */
+    private void update()
+    {
+        int rowCount = store.rowCount();
+        if ( columns != store.columnCount() )
+        {
+            columns = store.columnCount();
+            capacity = rowCount;
+            sums = new double[( capacity + 1 ) * ( columns + 1 )];
+            nonNumeric = new int[sums.length];
+            values = new double[capacity * columns];
+            expressions.clear();
+            validRows = 0;
+        }
+        else if ( capacity < rowCount )
+        {
+            capacity = Math.max( capacity * 3 / 2, rowCount );
+            sums = Arrays.copyOf( sums, ( capacity + 1 ) * ( columns + 1 ) );
+            nonNumeric = Arrays.copyOf( nonNumeric, sums.length );
+            values = Arrays.copyOf( values, capacity * columns );
+        }
+        for ( int row = validRows; row < rowCount; row++ )
+        {
+            append( row );
+        }
+        validRows = rowCount;
+    }
+
+    /**
+     * Adds a row behind the rows of the tree. The entry of a row sums up the values of the row and the entries of the
+     * rows it covers, and within a row each entry sums up the values of the columns it covers.
+     */
+    private void append( int row )
+    {
+        Record record = store.getRecord( row );
+        int entry = row + 1;
+        int first = at( entry, 0 );
+        Arrays.fill( sums, first, first + columns + 1, 0 );
+        Arrays.fill( nonNumeric, first, first + columns + 1, 0 );
+        for ( int column = 0; column < columns; column++ )
+        {
+            Cell cell = record.get( column );
+            double value = 0;
+            if ( cell.getRawValue() instanceof Cell.Expression )
+            {
+                expressions.add( key( column, row ) );
+            }
+            else
+            {
+                value = cell.toNumber();
+            }
+            values[row * columns + column] = value;
+            sums[first + column + 1] = Double.isNaN( value ) ? 0 : value;
+            nonNumeric[first + column + 1] = Double.isNaN( value ) ? 1 : 0;
+        }
+        for ( int column = 1; column <= columns; column++ )
+        {
+            int parent = column + ( column & -column );
+            if ( parent <= columns )
+            {
+                sums[first + parent] += sums[first + column];
+                nonNumeric[first + parent] += nonNumeric[first + column];
+            }
+        }
+        for ( int child = entry - 1; child > entry - ( entry & -entry ); child -= child & -child )
+        {
+            int from = at( child, 0 );
+            for ( int column = 1; column <= columns; column++ )
+            {
+                sums[first + column] += sums[from + column];
+                nonNumeric[first + column] += nonNumeric[from + column];
+            }
+        }
+    }
+
+    /**
+     * Reads a changed cell again and adds the difference to its previous value to the entries which cover it.
+     */
+    private void change( int column, int row )
+    {
+        double previous = expressions.remove( key( column, row ) ) ? 0 : values[row * columns + column];
+        Cell cell = store.getCell( column, row );
+        double value = 0;
+        if ( cell.getRawValue() instanceof Cell.Expression )
+        {
+            expressions.add( key( column, row ) );
+        }
+        else
+        {
+            value = cell.toNumber();
+        }
+        values[row * columns + column] = value;
+        double sum = ( Double.isNaN( value ) ? 0 : value ) - ( Double.isNaN( previous ) ? 0 : previous );
+        int invalid = ( Double.isNaN( value ) ? 1 : 0 ) - ( Double.isNaN( previous ) ? 1 : 0 );
+        if ( sum == 0 && invalid == 0 )
+        {
+            return;
+        }
+        for ( int entry = row + 1; entry <= validRows; entry += entry & -entry )
+        {
+            for ( int entryColumn = column + 1; entryColumn <= columns; entryColumn += entryColumn & -entryColumn )
+            {
+                sums[at( entry, entryColumn )] += sum;
+                nonNumeric[at( entry, entryColumn )] += invalid;
+            }
+        }
+    }
+
+    /**
+     * Returns the sum of the numeric values above and to the left of a position.
+     */
+    private double sumOf( int row, int column )
+    {
+        double sum = 0;
+        for ( int entry = row; entry > 0; entry -= entry & -entry )
+        {
+            for ( int entryColumn = column; entryColumn > 0; entryColumn -= entryColumn & -entryColumn )
+            {
+                sum += sums[at( entry, entryColumn )];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the number of values which are not numeric above and to the left of a position.
+     */
+    private int nonNumericOf( int row, int column )
+    {
+        int count = 0;
+        for ( int entry = row; entry > 0; entry -= entry & -entry )
+        {
+            for ( int entryColumn = column; entryColumn > 0; entryColumn -= entryColumn & -entryColumn )
+            {
+                count += nonNumeric[at( entry, entryColumn )];
+            }
+        }
+        return count;
+    }
+
+    private int at( int row, int column )
+    {
+        return row * ( columns + 1 ) + column;
+    }
+
+    private static long key( int column, int row )
+    {
+        return ( long ) row << 32 | column;
+    }
+}
@@ -0,0 +1,434 @@
+package elements;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Keeps track of the expressions of a RecordStore and the ranges they refer to. The ranges are adjusted when rows or
+ * columns are inserted or removed, and an expression is marked dirty when a cell inside of one of its ranges changes.
+ * <p>
+ * To find the ranges which contain a cell, the ranges are grouped by blocks of rows. Ranges which span too many blocks
+ * are kept in a separate list which is always searched. The lookup is built again after rows or columns moved.
+ */
+final class RangeReferences implements StoreListener
+{
+    private static final int BLOCK_SHIFT = 10;
+
+    private static final int MAX_BLOCKS = 16;
+
+    private final RecordStore store;
+
+    private final Set<Cell.Expression> expressions = new LinkedHashSet<>();
+
+    private Map<Integer, List<Cell.Expression>> blocks;
+
+    private List<Cell.Expression> wide;
+
+    private TreeMap<Long, Cell.Expression> positions;
+
+    RangeReferences( RecordStore store )
+    {
+        this.store = store;
+    }
+
+    RangeIndex getIndex()
+    {
+        return store.getRangeIndex();
+    }
+
+    /**
+     * Checks whether a range lies completely inside of the store.
+     *
+     * @param range the range to check
+     * @return true if all cells of the range exist
+     */
+    boolean isInside( Range range )
+    {
+        return !range.isEmpty() && range.getFromColumn() >= 0 && range.getFromRow() >= 0
+                && range.getToColumn() < store.columnCount() && range.getToRow() < store.rowCount();
+    }
+
+    /**
+     * Resolves a range over whole columns to the rows which exist at the moment.
+     *
+     * @param range the range
+     * @return the range with its last row, or the range itself if it has a fixed last row
+     */
+    Range resolve( Range range )
+    {
+        if ( range.getToRow() != Range.LAST_ROW )
+        {
+            return range;
+        }
+        return new Range( range.getFromColumn(), range.getFromRow(), range.getToColumn(), store.rowCount() - 1 );
+    }
+
+    Cell getCell( int columnIndex, int rowIndex )
+    {
+        return store.getCell( columnIndex, rowIndex );
+    }
+
+    /**
+     * Returns the cells of a range. The cells are resolved on access.
+     *
+     * @param range the range
+     * @return the cells of the range, row by row
+     */
+    List<Cell> cellsOf( Range range )
+    {
+        int fromColumn = range.getFromColumn();
+        int fromRow = range.getFromRow();
+        int columns = range.columnCount();
+        int size = range.isEmpty() ? 0 : range.size();
+        return new AbstractList<>()
+        {
+            @Override
+            public Cell get( int index )
+            {
+                return store.getCell( fromColumn + index % columns, fromRow + index / columns );
+            }
+
+            @Override
+            public int size()
+            {
+                return size;
+            }
+        };
+    }
+
+    boolean isEmpty()
+    {
+        return expressions.isEmpty();
+    }
+
+    void add( Cell.Expression expression )
+    {
+        if ( expressions.add( expression ) && blocks != null )
+        {
+            addToLookup( expression );
+        }
+    }
+
+    void remove( Cell.Expression expression )
+    {
+        if ( expressions.remove( expression ) && blocks != null )
+        {
+            for ( Range range : expression.getRanges() )
+            {
+                if ( isWide( range ) )
+                {
+                    wide.remove( expression );
+                    continue;
+                }
+                for ( int block = blockOf( range.getFromRow() ); block <= blockOf( range.getToRow() ); block++ )
+                {
+                    List<Cell.Expression> list = blocks.get( block );
+                    if ( list != null )
+                    {
+                        list.remove( expression );
+                    }
+                }
+            }
+            positions.remove( key( expression.getColumn(), expression.getRow() ), expression );
+        }
+    }
+
+    /**
+     * Returns the expressions which are placed inside of a range.
+     *
+     * @param range the range
+     * @return the expressions inside of the range
+     */
+    List<Cell.Expression> expressionsIn( Range range )
+    {
+        buildLookup();
+        List<Cell.Expression> result = new ArrayList<>();
+        if ( !range.isEmpty() )
+        {
+            positions.subMap( key( 0, range.getFromRow() ), key( 0, range.getToRow() ) + ( 1L << 32 ) ).values().stream()
+                     .filter( expression -> range.containsColumn( expression.getColumn() ) )
+                     .forEach( result::add );
+        }
+        return result;
+    }
+
+    /**
+     * Marks all expressions dirty which have a range containing a cell.
+     *
+     * @param columnIndex the column index of the cell
+     * @param rowIndex    the row index of the cell
+     */
+    void invalidateAt( int columnIndex, int rowIndex )
+    {
+        dependentsAt( columnIndex, rowIndex ).forEach( Cell.Expression::invalidate );
+    }
+
+    /**
+     * Returns the expressions which are not dirty and have a range containing a cell.
+     *
+     * @param columnIndex the column index of the cell
+     * @param rowIndex    the row index of the cell
+     * @return the expressions
+     */
+    List<Cell.Expression> dependentsAt( int columnIndex, int rowIndex )
+    {
+        buildLookup();
+        List<Cell.Expression> dependents = new ArrayList<>();
+        List<Cell.Expression> block = blocks.get( blockOf( rowIndex ) );
+        if ( block != null )
+        {
+            collect( block, range -> range.contains( columnIndex, rowIndex ), dependents );
+        }
+        collect( wide, range -> range.contains( columnIndex, rowIndex ), dependents );
+        return dependents;
+    }
+
+    @Override
+    public void contentChanged()
+    {
+        removeReplaced( expression -> true );
+        invalidate( expressions, range -> true );
+    }
+
+    @Override
+    public void cellChanged( int columnIndex, int rowIndex )
+    {
+        invalidateAt( columnIndex, rowIndex );
+    }
+
+    @Override
+    public void rowChanged( int rowIndex )
+    {
+        removeReplaced( expression -> expression.getRow() == rowIndex );
+        invalidate( expressions, range -> range.containsRow( rowIndex ) );
+    }
+
+    @Override
+    public void columnChanged( int columnIndex )
+    {
+        removeReplaced( expression -> expression.getColumn() == columnIndex );
+        invalidate( expressions, range -> range.containsColumn( columnIndex ) );
+    }
+
+    @Override
+    public void rowInserted( int rowIndex )
+    {
+        List<Cell.Expression> changed = new ArrayList<>();
+        for ( Cell.Expression expression : expressions )
+        {
+            if ( expression.getRow() >= rowIndex )
+            {
+                expression.moveTo( expression.getColumn(), expression.getRow() + 1 );
+            }
+            if ( adjust( expression, range -> range.rowInserted( rowIndex ) ) )
+            {
+                changed.add( expression );
+            }
+        }
+        clearLookup();
+        changed.forEach( Cell.Expression::invalidate );
+    }
+
+    @Override
+    public void rowRemoved( int rowIndex )
+    {
+        expressions.removeIf( expression -> expression.getRow() == rowIndex );
+        List<Cell.Expression> changed = new ArrayList<>();
+        for ( Cell.Expression expression : expressions )
+        {
+            if ( expression.getRow() > rowIndex )
+            {
+                expression.moveTo( expression.getColumn(), expression.getRow() - 1 );
+            }
+            if ( adjust( expression, range -> range.rowRemoved( rowIndex ) ) )
+            {
+                changed.add( expression );
+            }
+        }
+        clearLookup();
+        changed.forEach( Cell.Expression::invalidate );
+    }
+
+    @Override
+    public void columnInserted( int columnIndex )
+    {
+        List<Cell.Expression> changed = new ArrayList<>();
+        for ( Cell.Expression expression : expressions )
+        {
+            if ( expression.getColumn() >= columnIndex )
+            {
+                expression.moveTo( expression.getColumn() + 1, expression.getRow() );
+            }
+            if ( adjust( expression, range -> range.columnInserted( columnIndex ) ) )
+            {
+                changed.add( expression );
+            }
+        }
+        clearLookup();
+        changed.forEach( Cell.Expression::invalidate );
+    }
+
+    @Override
+    public void columnRemoved( int columnIndex )
+    {
+        expressions.removeIf( expression -> expression.getColumn() == columnIndex );
+        List<Cell.Expression> changed = new ArrayList<>();
+        for ( Cell.Expression expression : expressions )
+        {
+            if ( expression.getColumn() > columnIndex )
+            {
+                expression.moveTo( expression.getColumn() - 1, expression.getRow() );
+            }
+            if ( adjust( expression, range -> range.columnRemoved( columnIndex ) ) )
+            {
+                changed.add( expression );
+            }
+        }
+        clearLookup();
+        changed.forEach( Cell.Expression::invalidate );
+    }
+
+    /**
+     * Moves the expressions along with their rows. The ranges keep their bounds, so all ranges over moved rows are
+     * marked dirty.
+     *
+     * @param order the new order of the rows
+     */
+    @Override
+    public void rowsReordered( int[] order )
+    {
+        int[] positionOf = new int[order.length];
+        int first = order.length;
+        int last = -1;
+        for ( int i = 0; i < order.length; i++ )
+        {
+            positionOf[order[i]] = i;
+            if ( order[i] != i )
+            {
+                first = Math.min( first, i );
+                last = i;
+            }
+        }
+        for ( Cell.Expression expression : expressions )
+        {
+            if ( expression.getRow() < positionOf.length )
+            {
+                expression.moveTo( expression.getColumn(), positionOf[expression.getRow()] );
+            }
+        }
+        clearLookup();
+        int from = first;
+        int to = last;
+        invalidate( expressions, range -> range.getFromRow() <= to && range.getToRow() >= from );
+    }
+
+    /**
+     * Adjusts all ranges of an expression.
+     *
+     * @param expression the expression
+     * @param adjustment the adjustment which returns true if the content of the range changed
+     * @return true if the content of any range changed
+     */
+    private static boolean adjust( Cell.Expression expression, Predicate<Range> adjustment )
+    {
+        boolean changed = false;
+        for ( Range range : expression.getRanges() )
+        {
+            changed |= adjustment.test( range );
+        }
+        return changed;
+    }
+
+    private void invalidate( Collection<Cell.Expression> candidates, Predicate<Range> affected )
+    {
+        List<Cell.Expression> dirty = new ArrayList<>();
+        collect( candidates, affected, dirty );
+        dirty.forEach( Cell.Expression::invalidate );
+    }
+
+    private static void collect( Collection<Cell.Expression> candidates, Predicate<Range> affected,
+                                 List<Cell.Expression> result )
+    {
+        for ( Cell.Expression expression : candidates )
+        {
+            if ( !expression.isDirty() && expression.getRanges().stream().anyMatch( affected ) )
+            {
+                result.add( expression );
+            }
+        }
+    }
+
+    /**
+     * Removes expressions which are no longer held by their cell because the cell has been replaced.
+     *
+     * @param candidates the expressions to check
+     */
+    private void removeReplaced( Predicate<Cell.Expression> candidates )
+    {
+        List<Cell.Expression> replaced = new ArrayList<>();
+        for ( Cell.Expression expression : expressions )
+        {
+            if ( candidates.test( expression ) && !holds( expression ) )
+            {
+                replaced.add( expression );
+            }
+        }
+        replaced.forEach( this::remove );
+    }
+
+    private boolean holds( Cell.Expression expression )
+    {
+        return expression.getRow() < store.rowCount() && expression.getColumn() < store.columnCount()
+                && store.getCell( expression.getColumn(), expression.getRow() ).getRawValue() == expression;
+    }
+
+    private void buildLookup()
+    {
+        if ( blocks == null )
+        {
+            blocks = new HashMap<>();
+            wide = new ArrayList<>();
+            positions = new TreeMap<>();
+            expressions.forEach( this::addToLookup );
+        }
+    }
+
+    private void clearLookup()
+    {
+        blocks = null;
+        wide = null;
+        positions = null;
+    }
+
+    private void addToLookup( Cell.Expression expression )
+    {
+        for ( Range range : expression.getRanges() )
+        {
+            if ( isWide( range ) )
+            {
+                wide.add( expression );
+                continue;
+            }
+            for ( int block = blockOf( range.getFromRow() ); block <= blockOf( range.getToRow() ); block++ )
+            {
+                blocks.computeIfAbsent( block, key -> new ArrayList<>() ).add( expression );
+            }
+        }
+        positions.put( key( expression.getColumn(), expression.getRow() ), expression );
+    }
+
+    private static boolean isWide( Range range )
+    {
+        return range.isEmpty() || blockOf( range.getToRow() ) - blockOf( range.getFromRow() ) >= MAX_BLOCKS;
+    }
+
+    private static int blockOf( int row )
+    {
+        return row >> BLOCK_SHIFT;
+    }
+
+    private static long key( int column, int row )
+    {
+        return ( long ) row << 32 | column;
+    }
+}
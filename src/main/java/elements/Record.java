@@ -14,11 +14,23 @@ public class Record implements Iterable<Cell>, IApply<Record>
 {
     private final List<Cell> cells;
 
+    private final RecordStore store;
+
     Record( List<?> elements )
     {
+        this( elements, null );
+    }
+
+    Record( List<?> elements, RecordStore store )
+    {
+        this.store = store;
         cells = new ArrayList<>( elements.size() );
         elements.stream().map( element -> element instanceof Cell ? ( Cell ) element : new Cell( element ) )
                 .forEach( cells::add );
+        if ( store != null )
+        {
+            cells.forEach( store::cellAdded );
+        }
     }
 
     Cell get( int index )
@@ -28,17 +40,25 @@ public class Record implements Iterable<Cell>, IApply<Record>
 
     void add( Cell cell )
     {
-        cells.add( cell );
+        add( cells.size(), cell );
     }
 
     void add( int index, Cell cell )
     {
         cells.add( index, cell );
+        if ( store != null )
+        {
+            store.cellAdded( cell );
+        }
     }
 
     void set( int index, Cell cell )
     {
         cells.set( index, cell );
+        if ( store != null )
+        {
+            store.cellAdded( cell );
+        }
     }
 
     void remove( int index )
@@ -91,6 +111,7 @@ public class Record implements Iterable<Cell>, IApply<Record>
     public Record apply( Function<Cell, Object> function )
     {
         cells.stream().forEach( cell -> cell.apply( function ) );
+        contentChanged();
         return this;
     }
 
@@ -104,6 +125,7 @@ public class Record implements Iterable<Cell>, IApply<Record>
     public Record applyIf( Predicate<Cell> predicate, Function<Cell, Object> function )
     {
         cells.stream().filter( predicate ).forEach( cell -> cell.apply( function ) );
+        contentChanged();
         return this;
     }
 
@@ -142,6 +164,14 @@ public class Record implements Iterable<Cell>, IApply<Record>
         return sj.toString();
     }
 
+    private void contentChanged()
+    {
+        if ( store != null )
+        {
+            store.contentChanged();
+        }
+    }
+
     @Override
     public Iterator<Cell> iterator()
     {
@@ -1,41 +1,72 @@
 package elements;
 
-import type.RecordType;
-import util.CellFormatter;
+import io.CSVReader;
+import type.StorageMode;
 import util.StringConversion;
 
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
 import java.util.stream.Collectors;
-
-class RecordStore implements Iterable<Record>
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * The storage of a DataSheet. Implementations decide how the cells are laid out in memory and hand out Records and
+ * Cells to access them.
+ */
+abstract class RecordStore implements Iterable<Record>
 {
-    private final ArrayList<Record> records;
+    static final int PARALLEL_SORT_THRESHOLD = 1 << 16;
+
+    private static final int GROUP_CHUNK_SIZE = 1 << 12;
 
     private ArrayList<String> columnNames;
 
-    RecordStore( List<Record> records )
+    private final List<StoreListener> listeners = new ArrayList<>();
+
+    private long modifications;
+
+    private final RangeReferences references = new RangeReferences( this );
+
+    private RangeIndex rangeIndex;
+
+    private final List<HashIndex> hashIndexes = new ArrayList<>();
+
+    private final List<ZoneMap> zoneMaps = new ArrayList<>();
+
+    private int parallelSortThreshold = PARALLEL_SORT_THRESHOLD;
+
+    RecordStore()
     {
-        this.records = new ArrayList<>( records );
+        addListener( references );
     }
 
-    RecordStore( int initialCapacity )
+    static RecordStore create( StorageMode mode, int initialCapacity )
     {
-        records = new ArrayList<>( initialCapacity );
-        fillRecords( initialCapacity );
+        switch ( mode )
+        {
+            case COLUMN:
+                return new ColumnStore( initialCapacity, false );
+            case OFF_HEAP:
+                return new ColumnStore( initialCapacity, true );
+            case ROW:
+            default:
+                return new RowStore( initialCapacity );
+        }
     }
 
-    RecordStore( List<List<String>> elements, boolean withColumnNames )
+    static RecordStore create( StorageMode mode, CSVReader reader )
     {
-        if ( elements.isEmpty() )
+        if ( mode == StorageMode.ROW )
         {
-            records = new ArrayList<>( 10 );
-            fillRecords( 10 );
+            return new RowStore( reader.readCSV(), reader.isWithColumnNames() );
         }
-        else
+        try ( Stream<List<String>> lines = reader.stream() )
         {
-            records = new ArrayList<>( elements.size() );
-            fillRecords( elements, withColumnNames );
+            return new ColumnStore( lines.iterator(), reader.isWithColumnNames(), mode == StorageMode.OFF_HEAP );
         }
     }
 
@@ -46,10 +77,10 @@ class RecordStore implements Iterable<Record>
         {
             rows.add( getColumnNames() );
         }
-        records.stream().filter( Predicate.not( Record::isEmpty ) ).forEach( row ->
+        rows().stream().filter( Predicate.not( Record::isEmpty ) ).forEach( row ->
                 rows.add( row.cells().stream().map( cell -> StringConversion
-                        .quoteCommaValue( withRawValues ? cell.getRawValue().toString() : CellFormatter
-                                .format( cell.getValue(), cell.getCellType() ) ) ).collect( Collectors.toList() ) ) );
+                        .quoteCommaValue( withRawValues ? cell.getRawValue().toString() : cell.getValue() ) )
+                                                                           .collect( Collectors.toList() ) ) );
         return rows;
     }
 
@@ -63,6 +94,11 @@ class RecordStore implements Iterable<Record>
         return columnNames != null && !columnNames.isEmpty();
     }
 
+    void setColumnNames( List<String> names )
+    {
+        columnNames = new ArrayList<>( names );
+    }
+
     void addColumnName( String name )
     {
         columnNames.add( name );
@@ -78,22 +114,13 @@ class RecordStore implements Iterable<Record>
         columnNames.remove( index );
     }
 
-    Record getRecord( int index )
-    {
-        return records.get( index );
-    }
-
-    void addRow( int rowIndex, List<?> elements )
-    {
-        records.add( rowIndex, createRecord( elements, columnCount(), RecordType.ROW ) );
-    }
-
-    void setRow( int rowIndex, List<?> elements )
-    {
-        records.set( rowIndex, createRecord( elements, columnCount(), RecordType.ROW ) );
-    }
-
-    void addColumn( int columnIndex, List<?> elements )
+    /**
+     * Takes the column name from the head of the elements of a new column if the store has column names.
+     *
+     * @param elements the elements of the new column
+     * @return the elements without the column name
+     */
+    List<?> takeColumnName( List<?> elements )
     {
         if ( hasColumnNames() && !elements.isEmpty() )
         {
@@ -104,169 +131,356 @@ class RecordStore implements Iterable<Record>
             addColumnName( elements.get( 0 ).toString() );
             elements.remove( 0 );
         }
-        Record newColumn = createRecord( elements, rowCount(), RecordType.COLUMN );
-        Iterator<Record> rowIterator = records.iterator();
-        Iterator<Cell> cellIterator = newColumn.iterator();
-        while ( rowIterator.hasNext() )
-        {
-            Record row = rowIterator.next();
-            row.add( columnIndex, cellIterator.next() );
-        }
+        return elements;
     }
 
-    void setColumn( int columnIndex, List<?> elements )
+    /**
+     * Returns the number of changes of the store, which tells views whether their rows have to be selected again.
+     *
+     * @return the number of changes
+     */
+    long modifications()
     {
-        Record newColumn = createRecord( elements, rowCount(), RecordType.COLUMN );
-        Iterator<Record> rowIterator = records.iterator();
-        Iterator<Cell> cellIterator = newColumn.iterator();
-        while ( rowIterator.hasNext() )
-        {
-            Record row = rowIterator.next();
-            row.set( columnIndex, cellIterator.next() );
-        }
+        return modifications;
     }
 
-    void removeRow( int index )
+    void addListener( StoreListener listener )
     {
-        records.remove( index );
+        listeners.add( listener );
     }
 
-    void removeColumn( int index )
+    void removeListener( StoreListener listener )
     {
-        records.forEach( row -> row.remove( index ) );
-        if ( hasColumnNames() )
+        listeners.remove( listener );
+    }
+
+    void notifyListeners( Consumer<StoreListener> notification )
+    {
+        modifications++;
+        if ( !listeners.isEmpty() )
         {
-            removeColumnName( index );
+            listeners.forEach( notification );
         }
     }
 
-    void sort( Comparator<? super Record> comparator )
+    RangeReferences references()
     {
-        records.sort( comparator );
+        return references;
     }
 
-    int rowCount()
+    RangeIndex getRangeIndex()
     {
-        return records.size();
+        return rangeIndex;
     }
 
-    int columnCount()
+    void createRangeIndex()
     {
-        return records.get( 0 ).size();
+        if ( rangeIndex == null )
+        {
+            rangeIndex = new RangeIndex( this );
+            addListener( rangeIndex );
+        }
     }
 
-    int count()
+    void dropRangeIndex()
     {
-        return records.stream().mapToInt( Record::count ).sum();
+        if ( rangeIndex != null )
+        {
+            removeListener( rangeIndex );
+            rangeIndex = null;
+        }
     }
 
-    ArrayList<Record> rows()
+    /**
+     * Returns the hash index of a column.
+     *
+     * @param column the column index
+     * @return the index or null if the column has no index
+     */
+    HashIndex getHashIndex( int column )
     {
-        return records;
+        return columnListener( hashIndexes, HashIndex::getColumn, column );
     }
 
-    Record newRecord( List<Cell> elements )
+    void createHashIndex( int column )
     {
-        return new Record( elements );
+        if ( getHashIndex( column ) == null )
+        {
+            HashIndex index = new HashIndex( this, column );
+            hashIndexes.add( index );
+            addListener( index );
+        }
     }
 
-    private void fillRecords( List<List<String>> elements, boolean withColumnNames )
+    void dropHashIndex( int column )
     {
-        if ( withColumnNames )
+        HashIndex index = getHashIndex( column );
+        if ( index != null )
         {
-            elements = new ArrayList<>( elements );
-            this.columnNames = new ArrayList<>( elements.get( 0 ) );
-            elements.remove( 0 );
+            removeListener( index );
+            hashIndexes.remove( index );
         }
-        elements.stream().map( Record::new ).forEach( records::add );
     }
 
-    private void fillRecords( int capacity )
+    /**
+     * Returns the zone map of a column.
+     *
+     * @param column the column index
+     * @return the zone map or null if the column has none
+     */
+    ZoneMap getZoneMap( int column )
     {
-        for ( int i = 0; i < capacity; i++ )
+        return columnListener( zoneMaps, ZoneMap::getColumn, column );
+    }
+
+    void createZoneMap( int column )
+    {
+        if ( getZoneMap( column ) == null )
         {
-            List<Cell> cells = new ArrayList<>();
-            for ( int j = 0; j < capacity; j++ )
-            {
-                cells.add( new Cell() );
-            }
-            records.add( new Record( cells ) );
+            ZoneMap zoneMap = new ZoneMap( this, column );
+            zoneMaps.add( zoneMap );
+            addListener( zoneMap );
         }
     }
 
-    private Record createRecord( List<?> elements, int currentSize, RecordType type )
+    void dropZoneMap( int column )
     {
-        Record newRecord;
-        if ( elements.size() <= currentSize )
+        ZoneMap zoneMap = getZoneMap( column );
+        if ( zoneMap != null )
         {
-            List<Cell> cells = new ArrayList<>( currentSize );
-            elements.stream().map( Cell::new ).forEach( cells::add );
-            int remaining = currentSize - cells.size();
-            for ( int i = 1; i <= remaining; i++ )
-            {
-                cells.add( new Cell() );
-            }
-            newRecord = new Record( cells );
+            removeListener( zoneMap );
+            zoneMaps.remove( zoneMap );
         }
-        else
+    }
+
+    /**
+     * Finds the listener of a column.
+     */
+    private static <T> T columnListener( List<T> listeners, ToIntFunction<T> columnOf, int column )
+    {
+        return listeners.stream().filter( listener -> columnOf.applyAsInt( listener ) == column ).findFirst()
+                        .orElse( null );
+    }
+
+    /**
+     * Drops the listeners whose column has been removed.
+     */
+    private <T extends StoreListener> void dropRemovedColumns( List<T> listeners, ToIntFunction<T> columnOf )
+    {
+        for ( Iterator<T> iterator = listeners.iterator(); iterator.hasNext(); )
         {
-            newRecord = new Record( elements.stream().map( Cell::new ).collect( Collectors.toList() ) );
-            resizeStore( newRecord.size(), type );
+            T listener = iterator.next();
+            if ( columnOf.applyAsInt( listener ) < 0 )
+            {
+                removeListener( listener );
+                iterator.remove();
+            }
         }
-        return newRecord;
     }
 
-    private void resizeStore( int size, RecordType type )
+    void cellChanged( int columnIndex, int rowIndex )
+    {
+        notifyListeners( listener -> listener.cellChanged( columnIndex, rowIndex ) );
+    }
+
+    void rowChanged( int rowIndex )
+    {
+        notifyListeners( listener -> listener.rowChanged( rowIndex ) );
+    }
+
+    void columnChanged( int columnIndex )
+    {
+        notifyListeners( listener -> listener.columnChanged( columnIndex ) );
+    }
+
+    void contentChanged()
+    {
+        notifyListeners( StoreListener::contentChanged );
+    }
+
+    /**
+     * Tells the listeners that a column has been removed and drops the indexes and zone maps of the column, which
+     * could otherwise no longer follow the rows added afterwards.
+     */
+    void columnRemoved( int columnIndex )
+    {
+        notifyListeners( listener -> listener.columnRemoved( columnIndex ) );
+        dropRemovedColumns( hashIndexes, HashIndex::getColumn );
+        dropRemovedColumns( zoneMaps, ZoneMap::getColumn );
+    }
+
+    /**
+     * Limits the number of formatted values which are kept per column. Stores which keep a Cell object per value only
+     * tell whether the Cells keep their formatted values, so they keep none with a limit of 0 and all otherwise.
+     *
+     * @param limit the maximum number of formatted values, 0 to keep none or a negative number for no limit
+     */
+    void setFormatCacheLimit( int limit )
+    {
+
+    }
+
+    /**
+     * Called for every Cell which a Record of this store takes, so the Cell follows the settings of the store.
+     *
+     * @param cell the Cell
+     */
+    void cellAdded( Cell cell )
+    {
+
+    }
+
+    void setParallelSortThreshold( int rows )
     {
-        switch ( type )
+        parallelSortThreshold = rows;
+    }
+
+    /**
+     * Sorts the rows by a number of columns. The sort keys are extracted once, the order is determined on the keys and
+     * applied to the store in one step. Above the parallel sort threshold the rows are sorted in parallel. The keys
+     * are only extracted in parallel if there are no expressions, which could otherwise be evaluated by two threads.
+     *
+     * @param columns    the column indices to sort by
+     * @param descending for each column whether it is sorted in descending order
+     */
+    void sort( int[] columns, boolean[] descending )
+    {
+        int[] order = sortedOrder( columns, descending );
+        reorder( order );
+        notifyListeners( listener -> listener.rowsReordered( order ) );
+    }
+
+    /**
+     * Determines the order in which the rows would be sorted by a number of columns, without reordering the store.
+     *
+     * @param columns    the column indices to sort by
+     * @param descending for each column whether it is sorted in descending order
+     * @return the order, the row at position {@code i} is the row at {@code order[i]} in the store
+     */
+    int[] sortedOrder( int[] columns, boolean[] descending )
+    {
+        boolean parallel = rowCount() >= parallelSortThreshold;
+        SortKeys keys = new SortKeys( this, columns, descending, parallel && references.isEmpty() );
+        return keys.sort( parallel );
+    }
+
+    /**
+     * Selects the first or the last rows of the order in which the rows would be sorted by a number of columns. The
+     * store itself is not reordered.
+     *
+     * @param columns    the column indices to sort by
+     * @param descending for each column whether it is sorted in descending order
+     * @param count      the maximum number of rows to select
+     * @param last       true to select the last rows instead of the first rows
+     * @return the selected rows in sorted order
+     */
+    List<Record> select( int[] columns, boolean[] descending, int count, boolean last )
+    {
+        SortKeys keys = new SortKeys( this, columns, descending, rowCount() >= parallelSortThreshold && references
+                .isEmpty() );
+        int[] selected = keys.select( count, last );
+        List<Record> records = new ArrayList<>( selected.length );
+        for ( int row : selected )
         {
-            case ROW:
-                resizeRows( size );
-                break;
-            case COLUMN:
-                resizeColumns( size );
+            records.add( detachRecord( row ) );
         }
+        return records;
     }
 
-    private void resizeRows( int rowSize )
+    /**
+     * Groups the rows by a key. The groups are ordered by the first row of each group and keep the order of their
+     * rows. In parallel, the rows are split into chunks which are grouped on their own and merged in their order, so
+     * the result is the same. Rows are only grouped in parallel if there are no expressions, which could otherwise be
+     * evaluated by two threads.
+     *
+     * @param function the function which determines the key of a row
+     * @param parallel true if the rows should be grouped in parallel
+     * @param <K>      the type of the key
+     * @return the rows by key
+     */
+    <K> Map<K, List<Record>> group( Function<Record, K> function, boolean parallel )
     {
-        int initialColumnSize = columnCount();
-        if ( rowSize > initialColumnSize )
+        List<Record> rows = rows();
+        if ( !parallel || !references.isEmpty() || rows.size() <= GROUP_CHUNK_SIZE )
         {
-            if ( hasColumnNames() )
-            {
-                for ( int i = initialColumnSize; i < rowSize; i++ )
-                {
-                    addColumnName( "COLUMN" );
-                }
-            }
-            records.forEach( row ->
-            {
-                for ( int i = initialColumnSize; i < rowSize; i++ )
-                {
-                    row.add( new Cell() );
-                }
-            } );
+            return group( rows, function );
         }
+        int chunkSize = Math.max( GROUP_CHUNK_SIZE, rows.size() / ( 4 * Runtime.getRuntime().availableProcessors() ) );
+        int chunks = ( rows.size() + chunkSize - 1 ) / chunkSize;
+        List<Map<K, List<Record>>> partials = IntStream.range( 0, chunks ).parallel()
+                .mapToObj( chunk -> group( rows.subList( chunk * chunkSize, Math.min( rows.size(), ( chunk + 1 )
+                        * chunkSize ) ), function ) ).collect( Collectors.toList() );
+        Map<K, List<Record>> groups = new LinkedHashMap<>();
+        partials.forEach( partial -> partial.forEach( ( key, records ) -> groups
+                .computeIfAbsent( key, k -> new ArrayList<>() ).addAll( records ) ) );
+        return groups;
     }
 
-    private void resizeColumns( int columnSize )
+    private static <K> Map<K, List<Record>> group( List<Record> rows, Function<Record, K> function )
     {
-        int remaining = columnSize - rowCount();
-        for ( int i = 1; i <= remaining; i++ )
+        Map<K, List<Record>> groups = new LinkedHashMap<>();
+        rows.forEach( row -> groups.computeIfAbsent( function.apply( row ), k -> new ArrayList<>() ).add( row ) );
+        return groups;
+    }
+
+    int count()
+    {
+        return rows().stream().mapToInt( Record::count ).sum();
+    }
+
+    List<Cell.Expression> expressions()
+    {
+        List<Cell.Expression> expressions = new ArrayList<>();
+        forEach( row -> row.forEach( cell ->
         {
-            List<Cell> cells = new ArrayList<>();
-            for ( int j = 0; j < columnCount(); j++ )
+            if ( cell.getRawValue() instanceof Cell.Expression )
             {
-                cells.add( new Cell() );
+                expressions.add( ( Cell.Expression ) cell.getRawValue() );
             }
-            records.add( new Record( cells ) );
-        }
+        } ) );
+        return expressions;
     }
 
-    @Override
-    public Iterator<Record> iterator()
+    Record newRecord( List<Cell> elements )
     {
-        return records.iterator();
+        return new Record( elements, this );
     }
+
+    /**
+     * Returns a copy of a row for another DataSheet, which neither changes the store nor is changed by it.
+     *
+     * @param index the index of the row
+     * @return the copy of the row
+     */
+    abstract Record detachRecord( int index );
+
+    abstract Record getRecord( int index );
+
+    abstract Cell getCell( int columnIndex, int rowIndex );
+
+    abstract void addRow( int rowIndex, List<?> elements );
+
+    abstract void setRow( int rowIndex, List<?> elements );
+
+    abstract void addColumn( int columnIndex, List<?> elements );
+
+    abstract void setColumn( int columnIndex, List<?> elements );
+
+    abstract void removeRow( int index );
+
+    abstract void removeColumn( int index );
+
+    /**
+     * Reorders the rows.
+     *
+     * @param order the new order of the rows. The row at position {@code i} afterwards is the row which was at position
+     *              {@code order[i]} before.
+     */
+    abstract void reorder( int[] order );
+
+    abstract int rowCount();
+
+    abstract int columnCount();
+
+    abstract List<Record> rows();
 }
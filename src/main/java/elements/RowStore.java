@@ -0,0 +1,274 @@
+package elements;
+
+import type.RecordType;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * A RecordStore which keeps a Record object for every row. Each value is held by its own Cell object.
+ */
+class RowStore extends RecordStore
+{
+    private final ArrayList<Record> records;
+
+    private boolean keepsFormatted = true;
+
+    RowStore( List<Record> records )
+    {
+        this.records = new ArrayList<>( records );
+    }
+
+    RowStore( int initialCapacity )
+    {
+        records = new ArrayList<>( initialCapacity );
+        fillRecords( initialCapacity );
+    }
+
+    RowStore( List<List<String>> elements, boolean withColumnNames )
+    {
+        if ( elements.isEmpty() )
+        {
+            records = new ArrayList<>( 10 );
+            fillRecords( 10 );
+        }
+        else
+        {
+            records = new ArrayList<>( elements.size() );
+            fillRecords( elements, withColumnNames );
+        }
+    }
+
+    @Override
+    void setFormatCacheLimit( int limit )
+    {
+        keepsFormatted = limit != 0;
+        records.forEach( row -> row.forEach( cell -> cell.keepFormatted( keepsFormatted ) ) );
+    }
+
+    @Override
+    void cellAdded( Cell cell )
+    {
+        if ( !keepsFormatted )
+        {
+            cell.keepFormatted( false );
+        }
+    }
+
+    @Override
+    Record getRecord( int index )
+    {
+        return records.get( index );
+    }
+
+    @Override
+    Record detachRecord( int index )
+    {
+        return new Record( records.get( index ).cells().stream().map( Cell::copy ).collect( Collectors.toList() ),
+                           null );
+    }
+
+    @Override
+    Cell getCell( int columnIndex, int rowIndex )
+    {
+        return records.get( rowIndex ).get( columnIndex );
+    }
+
+    @Override
+    void addRow( int rowIndex, List<?> elements )
+    {
+        records.add( rowIndex, createRecord( elements, columnCount(), RecordType.ROW ) );
+        notifyListeners( listener -> listener.rowInserted( rowIndex ) );
+    }
+
+    @Override
+    void setRow( int rowIndex, List<?> elements )
+    {
+        records.set( rowIndex, createRecord( elements, columnCount(), RecordType.ROW ) );
+        notifyListeners( listener -> listener.rowChanged( rowIndex ) );
+    }
+
+    @Override
+    void addColumn( int columnIndex, List<?> elements )
+    {
+        elements = takeColumnName( elements );
+        Record newColumn = createRecord( elements, rowCount(), RecordType.COLUMN );
+        Iterator<Record> rowIterator = records.iterator();
+        Iterator<Cell> cellIterator = newColumn.iterator();
+        while ( rowIterator.hasNext() )
+        {
+            Record row = rowIterator.next();
+            row.add( columnIndex, cellIterator.next() );
+        }
+        notifyListeners( listener -> listener.columnInserted( columnIndex ) );
+    }
+
+    @Override
+    void setColumn( int columnIndex, List<?> elements )
+    {
+        Record newColumn = createRecord( elements, rowCount(), RecordType.COLUMN );
+        Iterator<Record> rowIterator = records.iterator();
+        Iterator<Cell> cellIterator = newColumn.iterator();
+        while ( rowIterator.hasNext() )
+        {
+            Record row = rowIterator.next();
+            row.set( columnIndex, cellIterator.next() );
+        }
+        notifyListeners( listener -> listener.columnChanged( columnIndex ) );
+    }
+
+    @Override
+    void removeRow( int index )
+    {
+        records.remove( index );
+        notifyListeners( listener -> listener.rowRemoved( index ) );
+    }
+
+    @Override
+    void removeColumn( int index )
+    {
+        records.forEach( row -> row.remove( index ) );
+        if ( hasColumnNames() )
+        {
+            removeColumnName( index );
+        }
+        columnRemoved( index );
+    }
+
+    @Override
+    void reorder( int[] order )
+    {
+        List<Record> previous = new ArrayList<>( records );
+        for ( int i = 0; i < order.length; i++ )
+        {
+            records.set( i, previous.get( order[i] ) );
+        }
+    }
+
+    @Override
+    int rowCount()
+    {
+        return records.size();
+    }
+
+    @Override
+    int columnCount()
+    {
+        return records.isEmpty() ? 0 : records.get( 0 ).size();
+    }
+
+    @Override
+    List<Record> rows()
+    {
+        return records;
+    }
+
+    private void fillRecords( List<List<String>> elements, boolean withColumnNames )
+    {
+        if ( withColumnNames )
+        {
+            elements = new ArrayList<>( elements );
+            setColumnNames( elements.get( 0 ) );
+            elements.remove( 0 );
+        }
+        elements.stream().map( line -> new Record( line, this ) ).forEach( records::add );
+    }
+
+    private void fillRecords( int capacity )
+    {
+        for ( int i = 0; i < capacity; i++ )
+        {
+            List<Cell> cells = new ArrayList<>();
+            for ( int j = 0; j < capacity; j++ )
+            {
+                cells.add( new Cell() );
+            }
+            records.add( new Record( cells, this ) );
+            int rowIndex = records.size() - 1;
+            notifyListeners( listener -> listener.rowInserted( rowIndex ) );
+        }
+    }
+
+    private Record createRecord( List<?> elements, int currentSize, RecordType type )
+    {
+        Record newRecord;
+        if ( elements.size() <= currentSize )
+        {
+            List<Cell> cells = new ArrayList<>( currentSize );
+            elements.stream().map( Cell::new ).forEach( cells::add );
+            int remaining = currentSize - cells.size();
+            for ( int i = 1; i <= remaining; i++ )
+            {
+                cells.add( new Cell() );
+            }
+            newRecord = new Record( cells, this );
+        }
+        else
+        {
+            newRecord = new Record( elements.stream().map( Cell::new ).collect( Collectors.toList() ), this );
+            resizeStore( newRecord.size(), type );
+        }
+        return newRecord;
+    }
+
+    private void resizeStore( int size, RecordType type )
+    {
+        switch ( type )
+        {
+            case ROW:
+                resizeRows( size );
+                break;
+            case COLUMN:
+                resizeColumns( size );
+        }
+    }
+
+    private void resizeRows( int rowSize )
+    {
+        int initialColumnSize = columnCount();
+        if ( rowSize > initialColumnSize )
+        {
+            if ( hasColumnNames() )
+            {
+                for ( int i = initialColumnSize; i < rowSize; i++ )
+                {
+                    addColumnName( "COLUMN" );
+                }
+            }
+            records.forEach( row ->
+            {
+                for ( int i = initialColumnSize; i < rowSize; i++ )
+                {
+                    row.add( new Cell() );
+                }
+            } );
+            for ( int i = initialColumnSize; i < rowSize; i++ )
+            {
+                int columnIndex = i;
+                notifyListeners( listener -> listener.columnInserted( columnIndex ) );
+            }
+        }
+    }
+
+    private void resizeColumns( int columnSize )
+    {
+        int remaining = columnSize - rowCount();
+        for ( int i = 1; i <= remaining; i++ )
+        {
+            List<Cell> cells = new ArrayList<>();
+            for ( int j = 0; j < columnCount(); j++ )
+            {
+                cells.add( new Cell() );
+            }
+            records.add( new Record( cells, this ) );
+            int rowIndex = records.size() - 1;
+            notifyListeners( listener -> listener.rowInserted( rowIndex ) );
+        }
+    }
+
+    @Override
+    public Iterator<Record> iterator()
+    {
+        return records.iterator();
+    }
+}
@@ -0,0 +1,260 @@
+package elements;
+
+import type.Operation;
+import util.RowBitmap;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * A view on selected rows of a DataSheet. A view is either a filter, which keeps the indices of the rows matching a
+ * predicate, or a slice, which is a range of the rows of the DataSheet or of another view and keeps no indices at all.
+ * Views are built on views, so a chain of filters reads the cells of the DataSheet once per filter and copies no
+ * cells, until the rows are materialized into a new DataSheet by {@link #toDataSheet()}.
+ * <p>
+ * The rows are selected on the first read. If the DataSheet has changed since then, they are selected again on the
+ * next read, so a view always shows the current content.
+ */
+public final class SelectionView
+{
+    private final RecordStore store;
+
+    private final SelectionView parent;
+
+    private final Predicate<Record> predicate;
+
+    private final int fromRow;
+
+    private final int toRow;
+
+    private int[] rows;
+
+    private int first;
+
+    private int size;
+
+    private long modifications = -1;
+
+    private SelectionView( RecordStore store, SelectionView parent, Predicate<Record> predicate, int fromRow, int toRow )
+    {
+        this.store = store;
+        this.parent = parent;
+        this.predicate = predicate;
+        this.fromRow = fromRow;
+        this.toRow = toRow;
+    }
+
+    /**
+     * Creates a view on the rows of a store which match a predicate.
+     */
+    static SelectionView filter( RecordStore store, Predicate<Record> predicate )
+    {
+        return new SelectionView( store, null, predicate, 0, 0 );
+    }
+
+    /**
+     * Creates a view on a range of the rows of a store.
+     */
+    static SelectionView slice( RecordStore store, int fromRow, int toRow )
+    {
+        return new SelectionView( store, null, null, fromRow, toRow );
+    }
+
+    /**
+     * Creates a view on the rows of this view which match a predicate.
+     *
+     * @param predicate the predicate
+     * @return the new view
+     */
+    public SelectionView where( Predicate<Record> predicate )
+    {
+        return new SelectionView( store, this, predicate, 0, 0 );
+    }
+
+    /**
+     * Creates a view on a range of the rows of this view. Rows past the end of this view are left out.
+     *
+     * @param fromRow the index of the first row in this view
+     * @param toRow   the index of the last row in this view, inclusive
+     * @return the new view or null if the range is invalid
+     */
+    public SelectionView slice( int fromRow, int toRow )
+    {
+        return fromRow >= 0 && fromRow <= toRow ? new SelectionView( store, this, null, fromRow, toRow ) : null;
+    }
+
+    /**
+     * Returns a row of the view.
+     *
+     * @param index the index of the row in the view
+     * @return the row as Record
+     */
+    public synchronized Record getRow( int index )
+    {
+        return store.getRecord( getSourceIndex( index ) );
+    }
+
+    /**
+     * Returns the index of a row of the view in the DataSheet.
+     *
+     * @param index the index of the row in the view
+     * @return the index of the row in the DataSheet
+     */
+    public synchronized int getSourceIndex( int index )
+    {
+        update();
+        if ( index < 0 || index >= size )
+        {
+            throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + size );
+        }
+        if ( rows != null )
+        {
+            return rows[index];
+        }
+        return parent != null ? parent.getSourceIndex( first + index ) : first + index;
+    }
+
+    /**
+     * Returns the formatted value of a cell of the view.
+     *
+     * @param columnIndex the index of the column
+     * @param rowIndex    the index of the row in the view
+     * @return the value
+     */
+    public synchronized String getValue( int columnIndex, int rowIndex )
+    {
+        return store.getCell( columnIndex, getSourceIndex( rowIndex ) ).toString();
+    }
+
+    /**
+     * Returns the rows of the view.
+     *
+     * @return A list of Records representing the rows, which follows the changes of the view.
+     */
+    public List<Record> rows()
+    {
+        return new AbstractList<>()
+        {
+            @Override
+            public Record get( int index )
+            {
+                return getRow( index );
+            }
+
+            @Override
+            public int size()
+            {
+                return rowCount();
+            }
+        };
+    }
+
+    /**
+     * Returns the indices of the rows of the view in the DataSheet.
+     *
+     * @return a new RowBitmap with the indices
+     */
+    public synchronized RowBitmap selection()
+    {
+        RowBitmap selection = new RowBitmap();
+        for ( int i = 0; i < rowCount(); i++ )
+        {
+            selection.add( getSourceIndex( i ) );
+        }
+        return selection;
+    }
+
+    /**
+     * Calculates an operation over the values of a column in the rows of the view, skipping values which are not
+     * numeric.
+     *
+     * @param operation the operation
+     * @param column    the index of the column
+     * @return the result or NaN if the column is not found or there are not enough numeric values
+     */
+    public synchronized double aggregate( Operation operation, int column )
+    {
+        if ( column < 0 || column >= store.columnCount() )
+        {
+            return Double.NaN;
+        }
+        Statistics statistics = new Statistics( EnumSet.of( operation ), true );
+        for ( int i = 0; i < rowCount(); i++ )
+        {
+            statistics.accept( store.getCell( column, getSourceIndex( i ) ) );
+        }
+        return statistics.get( operation );
+    }
+
+    /**
+     * Returns the number of rows in the view.
+     *
+     * @return the number of rows
+     */
+    public synchronized int rowCount()
+    {
+        update();
+        return size;
+    }
+
+    /**
+     * Copies the rows of the view into a new DataSheet.
+     *
+     * @return the new DataSheet
+     */
+    public synchronized DataSheet toDataSheet()
+    {
+        List<Record> records = new ArrayList<>( rowCount() );
+        for ( int i = 0; i < size; i++ )
+        {
+            records.add( store.detachRecord( getSourceIndex( i ) ) );
+        }
+        return new DataSheet( records, store.hasColumnNames() ? store.getColumnNames() : null );
+    }
+
+    @Override
+    public String toString()
+    {
+        return rows().toString();
+    }
+
+    /**
+     * Selects the rows again if the DataSheet has changed since they were selected.
+     */
+    private void update()
+    {
+        if ( modifications == store.modifications() )
+        {
+            return;
+        }
+        int parentSize = parent != null ? parent.rowCount() : store.rowCount();
+        if ( predicate == null )
+        {
+            rows = null;
+            first = Math.min( fromRow, parentSize );
+            size = Math.min( toRow, parentSize - 1 ) + 1 - first;
+        }
+        else
+        {
+            rows = new int[16];
+            size = 0;
+            for ( int i = 0; i < parentSize; i++ )
+            {
+                int row = parent != null ? parent.getSourceIndex( i ) : i;
+                if ( predicate.test( store.getRecord( row ) ) )
+                {
+                    if ( size == rows.length )
+                    {
+                        rows = Arrays.copyOf( rows, size * 2 );
+                    }
+                    rows[size++] = row;
+                }
+            }
+        }
+        modifications = store.modifications();
+    }
+}
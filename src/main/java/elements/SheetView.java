@@ -0,0 +1,305 @@
+package elements;
+
+import util.RowBitmap;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A sorted view on the rows of a DataSheet. The view keeps the order of the rows as a permutation of the row indices
+ * and reads the cells from the DataSheet, so any number of views with different orders can exist without copying
+ * cells or reordering the DataSheet.
+ * <p>
+ * The permutation follows the changes of the DataSheet. Changed rows and rows added to or removed from the end are only
+ * noted, the next read moves them to their position by a binary search in one pass over the permutation. Changes which
+ * move other rows, like inserting or removing a row in between, sorting the DataSheet or changing a whole column which
+ * is sorted by, cause the permutation to be built again on the next read. Inserted and removed columns are followed.
+ * The results of expressions are sorted by the values they had when the permutation was built or the row was moved.
+ */
+public final class SheetView implements StoreListener, AutoCloseable
+{
+    private final RecordStore store;
+
+    private int[] columns;
+
+    private boolean[] descending;
+
+    private int[] order;
+
+    private int size;
+
+    private RowBitmap moved = new RowBitmap();
+
+    SheetView( RecordStore store, int[] columns, boolean[] descending )
+    {
+        this.store = store;
+        this.columns = columns.clone();
+        this.descending = descending.clone();
+        store.addListener( this );
+    }
+
+    /**
+     * Returns a row of the view.
+     *
+     * @param index the index of the row in the view
+     * @return the row as Record
+     */
+    public synchronized Record getRow( int index )
+    {
+        return store.getRecord( getSourceIndex( index ) );
+    }
+
+    /**
+     * Returns the index of a row of the view in the DataSheet.
+     *
+     * @param index the index of the row in the view
+     * @return the index of the row in the DataSheet
+     */
+    public synchronized int getSourceIndex( int index )
+    {
+        update();
+        if ( index < 0 || index >= size )
+        {
+            throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + size );
+        }
+        return order[index];
+    }
+
+    /**
+     * Returns the formatted value of a cell of the view.
+     *
+     * @param columnIndex the index of the column
+     * @param rowIndex    the index of the row in the view
+     * @return the value
+     */
+    public synchronized String getValue( int columnIndex, int rowIndex )
+    {
+        return store.getCell( columnIndex, getSourceIndex( rowIndex ) ).toString();
+    }
+
+    /**
+     * Returns the rows of the view.
+     *
+     * @return A list of Records representing the rows, which follows the changes of the view.
+     */
+    public List<Record> rows()
+    {
+        return new AbstractList<>()
+        {
+            @Override
+            public Record get( int index )
+            {
+                return getRow( index );
+            }
+
+            @Override
+            public int size()
+            {
+                return rowCount();
+            }
+        };
+    }
+
+    /**
+     * Returns the number of rows in the view.
+     *
+     * @return the number of rows
+     */
+    public synchronized int rowCount()
+    {
+        update();
+        return size;
+    }
+
+    /**
+     * Stops following the changes of the DataSheet. The view must not be used afterwards.
+     */
+    @Override
+    public void close()
+    {
+        store.removeListener( this );
+    }
+
+    @Override
+    public synchronized void contentChanged()
+    {
+        order = null;
+    }
+
+    @Override
+    public synchronized void cellChanged( int columnIndex, int rowIndex )
+    {
+        if ( order != null && isSortedBy( columnIndex ) )
+        {
+            moved.add( rowIndex );
+        }
+    }
+
+    @Override
+    public synchronized void rowChanged( int rowIndex )
+    {
+        if ( order != null )
+        {
+            moved.add( rowIndex );
+        }
+    }
+
+    @Override
+    public synchronized void columnChanged( int columnIndex )
+    {
+        if ( isSortedBy( columnIndex ) )
+        {
+            order = null;
+        }
+    }
+
+    @Override
+    public synchronized void rowInserted( int rowIndex )
+    {
+        if ( order != null && rowIndex == store.rowCount() - 1 )
+        {
+            moved.add( rowIndex );
+        }
+        else
+        {
+            order = null;
+        }
+    }
+
+    @Override
+    public synchronized void rowRemoved( int rowIndex )
+    {
+        if ( order != null && rowIndex == store.rowCount() )
+        {
+            moved.add( rowIndex );
+        }
+        else
+        {
+            order = null;
+        }
+    }
+
+    @Override
+    public synchronized void columnInserted( int columnIndex )
+    {
+        for ( int key = 0; key < columns.length; key++ )
+        {
+            if ( columns[key] >= columnIndex )
+            {
+                columns[key]++;
+            }
+        }
+    }
+
+    /**
+     * Stops sorting by a removed column. The rows are sorted by the remaining columns, or keep their order in the
+     * DataSheet if there are none.
+     */
+    @Override
+    public synchronized void columnRemoved( int columnIndex )
+    {
+        int kept = 0;
+        for ( int key = 0; key < columns.length; key++ )
+        {
+            if ( columns[key] != columnIndex )
+            {
+                columns[kept] = columns[key] > columnIndex ? columns[key] - 1 : columns[key];
+                descending[kept++] = descending[key];
+            }
+        }
+        if ( kept < columns.length )
+        {
+            columns = Arrays.copyOf( columns, kept );
+            descending = Arrays.copyOf( descending, kept );
+            order = null;
+        }
+    }
+
+    private boolean isSortedBy( int columnIndex )
+    {
+        for ( int column : columns )
+        {
+            if ( column == columnIndex )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Builds the permutation again if it is not valid, otherwise moves the rows which have changed since the last read
+     * to their position.
+     */
+    private void update()
+    {
+        if ( order == null )
+        {
+            order = store.sortedOrder( columns, descending );
+            size = order.length;
+            moved = new RowBitmap();
+        }
+        else if ( !moved.isEmpty() )
+        {
+            merge();
+        }
+    }
+
+    /**
+     * Takes the moved rows out of the permutation, sorts them and merges them back in, so a read after any number of
+     * changes reads the permutation once and compares each moved row with a logarithmic number of rows.
+     */
+    private void merge()
+    {
+        int rows = store.rowCount();
+        int kept = 0;
+        for ( int i = 0; i < size; i++ )
+        {
+            if ( order[i] < rows && !moved.contains( order[i] ) )
+            {
+                order[kept++] = order[i];
+            }
+        }
+        int[] changed = Arrays.stream( moved.toArray() ).filter( row -> row < rows ).toArray();
+        int[] sorted = new SortKeys( store, columns, descending, changed, false ).sort( false );
+        int[] merged = new int[kept + changed.length];
+        int from = 0;
+        int target = 0;
+        for ( int position : sorted )
+        {
+            int row = changed[position];
+            int to = position( row, from, kept );
+            System.arraycopy( order, from, merged, target, to - from );
+            target += to - from;
+            merged[target++] = row;
+            from = to;
+        }
+        System.arraycopy( order, from, merged, target, kept - from );
+        order = merged;
+        size = merged.length;
+        moved = new RowBitmap();
+    }
+
+    /**
+     * Finds the position of a row behind all rows which come before it. Rows with equal keys are ordered by their
+     * index, like sorting keeps their order.
+     */
+    private int position( int row, int low, int high )
+    {
+        while ( low < high )
+        {
+            int middle = ( low + high ) >>> 1;
+            int comparison = SortKeys.compare( store, columns, descending, order[middle], row );
+            if ( comparison < 0 || comparison == 0 && order[middle] < row )
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
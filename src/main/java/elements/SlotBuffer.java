@@ -0,0 +1,231 @@
+package elements;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The fixed width storage behind a ColumnVector. Every row has a 64 bit slot for its value and a byte for its cell
+ * type.
+ */
+abstract class SlotBuffer
+{
+    static SlotBuffer onHeap( int capacity )
+    {
+        return new Heap( capacity );
+    }
+
+    static SlotBuffer offHeap( int capacity )
+    {
+        return new Direct( capacity );
+    }
+
+    abstract long getSlot( int row );
+
+    abstract void setSlot( int row, long slot );
+
+    abstract byte getType( int row );
+
+    abstract void setType( int row, byte type );
+
+    abstract int capacity();
+
+    abstract void ensureCapacity( int capacity );
+
+    /**
+     * Creates an empty buffer of the same kind and capacity.
+     *
+     * @return the new buffer
+     */
+    abstract SlotBuffer emptyCopy();
+
+    /**
+     * Copies a number of rows inside the buffer. Overlapping ranges are copied as if a temporary buffer was used.
+     *
+     * @param from   the first row to copy
+     * @param to     the row to copy the first row to
+     * @param length the number of rows
+     */
+    void move( int from, int to, int length )
+    {
+        if ( to > from )
+        {
+            for ( int i = length - 1; i >= 0; i-- )
+            {
+                setSlot( to + i, getSlot( from + i ) );
+                setType( to + i, getType( from + i ) );
+            }
+        }
+        else
+        {
+            for ( int i = 0; i < length; i++ )
+            {
+                setSlot( to + i, getSlot( from + i ) );
+                setType( to + i, getType( from + i ) );
+            }
+        }
+    }
+
+    private static final class Heap extends SlotBuffer
+    {
+        private long[] slots;
+
+        private byte[] types;
+
+        Heap( int capacity )
+        {
+            slots = new long[capacity];
+            types = new byte[capacity];
+        }
+
+        @Override
+        long getSlot( int row )
+        {
+            return slots[row];
+        }
+
+        @Override
+        void setSlot( int row, long slot )
+        {
+            slots[row] = slot;
+        }
+
+        @Override
+        byte getType( int row )
+        {
+            return types[row];
+        }
+
+        @Override
+        void setType( int row, byte type )
+        {
+            types[row] = type;
+        }
+
+        @Override
+        int capacity()
+        {
+            return slots.length;
+        }
+
+        @Override
+        void ensureCapacity( int capacity )
+        {
+            if ( capacity > slots.length )
+            {
+                int newCapacity = Math.max( capacity, slots.length + ( slots.length >> 1 ) );
+                slots = Arrays.copyOf( slots, newCapacity );
+                types = Arrays.copyOf( types, newCapacity );
+            }
+        }
+
+        @Override
+        SlotBuffer emptyCopy()
+        {
+            return new Heap( slots.length );
+        }
+
+        @Override
+        void move( int from, int to, int length )
+        {
+            System.arraycopy( slots, from, slots, to, length );
+            System.arraycopy( types, from, types, to, length );
+        }
+    }
+
+    /**
+     * Keeps the rows in direct ByteBuffers outside of the Java heap. The rows are split into segments, each segment
+     * holds the slots of its rows and their types in two buffers. The first segment starts with the requested capacity
+     * and doubles until it is full, so small columns take little direct memory.
+     */
+    private static final class Direct extends SlotBuffer
+    {
+        private static final int SEGMENT_SHIFT = 13;
+
+        private static final int SEGMENT_ROWS = 1 << SEGMENT_SHIFT;
+
+        private static final int SEGMENT_MASK = SEGMENT_ROWS - 1;
+
+        private final List<ByteBuffer> slots = new ArrayList<>();
+
+        private final List<ByteBuffer> types = new ArrayList<>();
+
+        private int capacity;
+
+        Direct( int capacity )
+        {
+            ensureCapacity( capacity );
+        }
+
+        @Override
+        long getSlot( int row )
+        {
+            return slots.get( row >>> SEGMENT_SHIFT ).getLong( ( row & SEGMENT_MASK ) * Long.BYTES );
+        }
+
+        @Override
+        void setSlot( int row, long slot )
+        {
+            slots.get( row >>> SEGMENT_SHIFT ).putLong( ( row & SEGMENT_MASK ) * Long.BYTES, slot );
+        }
+
+        @Override
+        byte getType( int row )
+        {
+            return types.get( row >>> SEGMENT_SHIFT ).get( row & SEGMENT_MASK );
+        }
+
+        @Override
+        void setType( int row, byte type )
+        {
+            types.get( row >>> SEGMENT_SHIFT ).put( row & SEGMENT_MASK, type );
+        }
+
+        @Override
+        int capacity()
+        {
+            return capacity;
+        }
+
+        @Override
+        void ensureCapacity( int capacity )
+        {
+            if ( capacity <= this.capacity )
+            {
+                return;
+            }
+            if ( this.capacity < SEGMENT_ROWS )
+            {
+                int rows = Math.min( SEGMENT_ROWS, Math.max( capacity, this.capacity * 2 ) );
+                ByteBuffer newSlots = ByteBuffer.allocateDirect( rows * Long.BYTES );
+                ByteBuffer newTypes = ByteBuffer.allocateDirect( rows );
+                if ( this.capacity > 0 )
+                {
+                    newSlots.put( slots.get( 0 ).duplicate().clear() );
+                    newTypes.put( types.get( 0 ).duplicate().clear() );
+                    slots.set( 0, newSlots );
+                    types.set( 0, newTypes );
+                }
+                else
+                {
+                    slots.add( newSlots );
+                    types.add( newTypes );
+                }
+                this.capacity = rows;
+            }
+            while ( this.capacity < capacity )
+            {
+                slots.add( ByteBuffer.allocateDirect( SEGMENT_ROWS * Long.BYTES ) );
+                types.add( ByteBuffer.allocateDirect( SEGMENT_ROWS ) );
+                this.capacity += SEGMENT_ROWS;
+            }
+        }
+
+        @Override
+        SlotBuffer emptyCopy()
+        {
+            return new Direct( capacity() );
+        }
+    }
+}
@@ -0,0 +1,571 @@
+package elements;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import type.CellType;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+
+/**
+ * The sort keys of a number of columns, extracted once per row before sorting. A key is a number for numeric values,
+ * an epoch day for dates and the formatted String for everything else, so rows are compared without formatting or
+ * parsing any value again.
+ * <p>
+ * Two numeric keys are compared by their numbers, all other pairs by their Strings, like {@link Cell#compareTo(Cell)}
+ * does.
+ * <p>
+ * A parallel sort splits the rows exactly like the sequential sort does and sorts the halves in a ForkJoinPool, so both
+ * produce the same order. A sort by a single column whose keys are all numbers or all dates is a radix sort instead.
+ */
+final class SortKeys
+{
+    static final byte TEXT = 0;
+
+    static final byte NUMBER = 1;
+
+    private static final byte DATE = 2;
+
+    private static final int INSERTION_SORT_SIZE = 16;
+
+    private static final int PARALLEL_SORT_SIZE = 1 << 13;
+
+    private static final int RADIX_SORT_SIZE = 1 << 8;
+
+    private final int rows;
+
+    private final boolean[] descending;
+
+    private final byte[][] kinds;
+
+    private final double[][] numbers;
+
+    private final String[][] texts;
+
+    /**
+     * Extracts the keys of a number of columns.
+     *
+     * @param store      the store
+     * @param columns    the column indices to sort by
+     * @param descending for each column whether it is sorted in descending order
+     * @param parallel   true if the keys should be extracted in parallel
+     */
+    SortKeys( RecordStore store, int[] columns, boolean[] descending, boolean parallel )
+    {
+        this( store, columns, descending, null, parallel );
+    }
+
+    /**
+     * Extracts the keys of a number of columns for some rows. The positions returned by sorting are positions in the
+     * selection.
+     *
+     * @param store      the store
+     * @param columns    the column indices to sort by
+     * @param descending for each column whether it is sorted in descending order
+     * @param selection  the indices of the rows
+     * @param parallel   true if the keys should be extracted in parallel
+     */
+    SortKeys( RecordStore store, int[] columns, boolean[] descending, int[] selection, boolean parallel )
+    {
+        this.rows = selection != null ? selection.length : store.rowCount();
+        this.descending = descending;
+        kinds = new byte[columns.length][rows];
+        numbers = new double[columns.length][rows];
+        texts = new String[columns.length][rows];
+        IntStream range = IntStream.range( 0, rows );
+        ( parallel ? range.parallel() : range ).forEach( row ->
+        {
+            for ( int key = 0; key < columns.length; key++ )
+            {
+                extract( store.getCell( columns[key], selection != null ? selection[row] : row ), key, row );
+            }
+        } );
+    }
+
+    /**
+     * Compares two rows of a store by a number of columns without extracting the keys of all rows.
+     *
+     * @param store      the store
+     * @param columns    the column indices to sort by
+     * @param descending for each column whether it is sorted in descending order
+     * @param row1       the first row
+     * @param row2       the second row
+     * @return a negative number, zero or a positive number if the first row comes before, together with or after the
+     * second row
+     */
+    static int compare( RecordStore store, int[] columns, boolean[] descending, int row1, int row2 )
+    {
+        return new SortKeys( store, columns, descending, new int[]{ row1, row2 }, false ).compare( 0, 1 );
+    }
+
+    /**
+     * Extracts the keys of a number of columns from lines of text values.
+     *
+     * @param lines      the lines
+     * @param columns    the column indices to sort by
+     * @param descending for each column whether it is sorted in descending order
+     */
+    SortKeys( List<List<String>> lines, int[] columns, boolean[] descending )
+    {
+        this.rows = lines.size();
+        this.descending = descending;
+        kinds = new byte[columns.length][rows];
+        numbers = new double[columns.length][rows];
+        texts = new String[columns.length][rows];
+        for ( int row = 0; row < rows; row++ )
+        {
+            List<String> line = lines.get( row );
+            for ( int key = 0; key < columns.length; key++ )
+            {
+                String text = columns[key] < line.size() ? line.get( columns[key] ) : StringUtils.EMPTY;
+                texts[key][row] = text;
+                kinds[key][row] = kindOf( text );
+                numbers[key][row] = kinds[key][row] == NUMBER ? Double.parseDouble( text ) : 0;
+            }
+        }
+    }
+
+    private void extract( Cell cell, int key, int row )
+    {
+        String text = cell.toString();
+        texts[key][row] = text;
+        CellType type = cell.getCellType();
+        if ( type == CellType.NUMBER || type == CellType.CURRENCY || type == CellType.PERCENTAGE )
+        {
+            double number = cell.rawNumber();
+            if ( !Double.isNaN( number ) )
+            {
+                kinds[key][row] = NUMBER;
+                numbers[key][row] = number;
+                return;
+            }
+        }
+        else if ( type == CellType.DATE && isIsoDate( text ) )
+        {
+            try
+            {
+                numbers[key][row] = LocalDate.parse( text ).toEpochDay();
+                kinds[key][row] = DATE;
+                return;
+            }
+            catch ( DateTimeParseException e )
+            {
+                // compared as text
+            }
+        }
+        if ( NumberUtils.isParsable( text ) )
+        {
+            kinds[key][row] = NUMBER;
+            numbers[key][row] = type == CellType.TEXT ? cell.rawNumber() : Double.parseDouble( text );
+        }
+    }
+
+    /**
+     * Sorts the rows by their keys. The sort is stable, rows with equal keys keep their order.
+     *
+     * @param parallel true if the rows should be sorted in parallel
+     * @return the new order of the rows, the row at position {@code i} is the row which was at {@code order[i]}
+     */
+    int[] sort( boolean parallel )
+    {
+        int[] order = new int[rows];
+        for ( int i = 0; i < rows; i++ )
+        {
+            order[i] = i;
+        }
+        if ( rows >= RADIX_SORT_SIZE && isRadixSortable() )
+        {
+            radixSort( order );
+        }
+        else if ( parallel )
+        {
+            ForkJoinPool.commonPool().invoke( new ParallelSort( order, new int[rows], 0, rows ) );
+        }
+        else
+        {
+            sort( order, new int[rows], 0, rows );
+        }
+        return order;
+    }
+
+    /**
+     * Selects the first or the last rows of the sorted order with a bounded heap, without sorting all rows.
+     *
+     * @param count the maximum number of rows to select
+     * @param last  true to select the last rows instead of the first rows
+     * @return the selected rows in sorted order
+     */
+    int[] select( int count, boolean last )
+    {
+        int size = Math.max( 0, Math.min( count, rows ) );
+        int[] heap = new int[size];
+        if ( size == 0 )
+        {
+            return heap;
+        }
+        int sign = last ? -1 : 1;
+        int filled = 0;
+        for ( int row = 0; row < rows; row++ )
+        {
+            if ( filled < size )
+            {
+                heap[filled] = row;
+                siftUp( heap, filled++, sign );
+            }
+            else if ( compareStable( row, heap[0] ) * sign < 0 )
+            {
+                heap[0] = row;
+                siftDown( heap, size, sign );
+            }
+        }
+        Arrays.sort( heap );
+        sort( heap, new int[size], 0, size );
+        return heap;
+    }
+
+    /**
+     * Compares two rows by all keys and by their position if the keys are equal.
+     */
+    private int compareStable( int row1, int row2 )
+    {
+        int comparison = compare( row1, row2 );
+        return comparison != 0 ? comparison : Integer.compare( row1, row2 );
+    }
+
+    /**
+     * Moves a row up the heap. The root is the row which is dropped first.
+     */
+    private void siftUp( int[] heap, int index, int sign )
+    {
+        int row = heap[index];
+        while ( index > 0 )
+        {
+            int parent = ( index - 1 ) >>> 1;
+            if ( compareStable( heap[parent], row ) * sign >= 0 )
+            {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = row;
+    }
+
+    /**
+     * Moves the root down the heap.
+     */
+    private void siftDown( int[] heap, int size, int sign )
+    {
+        int row = heap[0];
+        int index = 0;
+        int child;
+        while ( ( child = 2 * index + 1 ) < size )
+        {
+            if ( child + 1 < size && compareStable( heap[child + 1], heap[child] ) * sign > 0 )
+            {
+                child++;
+            }
+            if ( compareStable( heap[child], row ) * sign <= 0 )
+            {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = row;
+    }
+
+    /**
+     * Compares two rows by all keys.
+     *
+     * @param row1 the first row
+     * @param row2 the second row
+     * @return a negative number, zero or a positive number if the first row comes before, together with or after the
+     * second row
+     */
+    int compare( int row1, int row2 )
+    {
+        for ( int key = 0; key < kinds.length; key++ )
+        {
+            int comparison = compare( key, row1, row2 );
+            if ( comparison != 0 )
+            {
+                return descending[key] ? -comparison : comparison;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Compares a row with a row of other keys over the same number of columns.
+     *
+     * @param row      the row
+     * @param other    the other keys
+     * @param otherRow the row of the other keys
+     * @return a negative number, zero or a positive number if the row comes before, together with or after the other
+     * row
+     */
+    int compare( int row, SortKeys other, int otherRow )
+    {
+        for ( int key = 0; key < kinds.length; key++ )
+        {
+            int comparison = compare( kinds[key][row], numbers[key][row], texts[key][row], other.kinds[key][otherRow],
+                    other.numbers[key][otherRow], other.texts[key][otherRow] );
+            if ( comparison != 0 )
+            {
+                return descending[key] ? -comparison : comparison;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Checks whether a value of the key of a row is empty.
+     *
+     * @param row the row
+     * @return true if a value is blank
+     */
+    boolean hasEmptyValue( int row )
+    {
+        for ( String[] text : texts )
+        {
+            if ( StringUtils.isBlank( text[row] ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int compare( int key, int row1, int row2 )
+    {
+        return compare( kinds[key][row1], numbers[key][row1], texts[key][row1], kinds[key][row2], numbers[key][row2],
+                texts[key][row2] );
+    }
+
+    /**
+     * Compares two keys.
+     */
+    static int compare( byte kind1, double number1, String text1, byte kind2, double number2, String text2 )
+    {
+        if ( kind1 != TEXT && kind1 == kind2 )
+        {
+            if ( number1 < number2 )
+            {
+                return -1;
+            }
+            if ( number1 > number2 )
+            {
+                return 1;
+            }
+            if ( kind1 == NUMBER && !text1.equals( text2 ) && NumberUtils.isParsable( text1 ) && NumberUtils
+                    .isParsable( text2 ) )
+            {
+                return new BigDecimal( text1 ).compareTo( new BigDecimal( text2 ) );
+            }
+            return 0;
+        }
+        return text1.compareTo( text2 );
+    }
+
+    /**
+     * Returns the kind of the key of a text value.
+     *
+     * @param text the value
+     * @return NUMBER if the value is compared by its number, otherwise TEXT
+     */
+    static byte kindOf( String text )
+    {
+        return NumberUtils.isParsable( text ) ? NUMBER : TEXT;
+    }
+
+    /**
+     * Sorts a part of the order with a merge sort which switches to insertion sort for small parts.
+     */
+    private void sort( int[] order, int[] buffer, int from, int to )
+    {
+        if ( to - from <= INSERTION_SORT_SIZE )
+        {
+            for ( int i = from + 1; i < to; i++ )
+            {
+                int row = order[i];
+                int j = i - 1;
+                while ( j >= from && compare( order[j], row ) > 0 )
+                {
+                    order[j + 1] = order[j];
+                    j--;
+                }
+                order[j + 1] = row;
+            }
+            return;
+        }
+        int middle = ( from + to ) >>> 1;
+        sort( order, buffer, from, middle );
+        sort( order, buffer, middle, to );
+        merge( order, buffer, from, middle, to );
+    }
+
+    /**
+     * Checks whether the rows are sorted by one column only, whose keys are all of the same numeric kind.
+     */
+    private boolean isRadixSortable()
+    {
+        if ( kinds.length != 1 )
+        {
+            return false;
+        }
+        byte kind = kinds[0][0];
+        if ( kind == TEXT )
+        {
+            return false;
+        }
+        for ( byte other : kinds[0] )
+        {
+            if ( other != kind )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sorts the rows with a stable LSD radix sort over the sortable 64 bit encoding of their numbers. Descending
+     * order inverts the encoding, so equal keys keep their order in both directions. Equal numbers which are written
+     * differently are ordered by their exact decimal value afterwards, like {@link #compare(int, int)} does.
+     *
+     * @param order the rows in their current order, sorted in place
+     */
+    private void radixSort( int[] order )
+    {
+        long[] keys = new long[rows];
+        for ( int row = 0; row < rows; row++ )
+        {
+            double number = numbers[0][row];
+            long bits = Double.doubleToLongBits( number == 0 ? 0.0 : number );
+            long key = bits < 0 ? ~bits : bits ^ Long.MIN_VALUE;
+            keys[row] = descending[0] ? ~key : key;
+        }
+        int[] source = order;
+        int[] target = new int[rows];
+        long[] targetKeys = new long[rows];
+        int[] counts = new int[257];
+        for ( int shift = 0; shift < Long.SIZE; shift += 8 )
+        {
+            Arrays.fill( counts, 0 );
+            for ( long key : keys )
+            {
+                counts[( int ) ( key >>> shift & 0xFF ) + 1]++;
+            }
+            if ( counts[( int ) ( keys[0] >>> shift & 0xFF ) + 1] == rows )
+            {
+                continue;
+            }
+            for ( int digit = 0; digit < 256; digit++ )
+            {
+                counts[digit + 1] += counts[digit];
+            }
+            for ( int i = 0; i < rows; i++ )
+            {
+                int position = counts[( int ) ( keys[i] >>> shift & 0xFF )]++;
+                targetKeys[position] = keys[i];
+                target[position] = source[i];
+            }
+            long[] swapKeys = keys;
+            keys = targetKeys;
+            targetKeys = swapKeys;
+            int[] swap = source;
+            source = target;
+            target = swap;
+        }
+        if ( source != order )
+        {
+            System.arraycopy( source, 0, order, 0, rows );
+        }
+        if ( kinds[0][0] == NUMBER )
+        {
+            int[] buffer = new int[rows];
+            for ( int from = 0, to = 1; to <= rows; to++ )
+            {
+                if ( to == rows || keys[to] != keys[from] )
+                {
+                    if ( to - from > 1 )
+                    {
+                        sort( order, buffer, from, to );
+                    }
+                    from = to;
+                }
+            }
+        }
+    }
+
+    private void merge( int[] order, int[] buffer, int from, int middle, int to )
+    {
+        if ( compare( order[middle - 1], order[middle] ) <= 0 )
+        {
+            return;
+        }
+        System.arraycopy( order, from, buffer, from, to - from );
+        int left = from;
+        int right = middle;
+        for ( int i = from; i < to; i++ )
+        {
+            if ( right >= to || left < middle && compare( buffer[left], buffer[right] ) <= 0 )
+            {
+                order[i] = buffer[left++];
+            }
+            else
+            {
+                order[i] = buffer[right++];
+            }
+        }
+    }
+
+    /**
+     * Sorts both halves of a part in parallel and merges them.
+     */
+    private final class ParallelSort extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] order;
+
+        private final int[] buffer;
+
+        private final int from;
+
+        private final int to;
+
+        ParallelSort( int[] order, int[] buffer, int from, int to )
+        {
+            this.order = order;
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if ( to - from <= PARALLEL_SORT_SIZE )
+            {
+                sort( order, buffer, from, to );
+                return;
+            }
+            int middle = ( from + to ) >>> 1;
+            invokeAll( new ParallelSort( order, buffer, from, middle ), new ParallelSort( order, buffer, middle, to ) );
+            merge( order, buffer, from, middle, to );
+        }
+    }
+
+    private static boolean isIsoDate( String text )
+    {
+        return text.length() == 10 && text.charAt( 4 ) == '-' && text.charAt( 7 ) == '-';
+    }
+}
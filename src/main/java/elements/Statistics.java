@@ -0,0 +1,258 @@
+package elements;
+
+import type.Operation;
+
+import java.util.*;
+
+/**
+ * Gathers all statistics of a number of cells in a single pass. The sum is compensated (Neumaier), the variance is
+ * updated incrementally (Welford), so neither of them loses precision over many values. The values themselves are only
+ * kept if the median is requested.
+ * <p>
+ * SUM, AVG and COUNT behave like they always did for expressions over a range: a single non-numeric cell makes the sum
+ * 0 and COUNT is the number of cells. Formulas skip values which are not numeric instead, like all other operations do.
+ * COUNT_NUMERIC is always the number of numeric cells.
+ */
+final class Statistics
+{
+    private final boolean keepValues;
+
+    private final boolean numericOnly;
+
+    private int size;
+
+    private int nonNumeric;
+
+    private int nonEmpty;
+
+    private int count;
+
+    private double sum;
+
+    private double compensation;
+
+    private double min = Double.POSITIVE_INFINITY;
+
+    private double max = Double.NEGATIVE_INFINITY;
+
+    private double mean;
+
+    private double squares;
+
+    private double product = 1;
+
+    private double[] values;
+
+    /**
+     * Creates new statistics.
+     *
+     * @param operations  the operations which will be requested
+     * @param numericOnly true if SUM, AVG and COUNT should skip values which are not numeric
+     */
+    Statistics( Set<Operation> operations, boolean numericOnly )
+    {
+        this.numericOnly = numericOnly;
+        keepValues = operations.contains( Operation.MEDIAN );
+        values = keepValues ? new double[16] : null;
+    }
+
+    /**
+     * Gathers the statistics of a number of cells.
+     *
+     * @param operations the operations which will be requested
+     * @param cells      the cells
+     * @return the statistics
+     */
+    static Statistics of( Set<Operation> operations, List<Cell> cells )
+    {
+        Statistics statistics = new Statistics( operations, false );
+        cells.forEach( statistics::accept );
+        return statistics;
+    }
+
+    void accept( Cell cell )
+    {
+        double value = cell.toNumber();
+        if ( Double.isNaN( value ) )
+        {
+            size++;
+            nonNumeric++;
+            if ( !cell.isEmpty() )
+            {
+                nonEmpty++;
+            }
+            return;
+        }
+        accept( value );
+    }
+
+    void accept( double value )
+    {
+        size++;
+        nonEmpty++;
+        count++;
+        add( value );
+        min = Math.min( min, value );
+        max = Math.max( max, value );
+        double delta = value - mean;
+        mean += delta / count;
+        squares += delta * ( value - mean );
+        product *= value;
+        if ( keepValues )
+        {
+            if ( count > values.length )
+            {
+                values = Arrays.copyOf( values, values.length * 2 );
+            }
+            values[count - 1] = value;
+        }
+    }
+
+    /**
+     * Adds the statistics of other cells to these statistics, as if the cells had been accepted one by one. The
+     * variances are combined pairwise (Chan). Values for the median are only taken over if both statistics keep them.
+     *
+     * @param other the statistics of the other cells
+     */
+    void merge( Statistics other )
+    {
+        if ( keepValues && other.keepValues )
+        {
+            if ( count + other.count > values.length )
+            {
+                values = Arrays.copyOf( values, Math.max( values.length * 2, count + other.count ) );
+            }
+            System.arraycopy( other.values, 0, values, count, other.count );
+        }
+        if ( other.count > 0 )
+        {
+            int total = count + other.count;
+            double delta = other.mean - mean;
+            mean += delta * other.count / total;
+            squares += other.squares + delta * delta * count * other.count / total;
+        }
+        size += other.size;
+        nonNumeric += other.nonNumeric;
+        nonEmpty += other.nonEmpty;
+        count += other.count;
+        add( other.sum );
+        compensation += other.compensation;
+        min = Math.min( min, other.min );
+        max = Math.max( max, other.max );
+        product *= other.product;
+    }
+
+    /**
+     * Checks whether the values are kept for the median, so the statistics of other cells can not stand in for them.
+     *
+     * @return true if the values are kept
+     */
+    boolean keepsValues()
+    {
+        return keepValues;
+    }
+
+    /**
+     * Returns the result of an operation.
+     *
+     * @param operation the operation
+     * @return the result or NaN if there are not enough numeric values
+     */
+    double get( Operation operation )
+    {
+        switch ( operation )
+        {
+            case SUM:
+            case AVG:
+            case COUNT:
+                return fromSum( operation, sum + compensation, nonNumeric, size, numericOnly );
+            case COUNT_NON_EMPTY:
+                return nonEmpty;
+            case COUNT_NUMERIC:
+                return count;
+            case MIN:
+                return count > 0 ? min : Double.NaN;
+            case MAX:
+                return count > 0 ? max : Double.NaN;
+            case PRODUCT:
+                return count > 0 ? product : Double.NaN;
+            case VARIANCE:
+                return count > 1 ? squares / ( count - 1 ) : Double.NaN;
+            case STDDEV:
+                return count > 1 ? Math.sqrt( squares / ( count - 1 ) ) : Double.NaN;
+            case MEDIAN:
+                return median();
+            default:
+                return Double.NaN;
+        }
+    }
+
+    /**
+     * Returns the results of a number of operations.
+     *
+     * @param operations the operations
+     * @return the results by operation
+     */
+    Map<Operation, Double> get( Set<Operation> operations )
+    {
+        Map<Operation, Double> results = new EnumMap<>( Operation.class );
+        operations.forEach( operation -> results.put( operation, get( operation ) ) );
+        return results;
+    }
+
+    /**
+     * Calculates SUM, AVG or COUNT from the sum of the numeric values of a number of cells.
+     *
+     * @param operation   the operation
+     * @param sum         the sum of all numeric values
+     * @param nonNumeric  the number of cells which are not numeric
+     * @param size        the number of cells
+     * @param numericOnly true if cells which are not numeric should be skipped, false if they make the sum 0
+     * @return the result or NaN if the operation can not be calculated from the sum
+     */
+    static double fromSum( Operation operation, double sum, int nonNumeric, int size, boolean numericOnly )
+    {
+        int count = numericOnly ? size - nonNumeric : size;
+        double total = nonNumeric > 0 && !numericOnly ? 0 : sum;
+        switch ( operation )
+        {
+            case SUM:
+                return total;
+            case AVG:
+                return numericOnly && count == 0 ? Double.NaN : total / count;
+            case COUNT:
+                return count;
+            default:
+                return Double.NaN;
+        }
+    }
+
+    /**
+     * Adds a value to the compensated sum.
+     */
+    private void add( double value )
+    {
+        double total = sum + value;
+        if ( Math.abs( sum ) >= Math.abs( value ) )
+        {
+            compensation += ( sum - total ) + value;
+        }
+        else
+        {
+            compensation += ( value - total ) + sum;
+        }
+        sum = total;
+    }
+
+    private double median()
+    {
+        if ( !keepValues || count == 0 )
+        {
+            return Double.NaN;
+        }
+        double[] sorted = Arrays.copyOf( values, count );
+        Arrays.sort( sorted );
+        int middle = count / 2;
+        return count % 2 == 1 ? sorted[middle] : ( sorted[middle - 1] + sorted[middle] ) / 2;
+    }
+}
@@ -0,0 +1,58 @@
+package elements;
+
+/**
+ * Gets notified about changes of a RecordStore, e.g. to keep an index up to date. Every notification falls back to
+ * {@link #contentChanged()} unless it is overridden.
+ */
+interface StoreListener
+{
+    /**
+     * Called when values changed at positions which are not known.
+     */
+    void contentChanged();
+
+    default void cellChanged( int columnIndex, int rowIndex )
+    {
+        contentChanged();
+    }
+
+    default void rowChanged( int rowIndex )
+    {
+        contentChanged();
+    }
+
+    default void columnChanged( int columnIndex )
+    {
+        contentChanged();
+    }
+
+    default void rowInserted( int rowIndex )
+    {
+        contentChanged();
+    }
+
+    default void rowRemoved( int rowIndex )
+    {
+        contentChanged();
+    }
+
+    default void columnInserted( int columnIndex )
+    {
+        contentChanged();
+    }
+
+    default void columnRemoved( int columnIndex )
+    {
+        contentChanged();
+    }
+
+    /**
+     * Called after the rows have been reordered.
+     *
+     * @param order the new order of the rows. The row at position {@code i} was at position {@code order[i]} before.
+     */
+    default void rowsReordered( int[] order )
+    {
+        contentChanged();
+    }
+}
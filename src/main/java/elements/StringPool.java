@@ -0,0 +1,161 @@
+package elements;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Stores the Strings of a ColumnVector. A String is referenced by a 64 bit code which fits into a slot of the column.
+ */
+abstract class StringPool
+{
+    static StringPool onHeap()
+    {
+        return new Dictionary();
+    }
+
+    static StringPool offHeap()
+    {
+        return new Direct();
+    }
+
+    abstract long put( String value );
+
+    abstract String get( long code );
+
+    /**
+     * Returns the number of Strings which have been stored, including Strings which are no longer referenced.
+     *
+     * @return the number of Strings
+     */
+    abstract int count();
+
+    /**
+     * Creates an empty pool of the same kind, into which the Strings which are still referenced are copied when the
+     * pool is compacted.
+     *
+     * @return the new pool
+     */
+    abstract StringPool emptyCopy();
+
+    /**
+     * Keeps every distinct String once and references it by its position in a list.
+     */
+    private static final class Dictionary extends StringPool
+    {
+        private final List<String> values = new ArrayList<>();
+
+        private final Map<String, Integer> codes = new HashMap<>();
+
+        @Override
+        long put( String value )
+        {
+            Integer code = codes.get( value );
+            if ( code == null )
+            {
+                code = values.size();
+                values.add( value );
+                codes.put( value, code );
+            }
+            return code;
+        }
+
+        @Override
+        String get( long code )
+        {
+            return values.get( ( int ) code );
+        }
+
+        @Override
+        int count()
+        {
+            return values.size();
+        }
+
+        @Override
+        StringPool emptyCopy()
+        {
+            return new Dictionary();
+        }
+    }
+
+    /**
+     * Appends the Strings as length prefixed UTF-8 bytes to direct ByteBuffers outside of the Java heap. The code of a
+     * String is its segment in the upper and its position in the lower 32 bits. The first segment is allocated with the
+     * first String, each further segment is twice as large up to a maximum size. Only recently stored Strings are
+     * reused, Strings which are overwritten are dropped when the column compacts the pool.
+     */
+    private static final class Direct extends StringPool
+    {
+        private static final int FIRST_SEGMENT_SIZE = 1 << 10;
+
+        private static final int SEGMENT_SIZE = 1 << 20;
+
+        private static final int RECENT_SIZE = 1024;
+
+        private final List<ByteBuffer> segments = new ArrayList<>();
+
+        private int count;
+
+        private final Map<String, Long> recent = new LinkedHashMap<>( RECENT_SIZE, 0.75f, true )
+        {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<String, Long> eldest )
+            {
+                return size() > RECENT_SIZE;
+            }
+        };
+
+        @Override
+        long put( String value )
+        {
+            Long code = recent.get( value );
+            if ( code == null )
+            {
+                code = append( value.getBytes( StandardCharsets.UTF_8 ) );
+                recent.put( value, code );
+                count++;
+            }
+            return code;
+        }
+
+        @Override
+        String get( long code )
+        {
+            ByteBuffer segment = segments.get( ( int ) ( code >>> 32 ) ).duplicate();
+            int position = ( int ) code;
+            byte[] bytes = new byte[segment.getInt( position )];
+            segment.position( position + Integer.BYTES );
+            segment.get( bytes );
+            return new String( bytes, StandardCharsets.UTF_8 );
+        }
+
+        @Override
+        int count()
+        {
+            return count;
+        }
+
+        @Override
+        StringPool emptyCopy()
+        {
+            return new Direct();
+        }
+
+        private long append( byte[] bytes )
+        {
+            int length = Integer.BYTES + bytes.length;
+            ByteBuffer segment = segments.isEmpty() ? null : segments.get( segments.size() - 1 );
+            if ( segment == null || segment.remaining() < length )
+            {
+                int size = segment == null ? FIRST_SEGMENT_SIZE : Math.min( SEGMENT_SIZE, segment.capacity() * 2 );
+                segment = ByteBuffer.allocateDirect( Math.max( size, length ) );
+                segments.add( segment );
+            }
+            long code = ( ( long ) ( segments.size() - 1 ) << 32 ) | segment.position();
+            segment.putInt( bytes.length );
+            segment.put( bytes );
+            return code;
+        }
+    }
+}
@@ -0,0 +1,381 @@
+package elements;
+
+import org.apache.commons.lang3.math.NumberUtils;
+import type.CellType;
+import type.Operation;
+import util.DateParser;
+import util.RowBitmap;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.EnumSet;
+
+/**
+ * The minimum, the maximum and the number of empty values of one column for each chunk of {@link #CHUNK_SIZE} rows. A
+ * range query skips the chunks whose values are all outside of the range and takes the chunks whose values are all
+ * inside of it without reading them, so only the chunks at the bounds of the range are read. Numbers are compared by
+ * their value and dates by their day, a value which is neither counts as empty.
+ * <p>
+ * Each chunk also keeps the statistics of its values, so aggregations take the chunks which are completely inside of a
+ * range of rows or values from their statistics, except for the median.
+ * <p>
+ * Rows added to the end are added to the last chunk directly. Other changes mark the chunks they touch, which are read
+ * again by the next query. Chunks with expressions are always read, as their results change with their operands.
+ */
+final class ZoneMap implements StoreListener
+{
+    static final int CHUNK_SIZE = 1 << 10;
+
+    private static final int OUTSIDE = 0;
+
+    private static final int INSIDE = 1;
+
+    private static final int PARTIAL = 2;
+
+    private final RecordStore store;
+
+    private int column;
+
+    private int size;
+
+    private double[] min = new double[0];
+
+    private double[] max = new double[0];
+
+    private int[] empty = new int[0];
+
+    private boolean[] expressions = new boolean[0];
+
+    private boolean[] valid = new boolean[0];
+
+    private Statistics[] statistics = new Statistics[0];
+
+    ZoneMap( RecordStore store, int column )
+    {
+        this.store = store;
+        this.column = column;
+        contentChanged();
+    }
+
+    /**
+     * Returns the column of the zone map, which follows inserted and removed columns.
+     *
+     * @return the column index or -1 if the column has been removed
+     */
+    synchronized int getColumn()
+    {
+        return column;
+    }
+
+    /**
+     * Returns the value of a cell which is compared to the bounds of a range.
+     *
+     * @param cell the cell
+     * @return the number, the epoch day of a date or NaN if the cell has neither
+     */
+    static double keyOf( Cell cell )
+    {
+        return cell.getCellType() == CellType.DATE ? cell.dateKey() : cell.toNumber();
+    }
+
+    /**
+     * Returns the value of a bound of a range.
+     *
+     * @param bound a Number, a LocalDate or their text
+     * @return the number, the epoch day of a date or NaN if the bound is neither
+     */
+    static double keyOf( Object bound )
+    {
+        if ( bound instanceof Number )
+        {
+            return ( ( Number ) bound ).doubleValue();
+        }
+        if ( bound instanceof LocalDate )
+        {
+            return ( ( LocalDate ) bound ).toEpochDay();
+        }
+        String text = String.valueOf( bound );
+        if ( NumberUtils.isParsable( text ) )
+        {
+            return Double.parseDouble( text );
+        }
+        LocalDate date = DateParser.isoDate( text );
+        return date != null ? date.toEpochDay() : Double.NaN;
+    }
+
+    /**
+     * Selects the rows whose values are inside of a range.
+     *
+     * @param from the lower bound, inclusive
+     * @param to   the upper bound, inclusive
+     * @return the rows
+     */
+    synchronized RowBitmap select( double from, double to )
+    {
+        RowBitmap rows = new RowBitmap();
+        for ( int chunk = 0; chunk * CHUNK_SIZE < size; chunk++ )
+        {
+            int first = chunk * CHUNK_SIZE;
+            int last = Math.min( size, first + CHUNK_SIZE );
+            int position = positionOf( chunk, from, to );
+            if ( position == INSIDE )
+            {
+                for ( int row = first; row < last; row++ )
+                {
+                    rows.add( row );
+                }
+            }
+            else if ( position == PARTIAL )
+            {
+                for ( int row = first; row < last; row++ )
+                {
+                    double key = keyOf( store.getCell( column, row ) );
+                    if ( key >= from && key <= to )
+                    {
+                        rows.add( row );
+                    }
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Gathers the values whose keys are inside of a range.
+     *
+     * @param from       the lower bound, inclusive
+     * @param to         the upper bound, inclusive
+     * @param statistics the statistics to add the values to, which skip values that are not numeric
+     */
+    synchronized void aggregateRange( double from, double to, Statistics statistics )
+    {
+        for ( int chunk = 0; chunk * CHUNK_SIZE < size; chunk++ )
+        {
+            int position = positionOf( chunk, from, to );
+            if ( position != OUTSIDE && blankOrInside( chunk, from, to ) && !statistics.keepsValues() )
+            {
+                statistics.merge( this.statistics[chunk] );
+            }
+            else if ( position != OUTSIDE )
+            {
+                for ( int row = chunk * CHUNK_SIZE; row < Math.min( size, ( chunk + 1 ) * CHUNK_SIZE ); row++ )
+                {
+                    Cell cell = store.getCell( column, row );
+                    double key = keyOf( cell );
+                    if ( key >= from && key <= to )
+                    {
+                        statistics.accept( cell );
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Gathers the values of a range of rows.
+     *
+     * @param fromRow    the index of the start row
+     * @param toRow      the index of the end row, inclusive
+     * @param statistics the statistics to add the values to
+     */
+    synchronized void aggregateRows( int fromRow, int toRow, Statistics statistics )
+    {
+        for ( int chunk = fromRow / CHUNK_SIZE; chunk * CHUNK_SIZE <= toRow; chunk++ )
+        {
+            update( chunk );
+            int first = chunk * CHUNK_SIZE;
+            int last = Math.min( size, first + CHUNK_SIZE ) - 1;
+            if ( first >= fromRow && last <= toRow && !expressions[chunk] && !statistics.keepsValues() )
+            {
+                statistics.merge( this.statistics[chunk] );
+                continue;
+            }
+            for ( int row = Math.max( first, fromRow ); row <= Math.min( last, toRow ); row++ )
+            {
+                statistics.accept( store.getCell( column, row ) );
+            }
+        }
+    }
+
+    @Override
+    public synchronized void contentChanged()
+    {
+        size = store.rowCount();
+        int chunks = ( size + CHUNK_SIZE - 1 ) / CHUNK_SIZE;
+        min = new double[chunks];
+        max = new double[chunks];
+        empty = new int[chunks];
+        expressions = new boolean[chunks];
+        valid = new boolean[chunks];
+        statistics = new Statistics[chunks];
+    }
+
+    @Override
+    public synchronized void cellChanged( int columnIndex, int rowIndex )
+    {
+        if ( columnIndex == column )
+        {
+            rowChanged( rowIndex );
+        }
+    }
+
+    @Override
+    public synchronized void rowChanged( int rowIndex )
+    {
+        if ( rowIndex < size )
+        {
+            valid[rowIndex / CHUNK_SIZE] = false;
+        }
+    }
+
+    @Override
+    public synchronized void columnChanged( int columnIndex )
+    {
+        if ( columnIndex == column )
+        {
+            contentChanged();
+        }
+    }
+
+    @Override
+    public synchronized void rowInserted( int rowIndex )
+    {
+        int chunk = size / CHUNK_SIZE;
+        if ( chunk == valid.length )
+        {
+            int chunks = Math.max( 4, chunk * 3 / 2 );
+            min = Arrays.copyOf( min, chunks );
+            max = Arrays.copyOf( max, chunks );
+            empty = Arrays.copyOf( empty, chunks );
+            expressions = Arrays.copyOf( expressions, chunks );
+            valid = Arrays.copyOf( valid, chunks );
+            statistics = Arrays.copyOf( statistics, chunks );
+        }
+        size++;
+        if ( rowIndex < size - 1 )
+        {
+            Arrays.fill( valid, rowIndex / CHUNK_SIZE, valid.length, false );
+        }
+        else if ( size % CHUNK_SIZE == 1 )
+        {
+            reset( chunk );
+            valid[chunk] = true;
+            accept( chunk, rowIndex );
+        }
+        else if ( valid[chunk] )
+        {
+            accept( chunk, rowIndex );
+        }
+    }
+
+    @Override
+    public synchronized void rowRemoved( int rowIndex )
+    {
+        size--;
+        Arrays.fill( valid, rowIndex / CHUNK_SIZE, valid.length, false );
+    }
+
+    @Override
+    public synchronized void columnInserted( int columnIndex )
+    {
+        if ( columnIndex <= column )
+        {
+            column++;
+        }
+    }
+
+    @Override
+    public synchronized void columnRemoved( int columnIndex )
+    {
+        if ( columnIndex < column )
+        {
+            column--;
+        }
+        else if ( columnIndex == column )
+        {
+            column = -1;
+        }
+    }
+
+    @Override
+    public synchronized void rowsReordered( int[] order )
+    {
+        Arrays.fill( valid, false );
+    }
+
+    /**
+     * Tells whether the keys of a chunk are all outside of a range, all inside of it or whether the chunk has to be
+     * read.
+     */
+    private int positionOf( int chunk, double from, double to )
+    {
+        update( chunk );
+        if ( expressions[chunk] )
+        {
+            return PARTIAL;
+        }
+        int rows = Math.min( size, ( chunk + 1 ) * CHUNK_SIZE ) - chunk * CHUNK_SIZE;
+        if ( empty[chunk] == rows || max[chunk] < from || min[chunk] > to )
+        {
+            return OUTSIDE;
+        }
+        return empty[chunk] == 0 && min[chunk] >= from && max[chunk] <= to ? INSIDE : PARTIAL;
+    }
+
+    /**
+     * Checks whether all values of a chunk which are not blank are inside of a range. Blank values do not change
+     * statistics which skip values that are not numeric, so the statistics of such a chunk can be taken as a whole.
+     */
+    private boolean blankOrInside( int chunk, double from, double to )
+    {
+        int rows = Math.min( size, ( chunk + 1 ) * CHUNK_SIZE ) - chunk * CHUNK_SIZE;
+        int blank = rows - ( int ) statistics[chunk].get( Operation.COUNT_NON_EMPTY );
+        return !expressions[chunk] && empty[chunk] == blank && min[chunk] >= from && max[chunk] <= to;
+    }
+
+    /**
+     * Reads the values of a chunk again if it is not valid.
+     */
+    private void update( int chunk )
+    {
+        if ( !valid[chunk] )
+        {
+            reset( chunk );
+            for ( int row = chunk * CHUNK_SIZE; row < Math.min( size, ( chunk + 1 ) * CHUNK_SIZE ); row++ )
+            {
+                accept( chunk, row );
+            }
+            valid[chunk] = true;
+        }
+    }
+
+    private void reset( int chunk )
+    {
+        min[chunk] = Double.POSITIVE_INFINITY;
+        max[chunk] = Double.NEGATIVE_INFINITY;
+        empty[chunk] = 0;
+        expressions[chunk] = false;
+        statistics[chunk] = new Statistics( EnumSet.noneOf( Operation.class ), false );
+    }
+
+    private void accept( int chunk, int row )
+    {
+        Cell cell = store.getCell( column, row );
+        if ( cell.getRawValue() instanceof Cell.Expression )
+        {
+            expressions[chunk] = true;
+            return;
+        }
+        statistics[chunk].accept( cell );
+        double key = keyOf( cell );
+        if ( Double.isNaN( key ) )
+        {
+            empty[chunk]++;
+        }
+        else
+        {
+            min[chunk] = Math.min( min[chunk], key );
+            max[chunk] = Math.max( max[chunk], key );
+        }
+    }
+}
@@ -6,11 +6,13 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class CSVReader
 {
@@ -89,6 +91,16 @@ public class CSVReader
         return this;
     }
 
+    public char getSeparator()
+    {
+        return separator;
+    }
+
+    public String getCharSet()
+    {
+        return charSet;
+    }
+
     /**
      * Checks whether the CSVReader is defined to treat the first row as column names.
      *
@@ -125,11 +137,47 @@ public class CSVReader
         return content;
     }
 
+    /**
+     * Reads the content of the file line by line. Only the current line is kept in memory, so this can be used for
+     * files which do not fit into memory at once. The stream must be closed to release the file.
+     *
+     * @return A stream of lines. Each line is a list containing the elements as String.
+     */
+    public Stream<List<String>> stream()
+    {
+        try
+        {
+            BufferedReader br = new BufferedReader( new FileReader( file, Charset.forName( charSet ) ) );
+            return br.lines().filter( line -> !line.equals( "\0" ) )
+                     .map( line -> split( line.replaceAll( "\0", "" ) ) ).onClose( () -> close( br ) );
+        }
+        catch ( IOException e )
+        {
+            System.err.println( "ERROR: File could not be read!" );
+            return Stream.empty();
+        }
+    }
+
     private void addLine( String line )
     {
-        final List<String> elements = Arrays.stream( StringUtils.splitPreserveAllTokens( line, separator ) )
-                                            .collect( Collectors.toList() );
-        content.add( elements );
+        content.add( split( line ) );
+    }
+
+    private List<String> split( String line )
+    {
+        return Arrays.stream( StringUtils.splitPreserveAllTokens( line, separator ) ).collect( Collectors.toList() );
+    }
+
+    private static void close( BufferedReader br )
+    {
+        try
+        {
+            br.close();
+        }
+        catch ( IOException e )
+        {
+            throw new UncheckedIOException( e );
+        }
     }
 
 }
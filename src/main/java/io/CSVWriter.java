@@ -3,9 +3,12 @@ package io;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
+import java.io.IOException;
 import java.nio.charset.Charset;
+import java.util.Iterator;
 import java.util.List;
 import java.util.StringJoiner;
+import java.util.stream.Stream;
 
 public class CSVWriter
 {
@@ -92,23 +95,42 @@ public class CSVWriter
     }
 
     /**
-     * Write the values to the file.
+     * Write the values to the file. Any error is reported instead of thrown.
      *
      * @param content A nested list of the actual values as String.
      */
     public void writeCSV( List<List<String>> content )
+    {
+        try
+        {
+            writeCSV( content.stream() );
+        }
+        catch ( Exception e )
+        {
+            System.err.println( "ERROR: File could not be written!" );
+        }
+    }
+
+    /**
+     * Write the values to the file row by row. Only the current row is kept in memory, so this can be used for
+     * content which does not fit into memory at once. Exceptions thrown by the stream are passed on.
+     *
+     * @param content A stream of rows, each row containing the actual values as String.
+     */
+    public void writeCSV( Stream<List<String>> content )
     {
         try ( BufferedWriter bw = new BufferedWriter( new FileWriter( file, Charset.forName( charSet ) ) ) )
         {
-            for ( List<String> row : content )
+            Iterator<List<String>> rows = content.iterator();
+            while ( rows.hasNext() )
             {
                 StringJoiner sj = new StringJoiner( String.valueOf( separator ) );
-                row.forEach( sj::add );
+                rows.next().forEach( sj::add );
                 bw.write( sj.toString() );
                 bw.newLine();
             }
         }
-        catch ( Exception e )
+        catch ( IOException e )
         {
             System.err.println( "ERROR: File could not be written!" );
         }
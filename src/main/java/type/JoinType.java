@@ -0,0 +1,9 @@
+package type;
+
+public enum JoinType
+{
+    INNER,
+    LEFT,
+    RIGHT,
+    FULL
+}
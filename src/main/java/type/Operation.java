@@ -4,5 +4,13 @@ public enum Operation
 {
     SUM,
     AVG,
-    COUNT
+    COUNT,
+    MIN,
+    MAX,
+    STDDEV,
+    VARIANCE,
+    MEDIAN,
+    COUNT_NON_EMPTY,
+    PRODUCT,
+    COUNT_NUMERIC
 }
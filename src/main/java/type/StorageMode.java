@@ -0,0 +1,8 @@
+package type;
+
+public enum StorageMode
+{
+    ROW,
+    COLUMN,
+    OFF_HEAP
+}
@@ -8,6 +8,10 @@ import java.util.Locale;
 
 public final class CellFormatter
 {
+    private static volatile Locale currencyLocale;
+
+    private static volatile String currencySymbol;
+
     private CellFormatter()
     {
 
@@ -26,8 +30,7 @@ public final class CellFormatter
                 case DATE:
                     return DateParser.parse( value );
                 case CURRENCY:
-                    return String.format( "%.2f", Double.valueOf( value ) ) + StringUtils.SPACE + Currency
-                            .getInstance( Locale.getDefault() ).getSymbol();
+                    return String.format( "%.2f", Double.valueOf( value ) ) + StringUtils.SPACE + currencySymbol();
                 default:
                     return value;
             }
@@ -37,4 +40,23 @@ public final class CellFormatter
             return value;
         }
     }
+
+    /**
+     * Returns the currency symbol of the default locale. The symbol is looked up again only if the default locale
+     * changes.
+     *
+     * @return the currency symbol
+     */
+    private static String currencySymbol()
+    {
+        Locale locale = Locale.getDefault();
+        String symbol = currencySymbol;
+        if ( symbol == null || locale != currencyLocale )
+        {
+            symbol = Currency.getInstance( locale ).getSymbol();
+            currencySymbol = symbol;
+            currencyLocale = locale;
+        }
+        return symbol;
+    }
 }
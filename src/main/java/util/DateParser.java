@@ -2,10 +2,9 @@ package util;
 
 import org.apache.commons.lang3.math.NumberUtils;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.time.LocalDate;
-import java.util.Date;
+import java.time.Month;
+import java.time.Year;
 
 public final class DateParser
 {
@@ -71,36 +70,32 @@ public final class DateParser
 
     private static String twoDigitYear( String dateString )
     {
-        try
-        {
-            int day = Integer.parseInt( dateString.substring( 0, 2 ) );
-            int month = Integer.parseInt( dateString.substring( 2, 4 ) );
-            Date d = new SimpleDateFormat( "yy" ).parse( dateString.substring( 4 ) );
-            String yearString = new SimpleDateFormat( "yyyy" ).format( d );
-            LocalDate date = LocalDate.of( Integer.parseInt( yearString ), month, day );
-            return date.toString();
-        }
-        catch ( ParseException e )
-        {
-            return dateString;
-        }
+        int day = Integer.parseInt( dateString.substring( 0, 2 ) );
+        int month = Integer.parseInt( dateString.substring( 2, 4 ) );
+        LocalDate date = LocalDate.of( fullYear( dateString.substring( 4 ) ), month, day );
+        return date.toString();
     }
 
     private static String fourDigitYear( String dateString )
     {
-        try
-        {
-            int day = Integer.parseInt( dateString.substring( 0, 1 ) );
-            int month = Integer.parseInt( dateString.substring( 1, 2 ) );
-            Date d = new SimpleDateFormat( "yy" ).parse( dateString.substring( 2 ) );
-            String yearString = new SimpleDateFormat( "yyyy" ).format( d );
-            LocalDate date = LocalDate.of( Integer.parseInt( yearString ), month, day );
-            return date.toString();
-        }
-        catch ( ParseException e )
-        {
-            return dateString;
-        }
+        int day = Integer.parseInt( dateString.substring( 0, 1 ) );
+        int month = Integer.parseInt( dateString.substring( 1, 2 ) );
+        LocalDate date = LocalDate.of( fullYear( dateString.substring( 2 ) ), month, day );
+        return date.toString();
+    }
+
+    /**
+     * Expands a two digit year the same way as SimpleDateFormat does: the year lies within 80 years before and 20 years
+     * after the current year.
+     *
+     * @param twoDigits the two digit year
+     * @return the full year
+     */
+    private static int fullYear( String twoDigits )
+    {
+        int start = LocalDate.now().getYear() - 80;
+        int year = start - Math.floorMod( start, 100 ) + Integer.parseInt( twoDigits );
+        return year < start ? year + 100 : year;
     }
 
     private static String dayAndMonthInCurrentYear( String dateString )
@@ -112,6 +107,44 @@ public final class DateParser
         return date.toString();
     }
 
+    /**
+     * Reads a date of the form yyyy-MM-dd, as it is returned by {@link #parse(String)}, without throwing an exception
+     * for other text.
+     *
+     * @param dateString the text
+     * @return the date or null if the text is no such date
+     */
+    public static LocalDate isoDate( String dateString )
+    {
+        if ( dateString.length() != 10 || dateString.charAt( 4 ) != '-' || dateString.charAt( 7 ) != '-' )
+        {
+            return null;
+        }
+        int year = digitsOf( dateString, 0, 4 );
+        int month = digitsOf( dateString, 5, 7 );
+        int day = digitsOf( dateString, 8, 10 );
+        if ( year < 0 || month < 1 || month > 12 || day < 1 || day > Month.of( month ).length( Year.isLeap( year ) ) )
+        {
+            return null;
+        }
+        return LocalDate.of( year, month, day );
+    }
+
+    private static int digitsOf( String dateString, int from, int to )
+    {
+        int value = 0;
+        for ( int i = from; i < to; i++ )
+        {
+            char c = dateString.charAt( i );
+            if ( c < '0' || c > '9' )
+            {
+                return -1;
+            }
+            value = value * 10 + c - '0';
+        }
+        return value;
+    }
+
     private static String dayInCurrentMonth( String dateString )
     {
         int day = Integer.parseInt( dateString );
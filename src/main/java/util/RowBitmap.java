@@ -0,0 +1,623 @@
+package util;
+
+import java.util.Arrays;
+import java.util.StringJoiner;
+import java.util.function.IntConsumer;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * A compressed set of row indices. The rows are split by their upper 16 bits into containers of up to 65536 rows,
+ * and each container holds its lower 16 bits either as a sorted array while it has up to 4096 rows or as a bitmap of
+ * 8 KB once it has more. Sparse selections take two bytes per row, dense ones a bit, and two selections are combined
+ * container by container, mostly a word at a time.
+ */
+public final class RowBitmap
+{
+    private static final int ARRAY_LIMIT = 4096;
+
+    private char[] keys = new char[4];
+
+    private Container[] containers = new Container[4];
+
+    private int size;
+
+    /**
+     * Creates a new empty RowBitmap.
+     */
+    public RowBitmap()
+    {
+
+    }
+
+    /**
+     * Creates a new RowBitmap with rows.
+     *
+     * @param rows the row indices, in any order
+     * @return the RowBitmap
+     */
+    public static RowBitmap of( int... rows )
+    {
+        RowBitmap bitmap = new RowBitmap();
+        for ( int row : rows )
+        {
+            bitmap.add( row );
+        }
+        return bitmap;
+    }
+
+    /**
+     * Adds a row.
+     *
+     * @param row the row index, not negative
+     * @return true if the row has not been part of the bitmap
+     */
+    public boolean add( int row )
+    {
+        if ( row < 0 )
+        {
+            throw new IllegalArgumentException( "The row index must not be negative." );
+        }
+        int position = find( high( row ) );
+        if ( position < 0 )
+        {
+            position = -position - 1;
+            insert( position, high( row ), new ArrayContainer( new char[4], 0 ) );
+        }
+        Container container = containers[position];
+        int cardinality = container.cardinality();
+        containers[position] = container.add( low( row ) );
+        return containers[position].cardinality() > cardinality;
+    }
+
+    /**
+     * Removes a row.
+     *
+     * @param row the row index
+     * @return true if the row has been part of the bitmap
+     */
+    public boolean remove( int row )
+    {
+        int position = row >= 0 ? find( high( row ) ) : -1;
+        if ( position < 0 )
+        {
+            return false;
+        }
+        Container container = containers[position];
+        int cardinality = container.cardinality();
+        containers[position] = container.remove( low( row ) );
+        if ( containers[position].cardinality() == 0 )
+        {
+            System.arraycopy( keys, position + 1, keys, position, size - position - 1 );
+            System.arraycopy( containers, position + 1, containers, position, size - position - 1 );
+            containers[--size] = null;
+            return true;
+        }
+        return containers[position].cardinality() < cardinality;
+    }
+
+    /**
+     * Checks whether a row is part of the bitmap.
+     *
+     * @param row the row index
+     * @return true if it is
+     */
+    public boolean contains( int row )
+    {
+        int position = row >= 0 ? find( high( row ) ) : -1;
+        return position >= 0 && containers[position].contains( low( row ) );
+    }
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return the number of rows
+     */
+    public int cardinality()
+    {
+        int cardinality = 0;
+        for ( int i = 0; i < size; i++ )
+        {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    /**
+     * Checks whether the bitmap has no rows.
+     *
+     * @return true if it is empty
+     */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Returns the rows which are part of this and another bitmap.
+     *
+     * @param other the other bitmap
+     * @return a new RowBitmap
+     */
+    public RowBitmap and( RowBitmap other )
+    {
+        RowBitmap result = new RowBitmap();
+        int i = 0;
+        int j = 0;
+        while ( i < size && j < other.size )
+        {
+            if ( keys[i] < other.keys[j] )
+            {
+                i++;
+            }
+            else if ( keys[i] > other.keys[j] )
+            {
+                j++;
+            }
+            else
+            {
+                Container container = containers[i++].and( other.containers[j++] );
+                if ( container.cardinality() > 0 )
+                {
+                    result.insert( result.size, keys[i - 1], container );
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the rows which are part of this or another bitmap.
+     *
+     * @param other the other bitmap
+     * @return a new RowBitmap
+     */
+    public RowBitmap or( RowBitmap other )
+    {
+        RowBitmap result = new RowBitmap();
+        int i = 0;
+        int j = 0;
+        while ( i < size || j < other.size )
+        {
+            if ( j == other.size || i < size && keys[i] < other.keys[j] )
+            {
+                result.insert( result.size, keys[i], containers[i++].copy() );
+            }
+            else if ( i == size || keys[i] > other.keys[j] )
+            {
+                result.insert( result.size, other.keys[j], other.containers[j++].copy() );
+            }
+            else
+            {
+                result.insert( result.size, keys[i], containers[i++].or( other.containers[j++] ) );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the rows which are part of this but not of another bitmap.
+     *
+     * @param other the other bitmap
+     * @return a new RowBitmap
+     */
+    public RowBitmap andNot( RowBitmap other )
+    {
+        RowBitmap result = new RowBitmap();
+        int j = 0;
+        for ( int i = 0; i < size; i++ )
+        {
+            while ( j < other.size && other.keys[j] < keys[i] )
+            {
+                j++;
+            }
+            Container container = j < other.size && other.keys[j] == keys[i] ? containers[i]
+                    .andNot( other.containers[j] ) : containers[i].copy();
+            if ( container.cardinality() > 0 )
+            {
+                result.insert( result.size, keys[i], container );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Performs an action for each row in ascending order.
+     *
+     * @param action the action
+     */
+    public void forEach( IntConsumer action )
+    {
+        for ( int i = 0; i < size; i++ )
+        {
+            containers[i].forEach( keys[i] << 16, action );
+        }
+    }
+
+    /**
+     * Returns the rows in ascending order.
+     *
+     * @return the row indices
+     */
+    public int[] toArray()
+    {
+        int[] rows = new int[cardinality()];
+        int[] count = { 0 };
+        forEach( row -> rows[count[0]++] = row );
+        return rows;
+    }
+
+    @Override
+    public boolean equals( Object o )
+    {
+        return o instanceof RowBitmap && Arrays.equals( toArray(), ( ( RowBitmap ) o ).toArray() );
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Arrays.hashCode( toArray() );
+    }
+
+    @Override
+    public String toString()
+    {
+        StringJoiner sj = new StringJoiner( ", ", "[", "]" );
+        forEach( row -> sj.add( String.valueOf( row ) ) );
+        return sj.toString();
+    }
+
+    private int find( char key )
+    {
+        return Arrays.binarySearch( keys, 0, size, key );
+    }
+
+    private void insert( int position, char key, Container container )
+    {
+        if ( size == keys.length )
+        {
+            keys = Arrays.copyOf( keys, size * 2 );
+            containers = Arrays.copyOf( containers, size * 2 );
+        }
+        System.arraycopy( keys, position, keys, position + 1, size - position );
+        System.arraycopy( containers, position, containers, position + 1, size - position );
+        keys[position] = key;
+        containers[position] = container;
+        size++;
+    }
+
+    private static char high( int row )
+    {
+        return ( char ) ( row >>> 16 );
+    }
+
+    private static char low( int row )
+    {
+        return ( char ) row;
+    }
+
+    /**
+     * The lower 16 bits of the rows which share their upper 16 bits. Changes may return another container.
+     */
+    private abstract static class Container
+    {
+        abstract Container add( char value );
+
+        abstract Container remove( char value );
+
+        abstract boolean contains( char value );
+
+        abstract int cardinality();
+
+        abstract Container and( Container other );
+
+        abstract Container or( Container other );
+
+        abstract Container andNot( Container other );
+
+        abstract void forEach( int high, IntConsumer action );
+
+        abstract Container copy();
+    }
+
+    /**
+     * A container with a sorted array of up to 4096 values.
+     */
+    private static final class ArrayContainer extends Container
+    {
+        private char[] values;
+
+        private int cardinality;
+
+        ArrayContainer( char[] values, int cardinality )
+        {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        Container add( char value )
+        {
+            int position = Arrays.binarySearch( values, 0, cardinality, value );
+            if ( position >= 0 )
+            {
+                return this;
+            }
+            if ( cardinality == ARRAY_LIMIT )
+            {
+                return toBitmap().add( value );
+            }
+            position = -position - 1;
+            if ( cardinality == values.length )
+            {
+                values = Arrays.copyOf( values, Math.min( ARRAY_LIMIT, Math.max( 4, cardinality * 2 ) ) );
+            }
+            System.arraycopy( values, position, values, position + 1, cardinality - position );
+            values[position] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Container remove( char value )
+        {
+            int position = Arrays.binarySearch( values, 0, cardinality, value );
+            if ( position >= 0 )
+            {
+                System.arraycopy( values, position + 1, values, position, cardinality - position - 1 );
+                cardinality--;
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains( char value )
+        {
+            return Arrays.binarySearch( values, 0, cardinality, value ) >= 0;
+        }
+
+        @Override
+        int cardinality()
+        {
+            return cardinality;
+        }
+
+        @Override
+        Container and( Container other )
+        {
+            char[] result = new char[cardinality];
+            int count = 0;
+            if ( other instanceof ArrayContainer )
+            {
+                ArrayContainer array = ( ArrayContainer ) other;
+                for ( int i = 0, j = 0; i < cardinality && j < array.cardinality; )
+                {
+                    if ( values[i] < array.values[j] )
+                    {
+                        i++;
+                    }
+                    else if ( values[i] > array.values[j] )
+                    {
+                        j++;
+                    }
+                    else
+                    {
+                        result[count++] = values[i++];
+                        j++;
+                    }
+                }
+            }
+            else
+            {
+                for ( int i = 0; i < cardinality; i++ )
+                {
+                    if ( other.contains( values[i] ) )
+                    {
+                        result[count++] = values[i];
+                    }
+                }
+            }
+            return new ArrayContainer( result, count );
+        }
+
+        @Override
+        Container or( Container other )
+        {
+            if ( other instanceof BitmapContainer )
+            {
+                return other.or( this );
+            }
+            ArrayContainer array = ( ArrayContainer ) other;
+            char[] result = new char[cardinality + array.cardinality];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while ( i < cardinality || j < array.cardinality )
+            {
+                if ( j == array.cardinality || i < cardinality && values[i] < array.values[j] )
+                {
+                    result[count++] = values[i++];
+                }
+                else if ( i == cardinality || values[i] > array.values[j] )
+                {
+                    result[count++] = array.values[j++];
+                }
+                else
+                {
+                    result[count++] = values[i++];
+                    j++;
+                }
+            }
+            ArrayContainer merged = new ArrayContainer( result, count );
+            return count > ARRAY_LIMIT ? merged.toBitmap() : merged;
+        }
+
+        @Override
+        Container andNot( Container other )
+        {
+            char[] result = new char[cardinality];
+            int count = 0;
+            for ( int i = 0; i < cardinality; i++ )
+            {
+                if ( !other.contains( values[i] ) )
+                {
+                    result[count++] = values[i];
+                }
+            }
+            return new ArrayContainer( result, count );
+        }
+
+        @Override
+        void forEach( int high, IntConsumer action )
+        {
+            for ( int i = 0; i < cardinality; i++ )
+            {
+                action.accept( high | values[i] );
+            }
+        }
+
+        @Override
+        Container copy()
+        {
+            return new ArrayContainer( Arrays.copyOf( values, cardinality ), cardinality );
+        }
+
+        private BitmapContainer toBitmap()
+        {
+            BitmapContainer bitmap = new BitmapContainer( new long[1024], 0 );
+            for ( int i = 0; i < cardinality; i++ )
+            {
+                bitmap.add( values[i] );
+            }
+            return bitmap;
+        }
+    }
+
+    /**
+     * A container with a bit for each of the 65536 values, used for more than 4096 values.
+     */
+    private static final class BitmapContainer extends Container
+    {
+        private final long[] words;
+
+        private int cardinality;
+
+        BitmapContainer( long[] words, int cardinality )
+        {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        Container add( char value )
+        {
+            long word = words[value >>> 6];
+            words[value >>> 6] = word | 1L << value;
+            if ( word != words[value >>> 6] )
+            {
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Container remove( char value )
+        {
+            long word = words[value >>> 6];
+            words[value >>> 6] = word & ~( 1L << value );
+            if ( word != words[value >>> 6] )
+            {
+                cardinality--;
+            }
+            return cardinality <= ARRAY_LIMIT ? toArray() : this;
+        }
+
+        @Override
+        boolean contains( char value )
+        {
+            return ( words[value >>> 6] & 1L << value ) != 0;
+        }
+
+        @Override
+        int cardinality()
+        {
+            return cardinality;
+        }
+
+        @Override
+        Container and( Container other )
+        {
+            if ( other instanceof ArrayContainer )
+            {
+                return other.and( this );
+            }
+            return combine( ( BitmapContainer ) other, ( word1, word2 ) -> word1 & word2 );
+        }
+
+        @Override
+        Container or( Container other )
+        {
+            if ( other instanceof ArrayContainer )
+            {
+                BitmapContainer result = ( BitmapContainer ) copy();
+                other.forEach( 0, value -> result.add( ( char ) value ) );
+                return result;
+            }
+            return combine( ( BitmapContainer ) other, ( word1, word2 ) -> word1 | word2 );
+        }
+
+        @Override
+        Container andNot( Container other )
+        {
+            if ( other instanceof ArrayContainer )
+            {
+                Container result = copy();
+                ArrayContainer array = ( ArrayContainer ) other;
+                for ( int i = 0; i < array.cardinality; i++ )
+                {
+                    result = result.remove( array.values[i] );
+                }
+                return result;
+            }
+            return combine( ( BitmapContainer ) other, ( word1, word2 ) -> word1 & ~word2 );
+        }
+
+        @Override
+        void forEach( int high, IntConsumer action )
+        {
+            for ( int i = 0; i < words.length; i++ )
+            {
+                for ( long word = words[i]; word != 0; word &= word - 1 )
+                {
+                    action.accept( high | i << 6 | Long.numberOfTrailingZeros( word ) );
+                }
+            }
+        }
+
+        @Override
+        Container copy()
+        {
+            return new BitmapContainer( words.clone(), cardinality );
+        }
+
+        private Container combine( BitmapContainer other, LongBinaryOperator operation )
+        {
+            long[] result = new long[words.length];
+            int count = 0;
+            for ( int i = 0; i < words.length; i++ )
+            {
+                result[i] = operation.applyAsLong( words[i], other.words[i] );
+                count += Long.bitCount( result[i] );
+            }
+            BitmapContainer bitmap = new BitmapContainer( result, count );
+            return count <= ARRAY_LIMIT ? bitmap.toArray() : bitmap;
+        }
+
+        private ArrayContainer toArray()
+        {
+            char[] values = new char[Math.max( cardinality, 4 )];
+            int[] count = { 0 };
+            forEach( 0, value -> values[count[0]++] = ( char ) value );
+            return new ArrayContainer( values, count[0] );
+        }
+    }
+}
@@ -3,6 +3,8 @@ package elements;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import type.CellType;
+import type.StorageMode;
 
 import java.util.Arrays;
 
@@ -95,4 +97,66 @@ public class CellTypeTest
         Assert.assertEquals( 0.0, value7, 0 );
         Assert.assertEquals( 123.54, value8, 0 );
     }
+
+    @Test
+    public void testTypedValues()
+    {
+        for ( StorageMode mode : StorageMode.values() )
+        {
+            elements.DataSheet sheet = new elements.DataSheet( 10, mode );
+            sheet.setRow( 0, Arrays.asList( 1.23456, "2.5", 3000000000L, "7" ) );
+            sheet.setCellTypeForRow( 0, CellType.NUMBER );
+            Assert.assertEquals( 1.23456, sheet.getCell( 0, 0 ).getValueAsDouble(), 0 );
+            Assert.assertEquals( 0, sheet.getCell( 0, 0 ).getValueAsInt() );
+            Assert.assertEquals( 2.5, sheet.getCell( 1, 0 ).getValueAsDouble(), 0 );
+            Assert.assertEquals( 3000000000.0, sheet.getCell( 2, 0 ).getValueAsDouble(), 0 );
+            Assert.assertEquals( 0, sheet.getCell( 2, 0 ).getValueAsInt() );
+            Assert.assertEquals( 7, sheet.getCell( 3, 0 ).getValueAsInt() );
+            sheet.setValue( 3, 0, "qwertz" );
+            Assert.assertEquals( 0, sheet.getCell( 3, 0 ).getValueAsInt() );
+            sheet.setValue( 3, 0, "true" );
+            Assert.assertEquals( 1.0, sheet.getCell( 3, 0 ).getValueAsDouble(), 0 );
+        }
+    }
+
+    @Test
+    public void testFormattedValues()
+    {
+        for ( StorageMode mode : StorageMode.values() )
+        {
+            elements.DataSheet sheet = new elements.DataSheet( 10, mode );
+            sheet.setValue( 0, 0, 0.5 );
+            Assert.assertEquals( "0.5", sheet.getValue( 0, 0 ) );
+            sheet.setCellType( 0, 0, CellType.PERCENTAGE );
+            Assert.assertEquals( String.format( "%.2f", 50.0 ) + " %", sheet.getValue( 0, 0 ) );
+            sheet.setValue( 0, 0, 0.25 );
+            Assert.assertEquals( String.format( "%.2f", 25.0 ) + " %", sheet.getValue( 0, 0 ) );
+            sheet.addRow( 0, Arrays.asList( 0.75 ) );
+            Assert.assertEquals( "0.75", sheet.getValue( 0, 0 ) );
+            Assert.assertEquals( String.format( "%.2f", 25.0 ) + " %", sheet.getValue( 0, 1 ) );
+        }
+        for ( StorageMode mode : StorageMode.values() )
+        {
+            elements.DataSheet sheet = new elements.DataSheet( 3, mode ).setFormatCacheLimit( 1 );
+            sheet.setRow( 0, Arrays.asList( 1, 2, 3 ) );
+            sheet.setRow( 1, Arrays.asList( 4, 5, 6 ) );
+            Assert.assertEquals( "1,2,3", sheet.getRow( 0 ).toString() );
+            Assert.assertEquals( "4,5,6", sheet.getRow( 1 ).toString() );
+            sheet.addRow( 0, Arrays.asList( 7, 8, 9 ) );
+            sheet.setCellType( 0, 1, CellType.PERCENTAGE );
+            Assert.assertEquals( "7,8,9", sheet.getRow( 0 ).toString() );
+            Assert.assertEquals( String.format( "%.2f", 100.0 ) + " %", sheet.getValue( 0, 1 ) );
+            Assert.assertEquals( "4", sheet.getValue( 0, 2 ) );
+            Assert.assertEquals( mode == StorageMode.ROW, sheet.getCell( 0, 1 ).getFormatted() != null );
+            Assert.assertEquals( "4,5,6", sheet.setFormatCacheLimit( 0 ).getRow( 2 ).toString() );
+            Assert.assertNull( sheet.getCell( 0, 1 ).getFormatted() );
+            sheet.addRow( Arrays.asList( 1, 2, 3 ) );
+            Assert.assertEquals( "1,2,3", sheet.getRow( sheet.rowCount() - 1 ).toString() );
+            Assert.assertEquals( String.format( "%.2f", 100.0 ) + " %", sheet.getValue( 0, 1 ) );
+            for ( int row = 0; row < sheet.rowCount(); row++ )
+            {
+                Assert.assertNull( sheet.getCell( 0, row ).getFormatted() );
+            }
+        }
+    }
 }
@@ -0,0 +1,208 @@
+package elements;
+
+import io.CSVReader;
+import org.junit.Assert;
+import org.junit.Test;
+import type.CellType;
+import type.Operation;
+import type.StorageMode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+public class ColumnStoreTest
+{
+    @Test
+    public void testSameContentAsRowStore()
+    {
+        DataSheet rows = new DataSheet( new CSVReader( "src/test/resources/data.csv" ) );
+        DataSheet columns = new DataSheet( new CSVReader( "src/test/resources/data.csv" ), StorageMode.COLUMN );
+        Assert.assertEquals( rows.toString(), columns.toString() );
+        Assert.assertEquals( rows.count(), columns.count() );
+
+        System.out.println( "TEST 1 - Sorting gives the same order." );
+        rows.sortDescending( 5, 3 );
+        columns.sortDescending( 5, 3 );
+        Assert.assertEquals( rows.toString(), columns.toString() );
+
+        System.out.println( "TEST 2 - Adding and removing rows and columns." );
+        rows.addRow( 3, Arrays.asList( "foo", 1, 2.5, "bar", "", null, true, 'x' ) );
+        columns.addRow( 3, Arrays.asList( "foo", 1, 2.5, "bar", "", null, true, 'x' ) );
+        rows.addColumn( 1, Arrays.asList( 1, 2, 3 ) ).removeRow( 0 ).removeColumn( 4 );
+        columns.addColumn( 1, Arrays.asList( 1, 2, 3 ) ).removeRow( 0 ).removeColumn( 4 );
+        Assert.assertEquals( rows.toString(), columns.toString() );
+        Assert.assertEquals( rows.count(), columns.count() );
+    }
+
+    @Test
+    public void testOffHeap()
+    {
+        DataSheet rows = new DataSheet( new CSVReader( "src/test/resources/data.csv" ).withColumnNames( true ) );
+        DataSheet offHeap = new DataSheet( new CSVReader( "src/test/resources/data.csv" )
+                .withColumnNames( true ), StorageMode.OFF_HEAP );
+        Assert.assertEquals( rows.toString(), offHeap.toString() );
+
+        System.out.println( "TEST 1 - Sorting off-heap values." );
+        rows.sortAscending( 1 );
+        offHeap.sortAscending( 1 );
+        Assert.assertEquals( rows.toString(), offHeap.toString() );
+        Assert.assertEquals( "Asunción", offHeap.getValue( 1, 0 ) );
+
+        System.out.println( "TEST 2 - Updating off-heap values." );
+        offHeap.setValue( 1, 0, "Ciudad del Este" );
+        offHeap.setValue( 2, 0, 7000000 );
+        Assert.assertEquals( "Ciudad del Este", offHeap.getValue( 1, 0 ) );
+        Assert.assertEquals( "7000000", offHeap.getValue( 2, 0 ) );
+        Assert.assertEquals( "Berlin", offHeap.getValue( 1, 1 ) );
+    }
+
+    @Test
+    public void testWideLinesAddColumnNames() throws IOException
+    {
+        File file = File.createTempFile( "wide", ".csv" );
+        try
+        {
+            Files.write( file.toPath(), Arrays.asList( "a,b", "1,2", "3,4,5" ) );
+            DataSheet ds = new DataSheet( new CSVReader( file ).withColumnNames( true ), StorageMode.COLUMN );
+
+            System.out.println( "TEST 1 - A line wider than the column names adds a column name." );
+            Assert.assertEquals( Arrays.asList( "a", "b", "COLUMN" ), ds.columnNames() );
+            Assert.assertEquals( "5", ds.getColumn( "COLUMN" ).toString() );
+        }
+        finally
+        {
+            Files.delete( file.toPath() );
+        }
+    }
+
+    @Test
+    public void testStringsAreReclaimed()
+    {
+        for ( boolean offHeap : new boolean[] { false, true } )
+        {
+            System.out.println( "TEST 1 - Overwriting Strings " + ( offHeap ? "off" : "on" ) + " heap." );
+            ColumnVector column = new ColumnVector( 10, offHeap );
+            for ( int i = 0; i < 10000; i++ )
+            {
+                column.set( i % 10, "value " + i );
+            }
+            Assert.assertEquals( "value 9999", column.get( 9 ) );
+            Assert.assertEquals( "value 9990", column.get( 0 ) );
+            Assert.assertTrue( column.stringCount() < 100 );
+
+            System.out.println( "TEST 2 - Growing and shrinking a column " + ( offHeap ? "off" : "on" ) + " heap." );
+            for ( int i = 0; i < 20000; i++ )
+            {
+                column.insert( column.size(), "row " + i );
+            }
+            for ( int i = 0; i < 15000; i++ )
+            {
+                column.remove( 0 );
+            }
+            Assert.assertEquals( 5010, column.size() );
+            Assert.assertEquals( "row 14990", column.get( 0 ) );
+            Assert.assertEquals( "row 19999", column.get( 5009 ) );
+            Assert.assertTrue( column.stringCount() < 2 * 5010 + 100 );
+        }
+    }
+
+    @Test
+    public void testNumbersAndDatesAsText()
+    {
+        for ( boolean offHeap : new boolean[] { false, true } )
+        {
+            System.out.println( "TEST 1 - Widening whole numbers " + ( offHeap ? "off" : "on" ) + " heap." );
+            ColumnVector column = new ColumnVector( 4, offHeap );
+            column.set( 0, 5 );
+            column.set( 1, 2.5 );
+            Assert.assertEquals( 5L, column.get( 0 ) );
+            Assert.assertEquals( 2.5, column.get( 1 ) );
+            Assert.assertTrue( column.isLong( 0 ) );
+            Assert.assertTrue( column.isNumber( 1 ) );
+
+            System.out.println( "TEST 2 - Numbers written differently " + ( offHeap ? "off" : "on" ) + " heap." );
+            column.set( 2, "2.50" );
+            column.set( 3, "1e3" );
+            Assert.assertEquals( "2.50", column.get( 2 ) );
+            Assert.assertEquals( "1e3", column.get( 3 ) );
+            Assert.assertEquals( 2.5, column.getNumber( 2 ), 0 );
+            Assert.assertEquals( 1000, column.getNumber( 3 ), 0 );
+            column.remove( 0 );
+            column.insert( 0, "7" );
+            Assert.assertEquals( "7", column.get( 0 ) );
+            Assert.assertEquals( 2.5, column.get( 1 ) );
+            Assert.assertEquals( "2.50", column.get( 2 ) );
+            Assert.assertEquals( "1e3", column.get( 3 ) );
+            Assert.assertTrue( column.isLong( 0 ) && column.isNumber( 3 ) );
+
+            System.out.println( "TEST 3 - ISO dates " + ( offHeap ? "off" : "on" ) + " heap." );
+            ColumnVector dates = new ColumnVector( 2, offHeap );
+            dates.set( 0, "2024-01-31" );
+            Assert.assertTrue( dates.isDate( 0 ) );
+            Assert.assertEquals( LocalDate.of( 2024, 1, 31 ).toEpochDay(), dates.getEpochDay( 0 ) );
+            Assert.assertEquals( "2024-01-31", dates.get( 0 ) );
+            dates.set( 1, "2024-02-30" );
+            Assert.assertFalse( dates.isDate( 0 ) );
+            Assert.assertEquals( "2024-01-31", dates.get( 0 ) );
+            Assert.assertEquals( "2024-02-30", dates.get( 1 ) );
+        }
+    }
+
+    @Test
+    public void testMixedValuesInColumn()
+    {
+        DataSheet ds = new DataSheet( 3, StorageMode.COLUMN );
+        ds.setValue( 0, 0, 123 );
+        ds.setValue( 0, 1, "0123" );
+        ds.setValue( 0, 2, 4.5 );
+        Assert.assertEquals( "123", ds.getValue( 0, 0 ) );
+        Assert.assertEquals( "0123", ds.getValue( 0, 1 ) );
+        Assert.assertEquals( "4.5", ds.getValue( 0, 2 ) );
+        ds.setValue( 0, 1, "" );
+        Assert.assertEquals( 2, ds.count() );
+    }
+
+    @Test
+    public void testCellTypesAndExpressions()
+    {
+        DataSheet ds = new DataSheet( 5, StorageMode.COLUMN );
+        ds.setRow( 0, Arrays.asList( 123, 456, 789 ) );
+        ds.setValue( 3, 0, Operation.SUM, 0, 0, 2, 0 );
+        Assert.assertEquals( "123,456,789,1368.0", ds.getRow( 0 ).toString() );
+        ds.setValue( 0, 0, 1000 );
+        Assert.assertEquals( "1000,456,789,2245.0", ds.getRow( 0 ).toString() );
+
+        ds.setCellTypeForColumn( 1, CellType.NUMBER );
+        Assert.assertEquals( CellType.NUMBER, ds.getCellType( 1, 0 ) );
+        Assert.assertEquals( CellType.TEXT, ds.getCellType( 0, 0 ) );
+        Assert.assertEquals( String.format( "%.2f", 456.0 ), ds.getValue( 1, 0 ) );
+    }
+
+    @Test
+    public void testCellsFollowChanges()
+    {
+        for ( StorageMode mode : new StorageMode[] { StorageMode.COLUMN, StorageMode.OFF_HEAP } )
+        {
+            System.out.println( "TEST 1 - A Cell reads the current value with " + mode + " storage." );
+            DataSheet ds = new DataSheet( 2, mode );
+            ds.setValue( 0, 0, "abc" );
+            Cell cell = ds.getCell( 0, 0 );
+            Assert.assertEquals( 0, cell.getValueAsDouble(), 0 );
+            ds.setValue( 0, 0, "42" );
+            Assert.assertEquals( 42, cell.getValueAsDouble(), 0 );
+            Assert.assertEquals( 42, cell.getValueAsInt() );
+            ds.setValue( 0, 0, "1.5" );
+            Assert.assertEquals( 1.5, cell.getValueAsDouble(), 0 );
+            Assert.assertEquals( 0, cell.getValueAsInt() );
+
+            System.out.println( "TEST 2 - A Cell reads the current cell type with " + mode + " storage." );
+            ds.setValue( 0, 0, "20" );
+            Assert.assertEquals( 20, cell.toNumber(), 0 );
+            ds.setCellType( 0, 0, CellType.DATE );
+            Assert.assertTrue( Double.isNaN( cell.toNumber() ) );
+        }
+    }
+}
@@ -60,6 +60,12 @@ public class DataSheetTest
         sub = ds.slice( 0, 0, 2, 2 );
         Assert.assertEquals( "[Name,Capital,Population, Germany,Berlin,83149300, Austria,Vienna,8858775]", sub
                 .toString() );
+        System.out.println( "TEST 3 - Frame after removing rows." );
+        sub = ds.slice( 0, ds.rowCount() - 3, 2, ds.rowCount() - 1 );
+        ds.removeRow( ds.rowCount() - 1 );
+        ds.removeRow( ds.rowCount() - 1 );
+        Assert.assertEquals( 3, sub.size() );
+        Assert.assertSame( sub.get( 2 ), sub.get( 2 ) );
     }
 
     @Test
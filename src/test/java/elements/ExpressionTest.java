@@ -3,8 +3,12 @@ package elements;
 import org.junit.Assert;
 import org.junit.Test;
 import type.Operation;
+import type.StorageMode;
 
 import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.stream.IntStream;
 
 public class ExpressionTest
 {
@@ -25,4 +29,188 @@ public class ExpressionTest
         ds.setValue( 3, 0, "foo" );
         Assert.assertEquals( "1000,456,789,foo", row.toString() );
     }
+
+    @Test
+    public void testDependencies()
+    {
+        testDependencies( new DataSheet() );
+        testDependencies( new DataSheet( 10, StorageMode.COLUMN ) );
+    }
+
+    private void testDependencies( DataSheet ds )
+    {
+        ds.setRow( 0, Arrays.asList( 1, 2, 3 ) );
+        ds.setRow( 1, Arrays.asList( 4, 5, 6 ) );
+        ds.setValue( 3, 0, Operation.SUM, 0, 0, 2, 0 );
+        ds.setValue( 3, 1, Operation.SUM, 0, 1, 2, 1 );
+        ds.setValue( 3, 2, Operation.SUM, 3, 0, 3, 1 );
+        Assert.assertEquals( "21.0", ds.getValue( 3, 2 ) );
+
+        Cell.Expression first = ( Cell.Expression ) ds.getCell( 3, 0 ).getRawValue();
+        Cell.Expression second = ( Cell.Expression ) ds.getCell( 3, 1 ).getRawValue();
+        Cell.Expression total = ( Cell.Expression ) ds.getCell( 3, 2 ).getRawValue();
+        Assert.assertFalse( first.isDirty() );
+        Assert.assertFalse( second.isDirty() );
+        Assert.assertFalse( total.isDirty() );
+
+        System.out.println( "TEST 1 - Only dependent expressions are marked dirty." );
+        ds.setValue( 0, 0, 10 );
+        Assert.assertTrue( first.isDirty() );
+        Assert.assertFalse( second.isDirty() );
+        Assert.assertTrue( total.isDirty() );
+        Assert.assertEquals( "30.0", ds.getValue( 3, 2 ) );
+        Assert.assertFalse( first.isDirty() );
+
+        System.out.println( "TEST 2 - Values outside of the operands do not invalidate." );
+        ds.setValue( 5, 5, 100 );
+        Assert.assertFalse( total.isDirty() );
+
+        System.out.println( "TEST 3 - Replaced expressions are no longer updated." );
+        ds.setValue( 3, 1, 0 );
+        Assert.assertEquals( "15.0", ds.getValue( 3, 2 ) );
+        ds.setValue( 0, 1, 100 );
+        Assert.assertFalse( second.isDirty() );
+        Assert.assertFalse( total.isDirty() );
+    }
+
+    @Test
+    public void testLongChain()
+    {
+        for ( StorageMode mode : StorageMode.values() )
+        {
+            System.out.println( "TEST 1 - A change at the start of a long chain of expressions with " + mode
+                    + " storage." );
+            int length = 5000;
+            DataSheet ds = new DataSheet( 2, mode );
+            ds.setRow( 0, Arrays.asList( 1, 1 ) );
+            ds.setRow( 1, Arrays.asList( "", 1 ) );
+            for ( int i = 2; i < length; i++ )
+            {
+                ds.addRow( Arrays.asList( "", 1 ) );
+            }
+            for ( int i = 1; i < length; i++ )
+            {
+                ds.setValue( 0, i, Operation.SUM, 0, i - 1, 1, i - 1 );
+            }
+            ds.recalculate();
+            Assert.assertEquals( String.valueOf( ( double ) length ), ds.getValue( 0, length - 1 ) );
+            ds.setValue( 0, 0, 3 );
+            ds.recalculate();
+            Assert.assertEquals( String.valueOf( length + 2.0 ), ds.getValue( 0, length - 1 ) );
+        }
+    }
+
+    @Test
+    public void testRecalculate()
+    {
+        DataSheet ds = new DataSheet( 4 );
+        for ( int i = 0; i < 100; i++ )
+        {
+            ds.addRow( Arrays.asList( i, i, i ) );
+        }
+        int last = ds.rowCount();
+        for ( int i = 0; i < last; i++ )
+        {
+            ds.setValue( 3, i, Operation.SUM, 0, i, 2, i );
+        }
+        ds.addRow( Arrays.asList( "", "", "", "" ) );
+        ds.setValue( 3, last, Operation.SUM, 3, 0, 3, last - 1 );
+
+        ds.recalculate( 4 );
+        Assert.assertTrue( ds.rows().stream().map( row -> row.get( 3 ).getRawValue() )
+                             .map( Cell.Expression.class::cast ).noneMatch( Cell.Expression::isDirty ) );
+        Assert.assertEquals( "14850.0", ds.getValue( 3, last ) );
+
+        ds.setValue( 0, 4, 1000 );
+        ds.recalculate( 2 );
+        Assert.assertEquals( "15850.0", ds.getValue( 3, last ) );
+        ds.setValue( 0, 4, 2000 );
+        ds.recalculate( 1 );
+        Assert.assertEquals( "16850.0", ds.getValue( 3, last ) );
+        try
+        {
+            ds.recalculate( 0 );
+            Assert.fail();
+        }
+        catch ( IllegalArgumentException e )
+        {
+            Assert.assertEquals( "The parallelism must be at least 1.", e.getMessage() );
+        }
+
+        for ( int i = 0; i < 50; i++ )
+        {
+            ds.setValue( 0, 4, i );
+            String expected = String.valueOf( 14850.0 + i );
+            Assert.assertTrue( IntStream.range( 0, 8 ).parallel().mapToObj( reader -> ds.getValue( 3, last ) )
+                                        .allMatch( expected::equals ) );
+        }
+    }
+
+    @Test
+    public void testRangeFollowsInserts()
+    {
+        testRangeFollowsInserts( new DataSheet( 3 ) );
+        testRangeFollowsInserts( new DataSheet( 3, StorageMode.COLUMN ) );
+        testRangeFollowsInserts( new DataSheet( 3 ).createRangeIndex() );
+    }
+
+    private void testRangeFollowsInserts( DataSheet ds )
+    {
+        ds.setColumn( 0, Arrays.asList( 1, 2, 3 ) );
+        ds.addRow( Arrays.asList( "" ) );
+        ds.setValue( 1, 3, Operation.SUM, 0, 0, 0, 2 );
+        Assert.assertEquals( "6.0", ds.getValue( 1, 3 ) );
+
+        System.out.println( "TEST 1 - Rows inserted inside of the range extend it." );
+        ds.addRow( 1, Arrays.asList( 10 ) );
+        Assert.assertEquals( "16.0", ds.getValue( 1, 4 ) );
+
+        System.out.println( "TEST 2 - Rows and columns inserted before the range move it." );
+        ds.addRow( 0, Arrays.asList( 100 ) );
+        ds.addColumn( 0, Arrays.asList( "a", "b" ) );
+        Assert.assertEquals( "16.0", ds.getValue( 2, 5 ) );
+
+        System.out.println( "TEST 3 - Rows removed inside of the range shrink it." );
+        ds.removeRow( 2 );
+        Assert.assertEquals( "6.0", ds.getValue( 2, 4 ) );
+        ds.setValue( 1, 2, 20 );
+        Assert.assertEquals( "24.0", ds.getValue( 2, 4 ) );
+        ds.removeColumn( 1 );
+        Assert.assertEquals( "EXPR_ERROR", ds.getValue( 1, 4 ) );
+    }
+
+    @Test
+    public void testStatistics()
+    {
+        testStatistics( new DataSheet( 10 ) );
+        testStatistics( new DataSheet( 10, StorageMode.COLUMN ) );
+    }
+
+    private void testStatistics( DataSheet ds )
+    {
+        ds.setColumn( 0, Arrays.asList( 2, 4, 4, 4, 5, 5, 7, 9, "x", "" ) );
+        Map<Operation, Double> results = ds.aggregate( EnumSet.allOf( Operation.class ), 0, 0, 0, 9 );
+        Assert.assertEquals( 2.0, results.get( Operation.MIN ), 0 );
+        Assert.assertEquals( 9.0, results.get( Operation.MAX ), 0 );
+        Assert.assertEquals( 4.5, results.get( Operation.MEDIAN ), 0 );
+        Assert.assertEquals( 32.0 / 7, results.get( Operation.VARIANCE ), 1e-12 );
+        Assert.assertEquals( Math.sqrt( 32.0 / 7 ), results.get( Operation.STDDEV ), 1e-12 );
+        Assert.assertEquals( 201600.0, results.get( Operation.PRODUCT ), 0 );
+        Assert.assertEquals( 9.0, results.get( Operation.COUNT_NON_EMPTY ), 0 );
+        Assert.assertEquals( 10.0, results.get( Operation.COUNT ), 0 );
+        Assert.assertEquals( 0.0, results.get( Operation.SUM ), 0 );
+
+        System.out.println( "TEST 1 - Statistics as expressions." );
+        ds.setValue( 1, 0, Operation.MEDIAN, 0, 0, 0, 6 );
+        ds.setValue( 1, 1, Operation.COUNT_NON_EMPTY, 0, 0, 0, 9 );
+        Assert.assertEquals( "4.0", ds.getValue( 1, 0 ) );
+        Assert.assertEquals( "9", ds.getValue( 1, 1 ) );
+        ds.setValue( 0, 0, 100 );
+        Assert.assertEquals( "5.0", ds.getValue( 1, 0 ) );
+        Assert.assertNull( ds.aggregate( EnumSet.of( Operation.MIN ), 0, 0, 0, 10 ) );
+
+        System.out.println( "TEST 2 - Sums are compensated." );
+        ds.setColumn( 2, Arrays.asList( 1e16, 1.0, -1e16, 1.0, 0, 0, 0, 0, 0, 0 ) );
+        Assert.assertEquals( 2.0, ds.aggregate( Operation.SUM, 2, 0, 2, 9 ), 0 );
+    }
 }
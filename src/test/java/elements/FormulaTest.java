@@ -0,0 +1,56 @@
+package elements;
+
+import org.junit.Assert;
+import org.junit.Test;
+import type.StorageMode;
+
+import java.util.Arrays;
+
+public class FormulaTest
+{
+    @Test
+    public void testFormulas()
+    {
+        testFormulas( new DataSheet( 10 ) );
+        testFormulas( new DataSheet( 10, StorageMode.COLUMN ) );
+    }
+
+    private void testFormulas( DataSheet ds )
+    {
+        ds.setColumn( 1, Arrays.asList( 1, 2, 3, 4 ) );
+        ds.setColumn( 2, Arrays.asList( 10, 20 ) );
+        ds.setColumn( 3, Arrays.asList( 2, 4, 6 ) );
+
+        System.out.println( "TEST 1 - Arithmetic with references and functions." );
+        ds.setFormula( 0, 0, "=SUM(B1:B4)*C1/AVG(D:D)" );
+        Assert.assertEquals( "25.0", ds.getValue( 0, 0 ) );
+        ds.setFormula( 0, 1, "= -(b1 + $C$2) ^ 2 / 3" );
+        Assert.assertEquals( "-147.0", ds.getValue( 0, 1 ) );
+        ds.setFormula( 0, 2, "=MAX(B1:B4, 7, A1) - MEDIAN(D1:D3)" );
+        Assert.assertEquals( "21.0", ds.getValue( 0, 2 ) );
+        ds.setFormula( 0, 3, "=COUNT(B1:C2)" );
+        Assert.assertEquals( "4", ds.getValue( 0, 3 ) );
+        Assert.assertEquals( "=COUNT(B1:C2)", ds.getFormula( 0, 3 ) );
+
+        System.out.println( "TEST 2 - Formulas follow changes." );
+        ds.setValue( 2, 0, 20 );
+        Assert.assertEquals( "50.0", ds.getValue( 0, 0 ) );
+        ds.addRow( 0, Arrays.asList( "", 100 ) );
+        Assert.assertEquals( "50.0", ds.getValue( 0, 1 ) );
+        ds.setFormula( 0, 0, "=SUM(B:B)" );
+        Assert.assertEquals( "110.0", ds.getValue( 0, 0 ) );
+        ds.setValue( 1, 8, 5 );
+        Assert.assertEquals( "115.0", ds.getValue( 0, 0 ) );
+
+        System.out.println( "TEST 3 - Invalid formulas result in an error." );
+        ds.setFormula( 4, 0, "=SUM(B1:B2" );
+        ds.setFormula( 4, 1, "=FOO(B1)" );
+        ds.setFormula( 4, 2, "=B1:B2" );
+        ds.setFormula( 4, 3, "=B1/0" );
+        ds.setFormula( 4, 4, "=E5" );
+        for ( int i = 0; i < 5; i++ )
+        {
+            Assert.assertEquals( "EXPR_ERROR", ds.getValue( 4, i ) );
+        }
+    }
+}
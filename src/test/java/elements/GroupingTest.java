@@ -0,0 +1,156 @@
+package elements;
+
+import io.CSVReader;
+import org.junit.Assert;
+import org.junit.Test;
+import type.Operation;
+import type.StorageMode;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class GroupingTest
+{
+    @Test
+    public void testAggregate()
+    {
+        for ( StorageMode mode : StorageMode.values() )
+        {
+            DataSheet ds = new DataSheet( new CSVReader( "src/test/resources/data.csv" ).withColumnNames( true ), mode );
+            System.out.println( "TEST 1 - Aggregate the countries by seashore in " + mode + " mode." );
+            DataSheet result = ds.groupBy( 5 ).aggregate( Aggregation.count(), Aggregation.sum( 4 ), Aggregation
+                    .avg( 4 ), Aggregation.max( 2 ), Aggregation.min( 3 ), Aggregation.of( Operation.MEDIAN, 4 ) );
+            Assert.assertEquals( Arrays.asList( "Seashore?", "COUNT", "SUM(GDP)", "AVG(GDP)", "MAX(Population)",
+                    "MIN(Forest Area)", "MEDIAN(GDP)" ), result.columnNames() );
+            Assert.assertEquals( 2, result.rowCount() );
+            Assert.assertEquals( "true", result.getValue( 0, 0 ) );
+            Assert.assertEquals( "8", result.getValue( 1, 0 ) );
+            Assert.assertEquals( 404193.0, result.getRow( 0 ).get( 2 ).getValueAsDouble(), 0 );
+            Assert.assertEquals( 208360000.0, result.getRow( 0 ).get( 4 ).getValueAsDouble(), 0 );
+            Assert.assertEquals( 0.0, result.getRow( 0 ).get( 5 ).getValueAsDouble(), 0 );
+            Assert.assertEquals( 45722.5, result.getRow( 0 ).get( 6 ).getValueAsDouble(), 0 );
+            Assert.assertEquals( "false", result.getValue( 0, 1 ) );
+            Assert.assertEquals( "2", result.getValue( 1, 1 ) );
+            Assert.assertEquals( 66988.0, result.getRow( 1 ).get( 2 ).getValueAsDouble(), 0 );
+            Assert.assertEquals( 33494.0, result.getRow( 1 ).get( 3 ).getValueAsDouble(), 0 );
+
+            System.out.println( "TEST 2 - Columns which are not found result in null in " + mode + " mode." );
+            Assert.assertNull( ds.groupBy( 6 ) );
+            Assert.assertNull( ds.groupBy( 0 ).aggregate( Aggregation.sum( 6 ) ) );
+        }
+    }
+
+    @Test
+    public void testAggregateManyGroups()
+    {
+        for ( StorageMode mode : StorageMode.values() )
+        {
+            System.out.println( "TEST 1 - Aggregate many groups by two columns in " + mode + " mode." );
+            Random random = new Random( 3 );
+            DataSheet ds = new DataSheet( 3, mode );
+            Map<String, double[]> expected = new LinkedHashMap<>();
+            for ( int i = 0; i < 5000; i++ )
+            {
+                List<Object> row = Arrays.asList( random.nextInt( 40 ), "g" + random.nextInt( 30 ), random
+                        .nextInt( 1000 ) );
+                if ( i < 3 )
+                {
+                    ds.setRow( i, row );
+                }
+                else
+                {
+                    ds.addRow( row );
+                }
+                double[] sums = expected.computeIfAbsent( row.get( 0 ) + "," + row.get( 1 ), key -> new double[2] );
+                sums[0]++;
+                sums[1] += ( Integer ) row.get( 2 );
+            }
+            DataSheet result = ds.groupBy( 0, 1 ).aggregate( Aggregation.count(), Aggregation.sum( 2 ) );
+            Assert.assertEquals( expected.size(), result.rowCount() );
+            int group = 0;
+            for ( Map.Entry<String, double[]> entry : expected.entrySet() )
+            {
+                Assert.assertEquals( entry.getKey(), result.getValue( 0, group ) + "," + result.getValue( 1, group ) );
+                Assert.assertEquals( entry.getValue()[0], result.getRow( group ).get( 2 ).getValueAsDouble(), 0 );
+                Assert.assertEquals( entry.getValue()[1], result.getRow( group ).get( 3 ).getValueAsDouble(), 0 );
+                group++;
+            }
+        }
+    }
+
+    @Test
+    public void testCountsAndKeys()
+    {
+        for ( StorageMode mode : StorageMode.values() )
+        {
+            DataSheet ds = new DataSheet( 2, mode );
+            ds.setRow( 0, Arrays.asList( 1, 5 ) );
+            ds.setRow( 1, Arrays.asList( "1", "n/a" ) );
+            ds.addRow( Arrays.asList( -42, "" ) );
+            ds.addRow( Arrays.asList( "-42", 2.5 ) );
+            ds.addRow( Arrays.asList( "01", 3 ) );
+            ds.addRow( Arrays.asList( Long.MIN_VALUE, 4 ) );
+
+            System.out.println( "TEST 1 - COUNT counts every value like a range aggregate in " + mode + " mode." );
+            DataSheet result = ds.groupBy( 0 ).aggregate( Aggregation.of( Operation.COUNT, 1 ), Aggregation.count( 1 ),
+                    Aggregation.of( Operation.COUNT_NON_EMPTY, 1 ) );
+            Assert.assertEquals( ds.aggregate( Operation.COUNT, 1, 0, 1, 1 ), result.getRow( 0 ).get( 1 )
+                    .getValueAsDouble(), 0 );
+            Assert.assertEquals( "2,1,2", result.getValue( 1, 0 ) + "," + result.getValue( 2, 0 ) + "," + result
+                    .getValue( 3, 0 ) );
+            Assert.assertEquals( "2,1,1", result.getValue( 1, 1 ) + "," + result.getValue( 2, 1 ) + "," + result
+                    .getValue( 3, 1 ) );
+
+            System.out.println( "TEST 2 - Numbers and text are grouped by their formatted values in " + mode
+                    + " mode." );
+            Assert.assertEquals( 4, result.rowCount() );
+            Assert.assertEquals( "1,-42,01," + Long.MIN_VALUE, String.join( ",", result.getValue( 0, 0 ), result
+                    .getValue( 0, 1 ), result.getValue( 0, 2 ), result.getValue( 0, 3 ) ) );
+            for ( int i = 0; i < ds.rowCount(); i++ )
+            {
+                Cell cell = ds.getRow( i ).get( 0 );
+                Assert.assertEquals( cell.toString().hashCode(), cell.keyHash() );
+                for ( int j = 0; j < ds.rowCount(); j++ )
+                {
+                    Cell other = ds.getRow( j ).get( 0 );
+                    Assert.assertEquals( cell.toString().equals( other.toString() ), cell.hasSameKey( other ) );
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testParallelGroupByHasSameResult()
+    {
+        for ( StorageMode mode : StorageMode.values() )
+        {
+            System.out.println( "TEST 1 - Parallel groupBy and partition match the sequential ones in " + mode + " mode." );
+            Random random = new Random( 4 );
+            DataSheet ds = new DataSheet( 3, mode );
+            for ( int i = 0; i < 20000; i++ )
+            {
+                List<Object> row = Arrays.asList( "c" + random.nextInt( 100 ), random.nextInt( 1000 ), i );
+                if ( i < 3 )
+                {
+                    ds.setRow( i, row );
+                }
+                else
+                {
+                    ds.addRow( row );
+                }
+            }
+            List<DataSheet> groups = ds.groupBy( row -> row.get( 0 ).toString() );
+            List<DataSheet> parallelGroups = ds.parallelGroupBy( row -> row.get( 0 ).toString() );
+            Assert.assertEquals( 100, groups.size() );
+            Assert.assertEquals( groups.toString(), parallelGroups.toString() );
+            Assert.assertEquals( ds.getValue( 0, 0 ), groups.get( 0 ).getValue( 0, 0 ) );
+            List<DataSheet> partitions = ds.partition( row -> row.get( 1 ).getValueAsInt() < 500 );
+            List<DataSheet> parallelPartitions = ds.parallelPartition( row -> row.get( 1 ).getValueAsInt() < 500 );
+            Assert.assertEquals( 2, partitions.size() );
+            Assert.assertEquals( partitions.toString(), parallelPartitions.toString() );
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package elements;
+
+import org.junit.Assert;
+import org.junit.Test;
+import type.Operation;
+import util.RowBitmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class HashIndexTest
+{
+    @Test
+    public void testLookup()
+    {
+        TestSheets.forEachMode( mode ->
+        {
+            DataSheet ds = TestSheets.newSheet( mode, 2, 10, HashIndexTest::rowOf ).createIndex( 1 );
+            System.out.println( "TEST 1 - Lookups with " + mode + " storage." );
+            Assert.assertEquals( Arrays.asList( 0, 3, 6, 9 ), idsOf( ds.lookup( 1, "k0" ) ) );
+            Assert.assertEquals( Arrays.asList( 1, 4, 7 ), idsOf( ds.lookup( 1, "k1" ) ) );
+            Assert.assertTrue( ds.lookup( 1, "k3" ).isEmpty() );
+            Assert.assertNull( ds.lookup( 3, "k0" ) );
+
+            System.out.println( "TEST 2 - The index follows changes of " + mode + " storage." );
+            ds.setValue( 1, 4, "k3" );
+            Assert.assertEquals( Arrays.asList( 4 ), idsOf( ds.lookup( 1, "k3" ) ) );
+            ds.addRow( Arrays.asList( 10, "k3" ) );
+            Assert.assertEquals( Arrays.asList( 4, 10 ), idsOf( ds.lookup( 1, "k3" ) ) );
+            ds.addRow( 0, Arrays.asList( 11, "k3" ) ).removeRow( 5 );
+            Assert.assertEquals( Arrays.asList( 11, 10 ), idsOf( ds.lookup( 1, "k3" ) ) );
+            ds.setRow( 2, Arrays.asList( 12, "k3" ) );
+            Assert.assertEquals( Arrays.asList( 11, 12, 10 ), idsOf( ds.lookup( 1, "k3" ) ) );
+            ds.sortDescending( 0 );
+            Assert.assertEquals( Arrays.asList( 12, 11, 10 ), idsOf( ds.lookup( 1, "k3" ) ) );
+            ds.setValue( 1, 9, Operation.SUM, 0, 0, 0, 0 );
+            Assert.assertEquals( Arrays.asList( 2 ), idsOf( ds.lookup( 1, ds.getValue( 1, 9 ) ) ) );
+            ds.setValue( 0, 0, 20 );
+            Assert.assertEquals( Arrays.asList( 2 ), idsOf( ds.lookup( 1, ds.getValue( 1, 9 ) ) ) );
+            ds.addColumn( 0, Arrays.asList( "a", "b" ) );
+            Assert.assertEquals( 3, ds.lookup( 2, "k3" ).size() );
+            ds.dropIndex( 2 );
+            Assert.assertEquals( 3, ds.lookup( 2, "k3" ).size() );
+            ds.createIndex( 2 );
+            ds.removeColumn( 2 );
+            Assert.assertTrue( ds.lookup( 1, "k3" ).isEmpty() );
+        } );
+    }
+
+    @Test
+    public void testLookupHasSameResultAsScan()
+    {
+        TestSheets.forEachMode( mode ->
+        {
+            System.out.println( "TEST 1 - Lookups match a scan after random changes with " + mode + " storage." );
+            Random random = new Random( 21 );
+            DataSheet indexed = TestSheets.newSheet( mode, 2, 10, HashIndexTest::rowOf ).createIndex( 1 );
+            DataSheet plain = TestSheets.newSheet( mode, 2, 10, HashIndexTest::rowOf );
+            for ( int i = 0; i < 300; i++ )
+            {
+                int row = random.nextInt( plain.rowCount() );
+                String value = "k" + random.nextInt( 8 );
+                for ( DataSheet ds : Arrays.asList( indexed, plain ) )
+                {
+                    switch ( i % 5 )
+                    {
+                        case 0:
+                            ds.addRow( Arrays.asList( i, value ) );
+                            break;
+                        case 1:
+                            ds.addRow( row, Arrays.asList( i, value ) );
+                            break;
+                        case 2:
+                            ds.removeRow( row );
+                            break;
+                        case 3:
+                            ds.setValue( 1, row, value );
+                            break;
+                        default:
+                            ds.sortAscending( 1, 0 );
+                    }
+                }
+                Assert.assertEquals( idsOf( plain.lookup( 1, value ) ), idsOf( indexed.lookup( 1, value ) ) );
+            }
+        } );
+    }
+
+    @Test
+    public void testSelect()
+    {
+        TestSheets.forEachMode( mode ->
+        {
+            System.out.println( "TEST 1 - Combine selections of several columns with " + mode + " storage." );
+            Random random = new Random( 22 );
+            DataSheet ds = new DataSheet( 3, mode );
+            for ( int i = 0; i < 20000; i++ )
+            {
+                List<Object> row = Arrays.asList( i, "r" + random.nextInt( 5 ), random.nextBoolean() );
+                if ( i < 3 )
+                {
+                    ds.setRow( i, row );
+                }
+                else
+                {
+                    ds.addRow( row );
+                }
+            }
+            RowBitmap scanned = ds.select( 1, "r0", "r3" ).and( ds.select( 2, true ) );
+            ds.createIndex( 1 ).createIndex( 2 );
+            RowBitmap indexed = ds.select( 1, "r0", "r3" ).and( ds.select( 2, true ) );
+            Assert.assertEquals( scanned, indexed );
+            List<Record> rows = ds.rows( indexed );
+            Assert.assertEquals( indexed.cardinality(), rows.size() );
+            for ( Record row : rows )
+            {
+                Assert.assertTrue( row.get( 1 ).toString().equals( "r0" ) || row.get( 1 ).toString().equals( "r3" ) );
+                Assert.assertEquals( "true", row.get( 2 ).toString() );
+            }
+            Assert.assertNull( ds.select( 3, "r0" ) );
+        } );
+    }
+
+    private List<Integer> idsOf( List<Record> rows )
+    {
+        List<Integer> positions = new ArrayList<>();
+        rows.forEach( row -> positions.add( row.get( 0 ).getValueAsInt() ) );
+        return positions;
+    }
+
+    private static List<Object> rowOf( int i )
+    {
+        return Arrays.asList( i, "k" + i % 3 );
+    }
+}
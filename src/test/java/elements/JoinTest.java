@@ -0,0 +1,217 @@
+package elements;
+
+import io.CSVReader;
+import io.CSVWriter;
+import org.junit.Assert;
+import org.junit.Test;
+import type.JoinType;
+import type.SortOrder;
+import type.StorageMode;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+public class JoinTest
+{
+    @Test
+    public void testJoinTypes()
+    {
+        for ( StorageMode mode : StorageMode.values() )
+        {
+            DataSheet orders = new DataSheet( 3, mode );
+            orders.setRow( 0, Arrays.asList( 1, "c2", 10 ) );
+            orders.setRow( 1, Arrays.asList( 2, "c1", 20 ) );
+            orders.setRow( 2, Arrays.asList( 3, "c4", 30 ) );
+            orders.addRow( Arrays.asList( 4, "c2", 40 ) );
+            orders.addRow( Arrays.asList( 5, "", 50 ) );
+            DataSheet customers = new DataSheet( 2, mode );
+            customers.setRow( 0, Arrays.asList( "c1", "Ann" ) );
+            customers.setRow( 1, Arrays.asList( "c2", "Bob" ) );
+            customers.addRow( Arrays.asList( "c3", "Cid" ) );
+
+            System.out.println( "TEST 1 - Inner join in " + mode + " mode." );
+            Assert.assertEquals( Arrays.asList( "1,c2,10,c2,Bob", "2,c1,20,c1,Ann", "4,c2,40,c2,Bob" ),
+                    rowsOf( orders.join( customers, 1, 0, JoinType.INNER ) ) );
+
+            System.out.println( "TEST 2 - Left join in " + mode + " mode." );
+            Assert.assertEquals( Arrays.asList( "1,c2,10,c2,Bob", "2,c1,20,c1,Ann", "3,c4,30,,", "4,c2,40,c2,Bob",
+                    "5,,50,," ), rowsOf( orders.join( customers, 1, 0, JoinType.LEFT ) ) );
+
+            System.out.println( "TEST 3 - Right join in " + mode + " mode." );
+            Assert.assertEquals( Arrays.asList( "1,c2,10,c2,Bob", "2,c1,20,c1,Ann", "4,c2,40,c2,Bob", ",,,c3,Cid" ),
+                    rowsOf( orders.join( customers, 1, 0, JoinType.RIGHT ) ) );
+
+            System.out.println( "TEST 4 - Full join in " + mode + " mode." );
+            Assert.assertEquals( Arrays.asList( "c1,Ann,2,c1,20", "c2,Bob,1,c2,10", "c2,Bob,4,c2,40", "c3,Cid,,,",
+                    ",,3,c4,30", ",,5,,50" ), rowsOf( customers.join( orders, 0, 1, JoinType.FULL ) ) );
+
+            System.out.println( "TEST 5 - Invalid columns result in null in " + mode + " mode." );
+            Assert.assertNull( orders.join( customers, 1, 2, JoinType.INNER ) );
+            Assert.assertNull( orders.join( customers, new int[]{ 0, 1 }, new int[]{ 0 }, JoinType.INNER ) );
+        }
+    }
+
+    @Test
+    public void testJoinMatchesNestedLoops()
+    {
+        for ( StorageMode mode : StorageMode.values() )
+        {
+            System.out.println( "TEST 1 - A join by two columns matches nested loops in " + mode + " mode." );
+            Random random = new Random( 11 );
+            DataSheet small = sheetOf( random, 200, mode );
+            DataSheet large = sheetOf( random, 1000, mode );
+            for ( JoinType joinType : JoinType.values() )
+            {
+                int[] keys = { 0, 1 };
+                Assert.assertEquals( nestedLoops( small, large, joinType ), rowsOf( small
+                        .join( large, keys, keys, joinType ) ) );
+                Assert.assertEquals( nestedLoops( large, small, joinType ), rowsOf( large
+                        .join( small, keys, keys, joinType ) ) );
+            }
+        }
+    }
+
+    @Test
+    public void testMergeJoinHasSameRows()
+    {
+        for ( StorageMode mode : StorageMode.values() )
+        {
+            System.out.println( "TEST 1 - A merge join has the same rows as a hash join in " + mode + " mode." );
+            Random random = new Random( 13 );
+            DataSheet left = sheetOf( random, 300, mode );
+            DataSheet right = sheetOf( random, 500, mode );
+            right.setValue( 1, 7, "" );
+            String before = rowsOf( left ).toString();
+            for ( JoinType joinType : JoinType.values() )
+            {
+                int[] keys = { 1, 0 };
+                List<String> expected = rowsOf( left.join( right, keys, keys, joinType ) );
+                List<String> actual = rowsOf( left.mergeJoin( right, keys, keys, joinType ) );
+                Collections.sort( expected );
+                Collections.sort( actual );
+                Assert.assertEquals( expected, actual );
+            }
+            Assert.assertEquals( before, rowsOf( left ).toString() );
+        }
+    }
+
+    @Test
+    public void testMergeJoinFiles() throws IOException
+    {
+        File leftFile = File.createTempFile( "left", ".csv" );
+        File rightFile = File.createTempFile( "right", ".csv" );
+        File output = File.createTempFile( "joined", ".csv" );
+        try
+        {
+            Random random = new Random( 17 );
+            DataSheet left = sheetOf( random, 300, StorageMode.ROW );
+            DataSheet right = sheetOf( random, 400, StorageMode.ROW );
+            LinkedHashMap<Integer, SortOrder> map = new LinkedHashMap<>();
+            map.put( 0, SortOrder.ASC );
+            map.put( 1, SortOrder.ASC );
+            left.sort( map ).save( new CSVWriter( leftFile ) );
+            right.sort( map ).save( new CSVWriter( rightFile ) );
+            int[] keys = { 0, 1 };
+
+            System.out.println( "TEST 1 - A merge join of sorted files has the same rows as a hash join." );
+            new MergeJoin( keys, keys, JoinType.FULL ).join( new CSVReader( leftFile ), new CSVReader( rightFile ),
+                    new CSVWriter( output ) );
+            List<String> expected = rowsOf( left.join( right, keys, keys, JoinType.FULL ) );
+            List<String> actual = rowsOf( new DataSheet( new CSVReader( output ) ) );
+            Assert.assertEquals( expected.size(), actual.size() );
+            Collections.sort( expected );
+            Collections.sort( actual );
+            Assert.assertEquals( expected, actual );
+
+            System.out.println( "TEST 2 - A merge join of files which are not sorted fails." );
+            left.sortDescending( 2 ).save( new CSVWriter( leftFile ) );
+            try
+            {
+                new MergeJoin( keys, keys, JoinType.INNER ).join( new CSVReader( leftFile ), new CSVReader( rightFile ),
+                        new CSVWriter( output ) );
+                Assert.fail();
+            }
+            catch ( IllegalStateException e )
+            {
+                // expected
+            }
+        }
+        finally
+        {
+            leftFile.delete();
+            rightFile.delete();
+            output.delete();
+        }
+    }
+
+    private DataSheet sheetOf( Random random, int rows, StorageMode mode )
+    {
+        DataSheet ds = new DataSheet( 3, mode );
+        for ( int i = 0; i < rows; i++ )
+        {
+            List<Object> row = Arrays.asList( random.nextInt( 20 ), "k" + random.nextInt( 10 ), i );
+            if ( i < 3 )
+            {
+                ds.setRow( i, row );
+            }
+            else
+            {
+                ds.addRow( row );
+            }
+        }
+        return ds;
+    }
+
+    private List<String> nestedLoops( DataSheet left, DataSheet right, JoinType joinType )
+    {
+        List<String> rows = new ArrayList<>();
+        boolean[] rightMatched = new boolean[right.rowCount()];
+        for ( int i = 0; i < left.rowCount(); i++ )
+        {
+            boolean matched = false;
+            for ( int j = 0; j < right.rowCount(); j++ )
+            {
+                if ( left.getValue( 0, i ).equals( right.getValue( 0, j ) ) && left.getValue( 1, i )
+                        .equals( right.getValue( 1, j ) ) )
+                {
+                    rows.add( rowOf( left, i ) + "," + rowOf( right, j ) );
+                    matched = true;
+                    rightMatched[j] = true;
+                }
+            }
+            if ( !matched && ( joinType == JoinType.LEFT || joinType == JoinType.FULL ) )
+            {
+                rows.add( rowOf( left, i ) + ",,," );
+            }
+        }
+        for ( int j = 0; j < right.rowCount(); j++ )
+        {
+            if ( !rightMatched[j] && ( joinType == JoinType.RIGHT || joinType == JoinType.FULL ) )
+            {
+                rows.add( ",,," + rowOf( right, j ) );
+            }
+        }
+        return rows;
+    }
+
+    private List<String> rowsOf( DataSheet ds )
+    {
+        List<String> rows = new ArrayList<>();
+        for ( int i = 0; i < ds.rowCount(); i++ )
+        {
+            rows.add( rowOf( ds, i ) );
+        }
+        return rows;
+    }
+
+    private String rowOf( DataSheet ds, int rowIndex )
+    {
+        StringBuilder values = new StringBuilder();
+        for ( int i = 0; i < ds.columnCount(); i++ )
+        {
+            values.append( i > 0 ? "," : "" ).append( ds.getValue( i, rowIndex ) );
+        }
+        return values.toString();
+    }
+}
@@ -0,0 +1,106 @@
+package elements;
+
+import org.junit.Assert;
+import org.junit.Test;
+import type.SortOrder;
+import type.StorageMode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+
+public class QueryTest
+{
+    @Test
+    public void testExecute()
+    {
+        TestSheets.forEachMode( mode ->
+        {
+            DataSheet ds = newSheet( mode );
+            System.out.println( "TEST 1 - A query has the result of the eager operations in " + mode + " mode." );
+            List<String> expected = new ArrayList<>();
+            ds.rows().stream().filter( row -> Arrays.asList( "r1", "r3" ).contains( row.get( 1 ).toString() ) )
+                    .filter( row -> row.get( 2 ).toString().equals( "open" ) )
+                    .sorted( Comparator.comparingInt( row -> -row.get( 3 ).getValueAsInt() ) ).limit( 10 )
+                    .forEach( row -> expected.add( row.get( 3 ) + "," + row.get( 0 ) ) );
+            Query query = ds.query().orderBy( 3, SortOrder.DESC ).whereIn( 1, "r1", "r3" ).select( 3, 0, 2 )
+                    .where( row -> row.get( 2 ).toString().equals( "open" ) ).select( 0, 1 ).limit( 10 );
+            Assert.assertEquals( expected, rowsOf( query.execute() ) );
+            ds.createIndex( 1 ).createZoneMap( 3 );
+            Assert.assertEquals( expected, rowsOf( query.execute() ) );
+
+            System.out.println( "TEST 2 - Group, aggregate and filter the groups in " + mode + " mode." );
+            DataSheet groups = ds.groupBy( 1 ).aggregate( Aggregation.count(), Aggregation.sum( 3 ) );
+            LinkedHashMap<Integer, SortOrder> map = new LinkedHashMap<>();
+            map.put( 2, SortOrder.DESC );
+            List<String> expectedGroups = rowsOf( groups.sort( map ) ).subList( 0, 2 );
+            Assert.assertEquals( expectedGroups, rowsOf( ds.query().groupBy( 1 ).aggregate( Aggregation.count(),
+                    Aggregation.sum( 3 ) ).orderBy( map ).limit( 2 ).execute() ) );
+            Assert.assertEquals( rowsOf( ds.query().whereIn( 2, "open" ).execute() ).size(), Integer.parseInt( ds
+                    .query().whereIn( 2, "open" ).aggregate( Aggregation.count() ).execute().getValue( 0, 0 ) ) );
+            Assert.assertEquals( 5, ds.query().groupBy( 1 ).execute().rowCount() );
+
+            System.out.println( "TEST 3 - Filters after a limit see the limited rows in " + mode + " mode." );
+            DataSheet limited = ds.query().limit( 50 ).where( row -> row.get( 2 ).toString().equals( "open" ) )
+                    .execute();
+            Assert.assertEquals( ds.rows().subList( 0, 50 ).stream().filter( row -> row.get( 2 ).toString()
+                    .equals( "open" ) ).count(), limited.rowCount() );
+            Assert.assertEquals( rowsOf( ds ), rowsOf( ds.query().execute() ) );
+
+            System.out.println( "TEST 4 - Invalid columns result in null in " + mode + " mode." );
+            Assert.assertNull( ds.query().whereIn( 4, "x" ).execute() );
+            Assert.assertNull( ds.query().select( 1, 2 ).orderBy( 2, SortOrder.ASC ).execute() );
+            Assert.assertNull( ds.query().groupBy( 1 ).aggregate( Aggregation.sum( 5 ) ).explain() );
+            Assert.assertNull( ds.query().whereBetween( 3, "soon", null ).execute() );
+        } );
+    }
+
+    @Test
+    public void testExplain()
+    {
+        DataSheet ds = newSheet( StorageMode.ROW );
+        Query query = ds.query().orderBy( 0, SortOrder.ASC ).orderBy( 3, SortOrder.DESC ).whereIn( 1, "r1" )
+                .whereBetween( 3, 100, 500 ).where( row -> true ).select( 3, 0 ).select( 1 ).limit( 5 );
+        System.out.println( "TEST 1 - Filters run before the sort and the limit is pushed into it." );
+        Assert.assertEquals( String.join( "\n", "Project [0]", "  TopN 5 [3 DESC, 0 ASC]",
+                "    Filter predicate", "      Filter column 3 BETWEEN 100 AND 500", "        Filter column 1 IN [r1]",
+                "          TableScan", "" ), query.explain() );
+
+        System.out.println( "TEST 2 - Filters read from the indexes of their columns." );
+        ds.createIndex( 1 ).createZoneMap( 3 );
+        Assert.assertEquals( String.join( "\n", "Project [0]", "  TopN 5 [3 DESC, 0 ASC]",
+                "    Filter predicate", "      BitmapAnd", "        IndexScan column 1 IN [r1]",
+                "        ZoneMapScan column 3 BETWEEN 100 AND 500", "" ), query.explain() );
+
+        System.out.println( "TEST 3 - Aggregations and limits separate the stages." );
+        Assert.assertEquals( String.join( "\n", "Filter column 2 BETWEEN 50 AND *", "  Aggregate [COUNT, SUM(3)] by [1]",
+                "    Limit 40", "      ZoneMapScan column 3 BETWEEN * AND 900", "" ), ds.query()
+                .whereBetween( 3, null, 900 ).limit( 40 ).groupBy( 1 ).aggregate( Aggregation.count(), Aggregation
+                        .sum( 3 ) ).whereBetween( 2, 50, null ).explain() );
+    }
+
+    private List<String> rowsOf( DataSheet ds )
+    {
+        List<String> rows = new ArrayList<>();
+        for ( int i = 0; i < ds.rowCount(); i++ )
+        {
+            StringBuilder values = new StringBuilder();
+            for ( int j = 0; j < ds.columnCount(); j++ )
+            {
+                values.append( j > 0 ? "," : "" ).append( ds.getValue( j, i ) );
+            }
+            rows.add( values.toString() );
+        }
+        return rows;
+    }
+
+    private DataSheet newSheet( StorageMode mode )
+    {
+        Random random = new Random( 25 );
+        return TestSheets.newSheet( mode, 4, 2000, i -> Arrays.asList( i, "r" + random.nextInt( 5 ), random
+                .nextBoolean() ? "open" : "closed", random.nextInt( 1000 ) ) );
+    }
+}
@@ -0,0 +1,101 @@
+package elements;
+
+import org.junit.Assert;
+import org.junit.Test;
+import type.Operation;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class RangeIndexTest
+{
+    @Test
+    public void testAggregate()
+    {
+        TestSheets.forEachMode( mode ->
+        {
+            DataSheet ds = TestSheets.newSheet( mode, 10, 10, RangeIndexTest::rowOf ).createRangeIndex();
+            System.out.println( "TEST 1 - Range aggregates with " + mode + " storage." );
+            Assert.assertEquals( 190.0, ds.aggregate( Operation.SUM, 0, 0, 1, 9 ), 0 );
+            Assert.assertEquals( 45.0, ds.aggregate( Operation.SUM, 0, 0, 0, 9 ), 0 );
+            Assert.assertEquals( 14.0, ds.aggregate( Operation.AVG, 1, 3, 1, 5 ), 0 );
+            Assert.assertEquals( 20.0, ds.aggregate( Operation.COUNT, 0, 0, 1, 9 ), 0 );
+            Assert.assertEquals( 0.0, ds.aggregate( Operation.SUM, 0, 0, 2, 9 ), 0 );
+            Assert.assertTrue( Double.isNaN( ds.aggregate( Operation.SUM, 0, 0, 1, 10 ) ) );
+
+            System.out.println( "TEST 2 - The index follows changes of " + mode + " storage." );
+            ds.setValue( 0, 5, 100 );
+            Assert.assertEquals( 140.0, ds.aggregate( Operation.SUM, 0, 0, 0, 9 ), 0 );
+            ds.addRow( 0, Arrays.asList( 1000, 1000 ) ).removeRow( 10 );
+            Assert.assertEquals( 2257.0, ds.aggregate( Operation.SUM, 0, 0, 1, 9 ), 0 );
+            ds.sortAscending( 0 );
+            Assert.assertEquals( 1000.0, ds.aggregate( Operation.SUM, 0, 9, 0, 9 ), 0 );
+            ds.setValue( 2, 0, Operation.SUM, 0, 0, 1, 0 );
+            Assert.assertEquals( 10.0, ds.aggregate( Operation.SUM, 2, 0, 2, 0 ), 0 );
+            ds.setValue( 1, 0, 20 );
+            Assert.assertEquals( 20.0, ds.aggregate( Operation.SUM, 2, 0, 2, 0 ), 0 );
+            ds.addColumn( 0, Arrays.asList( 1, 1, 1 ) );
+            Assert.assertEquals( 3.0, ds.aggregate( Operation.SUM, 0, 0, 0, 2 ), 0 );
+            Assert.assertEquals( 0.0, ds.aggregate( Operation.SUM, 0, 0, 0, 9 ), 0 );
+
+            System.out.println( "TEST 3 - The index gives the same results as the cells of " + mode + " storage." );
+            DataSheet plain = TestSheets.newSheet( mode, 10, 10, RangeIndexTest::rowOf );
+            ds = TestSheets.newSheet( mode, 10, 10, RangeIndexTest::rowOf ).createRangeIndex();
+            plain.apply( cell -> cell.getValueAsInt() * 2 );
+            ds.apply( cell -> cell.getValueAsInt() * 2 );
+            Assert.assertEquals( plain.aggregate( Operation.SUM, 0, 2, 1, 7 ), ds.aggregate( Operation.SUM, 0, 2, 1, 7 ), 0 );
+            Assert.assertEquals( plain.aggregate( Operation.AVG, 1, 0, 1, 9 ), ds.aggregate( Operation.AVG, 1, 0, 1, 9 ), 0 );
+            ds.dropRangeIndex();
+            Assert.assertEquals( plain.aggregate( Operation.SUM, 0, 0, 2, 9 ), ds.aggregate( Operation.SUM, 0, 0, 2, 9 ), 0 );
+        } );
+    }
+
+    @Test
+    public void testIndexFollowsRandomChanges()
+    {
+        TestSheets.forEachMode( mode ->
+        {
+            System.out.println( "TEST 1 - Range aggregates match a scan after random changes with " + mode + " storage." );
+            Random random = new Random( 5 );
+            DataSheet plain = TestSheets.newSheet( mode, 10, 10, RangeIndexTest::rowOf );
+            DataSheet indexed = TestSheets.newSheet( mode, 10, 10, RangeIndexTest::rowOf ).createRangeIndex();
+            for ( int i = 0; i < 300; i++ )
+            {
+                int row = random.nextInt( plain.rowCount() );
+                Object value = random.nextInt( 8 ) == 0 ? "x" : random.nextInt( 100 );
+                for ( DataSheet sheet : Arrays.asList( plain, indexed ) )
+                {
+                    switch ( i % 5 )
+                    {
+                        case 0:
+                            sheet.addRow( Arrays.asList( value, i, "x" ) );
+                            break;
+                        case 1:
+                            sheet.addRow( row, Arrays.asList( i, value, "x" ) );
+                            break;
+                        case 2:
+                            sheet.removeRow( row );
+                            break;
+                        default:
+                            sheet.setValue( i % 2, row, value );
+                    }
+                }
+                int fromRow = random.nextInt( plain.rowCount() );
+                int toRow = fromRow + random.nextInt( plain.rowCount() - fromRow );
+                for ( Operation operation : Arrays.asList( Operation.SUM, Operation.AVG, Operation.COUNT ) )
+                {
+                    Assert.assertEquals( plain.aggregate( operation, 0, fromRow, 1, toRow ), indexed
+                            .aggregate( operation, 0, fromRow, 1, toRow ), 1e-9 );
+                    Assert.assertEquals( plain.aggregate( operation, 1, fromRow, 1, toRow ), indexed
+                            .aggregate( operation, 1, fromRow, 1, toRow ), 1e-9 );
+                }
+            }
+        } );
+    }
+
+    private static List<Object> rowOf( int i )
+    {
+        return Arrays.asList( i, i + 10, "x" );
+    }
+}
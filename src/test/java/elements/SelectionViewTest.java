@@ -0,0 +1,75 @@
+package elements;
+
+import org.junit.Assert;
+import org.junit.Test;
+import type.Operation;
+
+import java.util.Arrays;
+
+public class SelectionViewTest
+{
+    @Test
+    public void testWhere()
+    {
+        TestSheets.forEachMode( mode ->
+        {
+            DataSheet ds = TestSheets.newSheet( mode, 2, 100, i -> Arrays.asList( i, i ) );
+            System.out.println( "TEST 1 - Chained filters with " + mode + " storage." );
+            SelectionView even = ds.where( row -> row.get( 0 ).getValueAsInt() % 2 == 0 );
+            SelectionView small = even.where( row -> row.get( 0 ).getValueAsInt() < 10 );
+            Assert.assertEquals( 50, even.rowCount() );
+            Assert.assertEquals( 5, small.rowCount() );
+            Assert.assertEquals( "8", small.getValue( 0, 4 ) );
+            Assert.assertEquals( 8, small.getSourceIndex( 4 ) );
+            Assert.assertEquals( 20, small.aggregate( Operation.SUM, 0 ), 0 );
+            Assert.assertEquals( 4, small.aggregate( Operation.AVG, 1 ), 0 );
+            Assert.assertTrue( Double.isNaN( small.aggregate( Operation.SUM, 3 ) ) );
+            Assert.assertArrayEquals( new int[]{ 0, 2, 4, 6, 8 }, small.selection().toArray() );
+
+            System.out.println( "TEST 2 - Views follow changes with " + mode + " storage." );
+            ds.setValue( 0, 1, 0 ).addRow( 0, Arrays.asList( 100, "x" ) ).removeRow( 11 );
+            Assert.assertEquals( 6, small.rowCount() );
+            Assert.assertArrayEquals( new int[]{ 1, 2, 3, 5, 7, 9 }, small.selection().toArray() );
+            Assert.assertEquals( 51, even.rowCount() );
+
+            System.out.println( "TEST 3 - Materialize a view with " + mode + " storage." );
+            DataSheet copy = small.toDataSheet();
+            Assert.assertEquals( small.rows().toString(), copy.rows().toString() );
+            Assert.assertEquals( ds.columnNames(), copy.columnNames() );
+            ds.sortDescending( 0 );
+            Assert.assertEquals( "0", copy.getValue( 0, 0 ) );
+            Assert.assertEquals( "0", small.getValue( 0, 5 ) );
+        } );
+    }
+
+    @Test
+    public void testSlice()
+    {
+        TestSheets.forEachMode( mode ->
+        {
+            DataSheet ds = TestSheets.newSheet( mode, 2, 100, i -> Arrays.asList( i, i ) );
+            System.out.println( "TEST 1 - Slices of the DataSheet and of views with " + mode + " storage." );
+            SelectionView slice = ds.slice( 10, 29 );
+            Assert.assertEquals( 20, slice.rowCount() );
+            Assert.assertEquals( "10", slice.getValue( 0, 0 ) );
+            SelectionView odd = slice.where( row -> row.get( 0 ).getValueAsInt() % 2 == 1 );
+            SelectionView tail = odd.slice( 8, 20 );
+            Assert.assertEquals( 2, tail.rowCount() );
+            Assert.assertEquals( Arrays.asList( "27", "29" ), Arrays.asList( tail.getValue( 0, 0 ), tail
+                    .getValue( 0, 1 ) ) );
+            Assert.assertEquals( 3, ds.slice( 97, 200 ).rowCount() );
+            Assert.assertNull( ds.slice( 5, 4 ) );
+            Assert.assertNull( slice.slice( -1, 4 ) );
+
+            System.out.println( "TEST 2 - Slices follow removed rows with " + mode + " storage." );
+            for ( int i = 0; i < 85; i++ )
+            {
+                ds.removeRow( 0 );
+            }
+            Assert.assertEquals( 5, slice.rowCount() );
+            Assert.assertEquals( "95", slice.getValue( 0, 0 ) );
+            Assert.assertEquals( 0, tail.rowCount() );
+            Assert.assertEquals( 0, ds.slice( 20, 30 ).rowCount() );
+        } );
+    }
+}
@@ -1,11 +1,21 @@
 package elements;
 
 import io.CSVReader;
+import io.CSVWriter;
 import org.junit.Assert;
 import org.junit.Test;
+import type.CellType;
 import type.SortOrder;
+import type.StorageMode;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
 
 public class SortingTest
 {
@@ -148,4 +158,305 @@ public class SortingTest
         Assert.assertEquals( expected, ds.toString() );
     }
 
+    @Test
+    public void testTypedKeys()
+    {
+        for ( StorageMode mode : StorageMode.values() )
+        {
+            DataSheet ds = new DataSheet( 5, mode );
+            ds.setColumn( 0, Arrays.asList( 10.5, 2.25, 10.25, 2.25, -1.0 ) );
+            ds.setColumn( 1, Arrays.asList( "a", "b", "c", "d", "e" ) );
+            ds.setColumn( 2, Arrays.asList( "06062008", "010115", "112018", "9999", "06062008" ) );
+            ds.setCellTypeForColumn( 0, CellType.NUMBER );
+            ds.setCellTypeForColumn( 2, CellType.DATE );
+
+            System.out.println( "TEST 1 - Numbers are sorted by value regardless of their format." );
+            ds.sortAscending( 0 );
+            Assert.assertEquals( "e,b,d,c,a", columnOf( ds, 1 ) );
+
+            System.out.println( "TEST 2 - Equal keys keep their order." );
+            ds.sortDescending( 0 );
+            Assert.assertEquals( "a,c,b,d,e", columnOf( ds, 1 ) );
+
+            System.out.println( "TEST 3 - Dates are sorted by day, ties by the next column." );
+            LinkedHashMap<Integer, SortOrder> map = new LinkedHashMap<>();
+            map.put( 2, SortOrder.ASC );
+            map.put( 1, SortOrder.DESC );
+            ds.sort( map );
+            Assert.assertEquals( "d,e,a,b,c", columnOf( ds, 1 ) );
+        }
+    }
+
+    @Test
+    public void testParallelSortHasSameResult()
+    {
+        for ( StorageMode mode : StorageMode.values() )
+        {
+            Random random = new Random( 42 );
+            DataSheet sequential = new DataSheet( 3, mode ).setParallelSortThreshold( Integer.MAX_VALUE );
+            DataSheet parallel = new DataSheet( 3, mode ).setParallelSortThreshold( 0 );
+            for ( int i = 0; i < 40000; i++ )
+            {
+                List<Object> row = Arrays.asList( random.nextInt( 100 ), "v" + random.nextInt( 50 ), i );
+                if ( i < 3 )
+                {
+                    sequential.setRow( i, row );
+                    parallel.setRow( i, row );
+                }
+                else
+                {
+                    sequential.addRow( i, row );
+                    parallel.addRow( i, row );
+                }
+            }
+            System.out.println( "TEST 1 - Parallel and sequential sort result in the same order." );
+            sequential.sortDescending( 0, 1 );
+            parallel.sortDescending( 0, 1 );
+            Assert.assertEquals( columnOf( sequential, 2 ), columnOf( parallel, 2 ) );
+        }
+    }
+
+    @Test
+    public void testRadixSortHasSameResult()
+    {
+        String[] texts = { "1", "1.0", "1.00", "-3", "0.1", "0.10000000000000000001", "0", "-0.0", "1e3", "-1000" };
+        for ( StorageMode mode : StorageMode.values() )
+        {
+            Random random = new Random( 3 );
+            DataSheet radix = new DataSheet( 4, mode );
+            DataSheet merge = new DataSheet( 4, mode );
+            for ( int i = 0; i < 1000; i++ )
+            {
+                List<Object> row = Arrays.asList( random.nextInt( 200 ) - 100.5, texts[random.nextInt( texts.length )],
+                        String.format( "%02d%02d%04d", random.nextInt( 28 ) + 1, random.nextInt( 12 ) + 1, 1990 + random
+                                .nextInt( 30 ) ), i );
+                if ( i < 4 )
+                {
+                    radix.setRow( i, row );
+                    merge.setRow( i, row );
+                }
+                else
+                {
+                    radix.addRow( i, row );
+                    merge.addRow( i, row );
+                }
+            }
+            for ( DataSheet ds : Arrays.asList( radix, merge ) )
+            {
+                ds.setCellTypeForColumn( 0, CellType.NUMBER );
+                ds.setCellTypeForColumn( 2, CellType.DATE );
+            }
+            System.out.println( "TEST 1 - Sorting by a single numeric column has the same result as a comparison sort." );
+            for ( int column = 0; column < 3; column++ )
+            {
+                for ( SortOrder order : SortOrder.values() )
+                {
+                    radix.sortAscending( 3 );
+                    if ( order == SortOrder.ASC )
+                    {
+                        radix.sortAscending( column );
+                    }
+                    else
+                    {
+                        radix.sortDescending( column );
+                    }
+                    LinkedHashMap<Integer, SortOrder> map = new LinkedHashMap<>();
+                    map.put( column, order );
+                    map.put( 3, SortOrder.ASC );
+                    merge.sort( map );
+                    Assert.assertEquals( columnOf( merge, 3 ), columnOf( radix, 3 ) );
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testTopNHasSameResult()
+    {
+        for ( StorageMode mode : StorageMode.values() )
+        {
+            System.out.println( "TEST 1 - The top and bottom rows match a full sort in " + mode + " mode." );
+            Random random = new Random( 5 );
+            DataSheet ds = new DataSheet( 3, mode );
+            for ( int i = 0; i < 2000; i++ )
+            {
+                List<Object> row = Arrays.asList( random.nextInt( 50 ), "k" + random.nextInt( 7 ), i );
+                if ( i < 3 )
+                {
+                    ds.setRow( i, row );
+                }
+                else
+                {
+                    ds.addRow( row );
+                }
+            }
+            String before = columnOf( ds, 2 );
+            LinkedHashMap<Integer, SortOrder> map = new LinkedHashMap<>();
+            map.put( 1, SortOrder.DESC );
+            map.put( 0, SortOrder.ASC );
+            DataSheet top = ds.topN( 100, map );
+            DataSheet bottom = ds.bottomN( 100, map );
+            Assert.assertEquals( before, columnOf( ds, 2 ) );
+            ds.sort( map );
+            List<String> sorted = Arrays.asList( columnOf( ds, 2 ).split( "," ) );
+            Assert.assertEquals( String.join( ",", sorted.subList( 0, 100 ) ), columnOf( top, 2 ) );
+            Assert.assertEquals( String.join( ",", sorted.subList( 1900, 2000 ) ), columnOf( bottom, 2 ) );
+            Assert.assertEquals( 2000, ds.topN( 5000, map ).rowCount() );
+            Assert.assertNull( ds.topN( 0, map ) );
+            top.setValue( 2, 0, "changed" );
+            Assert.assertEquals( sorted.get( 0 ), ds.getValue( 2, 0 ) );
+        }
+    }
+
+    @Test
+    public void testSortedViewFollowsChanges()
+    {
+        for ( StorageMode mode : StorageMode.values() )
+        {
+            System.out.println( "TEST 1 - A sorted view matches a full sort after changes in " + mode + " mode." );
+            Random random = new Random( 9 );
+            DataSheet ds = new DataSheet( 3, mode );
+            for ( int i = 0; i < 500; i++ )
+            {
+                List<Object> row = Arrays.asList( random.nextInt( 20 ), "k" + random.nextInt( 5 ), i );
+                if ( i < 3 )
+                {
+                    ds.setRow( i, row );
+                }
+                else
+                {
+                    ds.addRow( row );
+                }
+            }
+            String before = columnOf( ds, 2 );
+            LinkedHashMap<Integer, SortOrder> map = new LinkedHashMap<>();
+            map.put( 0, SortOrder.DESC );
+            map.put( 1, SortOrder.ASC );
+            SheetView view = ds.sortedView( map );
+            Assert.assertEquals( columnOf( ds.topN( 500, map ), 2 ), columnOf( view, 2 ) );
+            Assert.assertEquals( before, columnOf( ds, 2 ) );
+            for ( int i = 0; i < 200; i++ )
+            {
+                int row = random.nextInt( ds.rowCount() );
+                switch ( i % 4 )
+                {
+                    case 0:
+                        ds.addRow( row, Arrays.asList( random.nextInt( 20 ), "k" + random.nextInt( 5 ), 500 + i ) );
+                        break;
+                    case 1:
+                        ds.removeRow( row );
+                        break;
+                    case 2:
+                        ds.setValue( 0, row, random.nextInt( 20 ) );
+                        break;
+                    default:
+                        ds.setValue( 1, row, "k" + random.nextInt( 5 ) );
+                }
+                Assert.assertEquals( columnOf( ds.topN( ds.rowCount(), map ), 2 ), columnOf( view, 2 ) );
+            }
+
+            System.out.println( "TEST 2 - A sorted view follows sorting the DataSheet in " + mode + " mode." );
+            ds.sortAscending( 2 );
+            Assert.assertEquals( columnOf( ds.topN( ds.rowCount(), map ), 2 ), columnOf( view, 2 ) );
+
+            System.out.println( "TEST 3 - A sorted view follows many changes between two reads in " + mode + " mode." );
+            for ( int i = 0; i < 40; i++ )
+            {
+                for ( int j = 0; j < 10; j++ )
+                {
+                    int row = random.nextInt( ds.rowCount() );
+                    switch ( random.nextInt( 4 ) )
+                    {
+                        case 0:
+                            ds.addRow( Arrays.asList( random.nextInt( 20 ), "k" + random.nextInt( 5 ), 1000 + i ) );
+                            break;
+                        case 1:
+                            ds.removeRow( ds.rowCount() - 1 );
+                            break;
+                        case 2:
+                            ds.setValue( 0, row, random.nextInt( 20 ) );
+                            break;
+                        default:
+                            ds.setValue( 1, row, "k" + random.nextInt( 5 ) );
+                    }
+                }
+                Assert.assertEquals( columnOf( ds.topN( ds.rowCount(), map ), 2 ), columnOf( view, 2 ) );
+            }
+
+            System.out.println( "TEST 4 - A sorted view follows inserted and removed columns in " + mode + " mode." );
+            ds.addColumn( 0, Collections.nCopies( ds.rowCount(), "x" ) );
+            LinkedHashMap<Integer, SortOrder> shifted = new LinkedHashMap<>();
+            shifted.put( 1, SortOrder.DESC );
+            shifted.put( 2, SortOrder.ASC );
+            Assert.assertEquals( columnOf( ds.topN( ds.rowCount(), shifted ), 3 ), columnOf( view, 3 ) );
+            ds.removeColumn( 0 );
+            ds.removeColumn( 0 );
+            LinkedHashMap<Integer, SortOrder> remaining = new LinkedHashMap<>();
+            remaining.put( 0, SortOrder.ASC );
+            Assert.assertEquals( columnOf( ds.topN( ds.rowCount(), remaining ), 1 ), columnOf( view, 1 ) );
+            ds.removeColumn( 0 );
+            Assert.assertEquals( columnOf( ds, 0 ), columnOf( view, 0 ) );
+            view.close();
+        }
+    }
+
+    @Test
+    public void testExternalSortHasSameResult() throws IOException
+    {
+        File input = File.createTempFile( "sorting", ".csv" );
+        File output = File.createTempFile( "sorted", ".csv" );
+        try
+        {
+            Random random = new Random( 7 );
+            List<List<String>> lines = new ArrayList<>();
+            lines.add( Arrays.asList( "Number", "Text", "Position" ) );
+            for ( int i = 0; i < 300; i++ )
+            {
+                lines.add( Arrays.asList( String.valueOf( random.nextInt( 20 ) ), "v" + random.nextInt( 5 ), String
+                        .valueOf( i ) ) );
+            }
+            new CSVWriter( input ).writeCSV( lines );
+            LinkedHashMap<Integer, SortOrder> map = new LinkedHashMap<>();
+            map.put( 1, SortOrder.DESC );
+            map.put( 0, SortOrder.ASC );
+            DataSheet expected = new DataSheet( new CSVReader( input ).withColumnNames( true ) ).sort( map );
+
+            System.out.println( "TEST 1 - An external sort with many runs has the same result as the sort in memory." );
+            new ExternalSort( map ).withMemoryBudget( 1 )
+                                   .sort( new CSVReader( input ).withColumnNames( true ), new CSVWriter( output ) );
+            DataSheet sorted = new DataSheet( new CSVReader( output ).withColumnNames( true ) );
+            Assert.assertEquals( expected.columnNames(), sorted.columnNames() );
+            Assert.assertEquals( columnOf( expected, 2 ), columnOf( sorted, 2 ) );
+
+            System.out.println( "TEST 2 - An external sort can result in a DataSheet." );
+            sorted = new ExternalSort( map ).withMemoryBudget( 2000 )
+                                            .sort( new CSVReader( input ).withColumnNames( true ), StorageMode.COLUMN );
+            Assert.assertEquals( columnOf( expected, 2 ), columnOf( sorted, 2 ) );
+        }
+        finally
+        {
+            input.delete();
+            output.delete();
+        }
+    }
+
+    private String columnOf( SheetView view, int columnIndex )
+    {
+        StringBuilder values = new StringBuilder();
+        for ( int i = 0; i < view.rowCount(); i++ )
+        {
+            values.append( i > 0 ? "," : "" ).append( view.getValue( columnIndex, i ) );
+        }
+        return values.toString();
+    }
+
+    private String columnOf( DataSheet ds, int columnIndex )
+    {
+        StringBuilder values = new StringBuilder();
+        for ( int i = 0; i < ds.rowCount(); i++ )
+        {
+            values.append( i > 0 ? "," : "" ).append( ds.getValue( columnIndex, i ) );
+        }
+        return values.toString();
+    }
 }
@@ -0,0 +1,58 @@
+package elements;
+
+import type.StorageMode;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Creates the DataSheets of the tests and runs the tests with each storage mode.
+ */
+final class TestSheets
+{
+    private TestSheets()
+    {
+
+    }
+
+    /**
+     * Runs a test once with each storage mode.
+     *
+     * @param test the test
+     */
+    static void forEachMode( Consumer<StorageMode> test )
+    {
+        for ( StorageMode mode : StorageMode.values() )
+        {
+            test.accept( mode );
+        }
+    }
+
+    /**
+     * Creates a DataSheet and fills it row by row. The first rows replace the empty rows of the new DataSheet, the
+     * others are added.
+     *
+     * @param mode    the storage mode
+     * @param columns the number of columns of the new DataSheet
+     * @param rows    the number of rows to fill
+     * @param row     the values of a row by its index
+     * @return the DataSheet
+     */
+    static DataSheet newSheet( StorageMode mode, int columns, int rows, IntFunction<List<?>> row )
+    {
+        DataSheet ds = new DataSheet( columns, mode );
+        for ( int i = 0; i < rows; i++ )
+        {
+            if ( i < columns )
+            {
+                ds.setRow( i, row.apply( i ) );
+            }
+            else
+            {
+                ds.addRow( row.apply( i ) );
+            }
+        }
+        return ds;
+    }
+}
@@ -0,0 +1,181 @@
+package elements;
+
+import org.junit.Assert;
+import org.junit.Test;
+import type.CellType;
+import type.Operation;
+import type.StorageMode;
+import util.RowBitmap;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Random;
+
+public class ZoneMapTest
+{
+    private static final LocalDate START = LocalDate.of( 2025, 1, 1 );
+
+    @Test
+    public void testSelectRange()
+    {
+        TestSheets.forEachMode( mode ->
+        {
+            DataSheet ds = newSheet( mode, 5000 );
+            DataSheet zoned = newSheet( mode, 5000 ).createZoneMap( 0 ).createZoneMap( 1 );
+            System.out.println( "TEST 1 - Ranges of dates and numbers with " + mode + " storage." );
+            RowBitmap days = zoned.selectRange( 0, "2026-01-01", LocalDate.of( 2026, 1, 31 ) );
+            Assert.assertArrayEquals( rows( 730, 792 ), days.toArray() );
+            Assert.assertEquals( days, ds.selectRange( 0, "2026-01-01", LocalDate.of( 2026, 1, 31 ) ) );
+            Assert.assertEquals( ds.selectRange( 1, 100, 200.5 ), zoned.selectRange( 1, 100, 200.5 ) );
+            Assert.assertEquals( ds.selectRange( 0, null, "2025-01-03" ), zoned.selectRange( 0, null, "2025-01-03" ) );
+            Assert.assertEquals( 5000 - 715, zoned.selectRange( 1, null, null ).cardinality() );
+            Assert.assertNull( zoned.selectRange( 0, "today", null ) );
+            Assert.assertNull( zoned.selectRange( 2, 0, 1 ) );
+
+            System.out.println( "TEST 2 - Aggregate over a range with " + mode + " storage." );
+            RowBitmap january = zoned.selectRange( 0, "2026-01-01", "2026-01-31" );
+            double sum = 0;
+            int count = 0;
+            for ( int row : january.toArray() )
+            {
+                if ( !zoned.getValue( 1, row ).isEmpty() )
+                {
+                    sum += zoned.getRow( row ).get( 1 ).getValueAsDouble();
+                    count++;
+                }
+            }
+            Assert.assertEquals( sum, zoned.aggregate( Operation.SUM, 1, january ), 1e-9 );
+            Assert.assertEquals( count, zoned.aggregate( Operation.COUNT, 1, january ), 0 );
+            Assert.assertTrue( Double.isNaN( zoned.aggregate( Operation.SUM, 2, january ) ) );
+
+            System.out.println( "TEST 3 - Aggregate the values inside of a range with " + mode + " storage." );
+            for ( Operation operation : Operation.values() )
+            {
+                double expected = zoned.aggregate( operation, 1, zoned.selectRange( 1, 100, 1500 ) );
+                Assert.assertEquals( expected, zoned.aggregateBetween( operation, 1, 100, 1500 ), 1e-9 * Math
+                        .abs( expected ) );
+                Assert.assertEquals( expected, ds.aggregateBetween( operation, 1, 100, 1500 ), 1e-9 * Math
+                        .abs( expected ) );
+            }
+            Assert.assertEquals( 0, zoned.aggregateBetween( Operation.COUNT, 1, "2026-01-01", "2026-01-31" ), 0 );
+            Assert.assertTrue( Double.isNaN( zoned.aggregateBetween( Operation.SUM, 1, "today", null ) ) );
+        } );
+    }
+
+    @Test
+    public void testZoneMapFollowsChanges()
+    {
+        TestSheets.forEachMode( mode ->
+        {
+            System.out.println( "TEST 1 - Ranges match a scan after random changes with " + mode + " storage." );
+            Random random = new Random( 23 );
+            DataSheet ds = newSheet( mode, 1500 );
+            DataSheet zoned = newSheet( mode, 1500 ).createZoneMap( 1 );
+            for ( int i = 0; i < 90; i++ )
+            {
+                int row = random.nextInt( ds.rowCount() );
+                Object value = random.nextInt( 10 ) == 0 ? "n/a" : random.nextInt( 5000 ) / 2.0;
+                for ( DataSheet sheet : Arrays.asList( ds, zoned ) )
+                {
+                    switch ( i % 6 )
+                    {
+                        case 0:
+                            sheet.addRow( Arrays.asList( "2030-01-01", value ) );
+                            break;
+                        case 1:
+                            sheet.addRow( row, Arrays.asList( "2030-01-01", value ) );
+                            break;
+                        case 2:
+                            sheet.removeRow( row );
+                            break;
+                        case 3:
+                            sheet.setValue( 1, row, value );
+                            break;
+                        case 4:
+                            sheet.setValue( 1, row, Operation.SUM, 1, 0, 1, 1 );
+                            sheet.setValue( 1, 0, value );
+                            break;
+                        default:
+                            sheet.sortDescending( 1 );
+                    }
+                }
+                int from = random.nextInt( 1000 );
+                int to = from + random.nextInt( 500 );
+                Assert.assertEquals( ds.selectRange( 1, from, to ), zoned.selectRange( 1, from, to ) );
+                int fromRow = random.nextInt( ds.rowCount() );
+                int toRow = Math.min( ds.rowCount() - 1, fromRow + random.nextInt( 3000 ) );
+                for ( Operation operation : Operation.values() )
+                {
+                    double expected = ds.aggregate( operation, 1, fromRow, 1, toRow );
+                    Assert.assertEquals( expected, zoned.aggregate( operation, 1, fromRow, 1, toRow ), 1e-9 * Math
+                            .abs( expected ) );
+                    expected = ds.aggregate( EnumSet.of( operation ), 0, fromRow, 1, toRow ).get( operation );
+                    Assert.assertEquals( expected, zoned.aggregate( EnumSet.of( operation ), 0, fromRow, 1, toRow )
+                                                        .get( operation ), 1e-9 * Math.abs( expected ) );
+                    expected = ds.aggregateBetween( operation, 1, from, to );
+                    Assert.assertEquals( expected, zoned.aggregateBetween( operation, 1, from, to ), 1e-9 * Math
+                            .abs( expected ) );
+                }
+            }
+        } );
+    }
+
+    @Test
+    public void testZoneMapFollowsColumns()
+    {
+        TestSheets.forEachMode( mode ->
+        {
+            System.out.println( "TEST 1 - Zone maps follow inserted and removed columns with " + mode + " storage." );
+            DataSheet ds = newSheet( mode, 20 ).createZoneMap( 1 );
+            Assert.assertEquals( 9, ds.selectRange( 1, 0, 5 ).cardinality() );
+            ds.addColumn( 0, Arrays.asList( "a", "b" ) );
+            Assert.assertEquals( 9, ds.selectRange( 2, 0, 5 ).cardinality() );
+            ds.addRow( Arrays.asList( "c", "2030-01-01", 4 ) );
+            Assert.assertEquals( 10, ds.selectRange( 2, 0, 5 ).cardinality() );
+            ds.removeColumn( 2 );
+            ds.addRow( Arrays.asList( "d", "2030-01-02" ) );
+            Assert.assertEquals( 22, ds.rowCount() );
+            Assert.assertNull( ds.selectRange( 2, 0, 5 ) );
+            ds.createZoneMap( 1 );
+            Assert.assertEquals( 6, ds.selectRange( 1, "2025-01-01", "2025-01-03" ).cardinality() );
+        } );
+    }
+
+    @Test
+    public void testDateKeys()
+    {
+        TestSheets.forEachMode( mode ->
+        {
+            System.out.println( "TEST 1 - Keys of dates and numbers of the DATE type with " + mode + " storage." );
+            DataSheet ds = TestSheets.newSheet( mode, 1, 4, i -> Arrays.asList( "2024-01-31", "5", "123", "n/a" )
+                                                                       .subList( i, i + 1 ) )
+                                     .setCellTypeForColumn( 0, CellType.DATE );
+            double[] keys = { LocalDate.of( 2024, 1, 31 ).toEpochDay(), LocalDate.now().withDayOfMonth( 5 )
+                    .toEpochDay(), 123, Double.NaN };
+            double[] numbers = { Double.NaN, Double.NaN, 123, Double.NaN };
+            for ( int row = 0; row < keys.length; row++ )
+            {
+                Cell cell = ds.getCell( 0, row );
+                for ( int read = 0; read < 2; read++ )
+                {
+                    Assert.assertEquals( keys[row], ZoneMap.keyOf( cell ), 0 );
+                    Assert.assertEquals( numbers[row], cell.toNumber(), 0 );
+                }
+            }
+        } );
+    }
+
+    private int[] rows( int from, int to )
+    {
+        int[] rows = new int[to - from];
+        Arrays.setAll( rows, i -> from + i );
+        return rows;
+    }
+
+    private DataSheet newSheet( StorageMode mode, int rows )
+    {
+        return TestSheets.newSheet( mode, 2, rows, i -> Arrays.asList( START.plusDays( i / 2 ).toString(), i % 7 == 0
+                ? "" : i / 2.0 ) ).setCellTypeForColumn( 0, CellType.DATE );
+    }
+}
@@ -0,0 +1,83 @@
+package util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+public class RowBitmapTest
+{
+    @Test
+    public void testAddAndRemove()
+    {
+        System.out.println( "TEST 1 - Rows are added and removed like in a set, across array and bitmap containers." );
+        Random random = new Random( 22 );
+        RowBitmap bitmap = new RowBitmap();
+        TreeSet<Integer> expected = new TreeSet<>();
+        for ( int i = 0; i < 60000; i++ )
+        {
+            int row = random.nextInt( 200000 );
+            if ( i % 3 == 2 )
+            {
+                Assert.assertEquals( expected.remove( row ), bitmap.remove( row ) );
+            }
+            else
+            {
+                Assert.assertEquals( expected.add( row ), bitmap.add( row ) );
+            }
+        }
+        Assert.assertEquals( expected.size(), bitmap.cardinality() );
+        Assert.assertArrayEquals( expected.stream().mapToInt( Integer::intValue ).toArray(), bitmap.toArray() );
+        Assert.assertTrue( bitmap.contains( expected.first() ) );
+        Assert.assertFalse( bitmap.contains( -1 ) );
+
+        System.out.println( "TEST 2 - Removing all rows leaves an empty bitmap." );
+        expected.forEach( bitmap::remove );
+        Assert.assertTrue( bitmap.isEmpty() );
+        Assert.assertEquals( "[]", bitmap.toString() );
+    }
+
+    @Test
+    public void testBitwiseOperations()
+    {
+        Random random = new Random( 23 );
+        for ( int density : new int[]{ 2, 30, 1000 } )
+        {
+            System.out.println( "TEST 1 - and, or and andNot match sets with one row in " + density + "." );
+            RowBitmap first = new RowBitmap();
+            RowBitmap second = new RowBitmap();
+            TreeSet<Integer> firstRows = new TreeSet<>();
+            TreeSet<Integer> secondRows = new TreeSet<>();
+            for ( int row = 0; row < 300000; row++ )
+            {
+                if ( random.nextInt( density ) == 0 )
+                {
+                    first.add( row );
+                    firstRows.add( row );
+                }
+                if ( random.nextInt( row < 150000 ? density : 3 ) == 0 )
+                {
+                    second.add( row );
+                    secondRows.add( row );
+                }
+            }
+            TreeSet<Integer> and = new TreeSet<>( firstRows );
+            and.retainAll( secondRows );
+            TreeSet<Integer> or = new TreeSet<>( firstRows );
+            or.addAll( secondRows );
+            TreeSet<Integer> andNot = new TreeSet<>( firstRows );
+            andNot.removeAll( secondRows );
+            Assert.assertArrayEquals( toArray( and ), first.and( second ).toArray() );
+            Assert.assertArrayEquals( toArray( or ), first.or( second ).toArray() );
+            Assert.assertArrayEquals( toArray( andNot ), first.andNot( second ).toArray() );
+            Assert.assertArrayEquals( toArray( firstRows ), first.toArray() );
+            Assert.assertEquals( first.and( second ), second.and( first ) );
+        }
+    }
+
+    private int[] toArray( TreeSet<Integer> rows )
+    {
+        return rows.stream().mapToInt( Integer::intValue ).toArray();
+    }
+}